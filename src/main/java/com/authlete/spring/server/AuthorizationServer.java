@@ -19,12 +19,14 @@ package com.authlete.spring.server;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 
 /**
  * The main application class.
  */
 @SpringBootApplication
+@ImportRuntimeHints(AuthorizationServerRuntimeHints.class)
 public class AuthorizationServer
 {
     public static void main(String[] args) throws Exception
@@ -19,13 +19,23 @@ package com.authlete.spring.server;
 
 import jakarta.ws.rs.ApplicationPath;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.model.Resource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import com.authlete.spring.server.api.AuthorizationDecisionEndpoint;
 import com.authlete.spring.server.api.AuthorizationEndpoint;
+import com.authlete.spring.server.api.ConfigurationEndpoint;
 import com.authlete.spring.server.api.IntrospectionEndpoint;
 import com.authlete.spring.server.api.JwksEndpoint;
 import com.authlete.spring.server.api.RevocationEndpoint;
 import com.authlete.spring.server.api.TokenEndpoint;
+import com.authlete.spring.server.api.UserInfoEndpoint;
+import com.authlete.spring.server.json.ObjectMapperResolver;
+import com.authlete.spring.server.lifecycle.ReadinessEndpoint;
+import com.authlete.spring.server.monitoring.EntityTimingInterceptor;
+import com.authlete.spring.server.monitoring.ServerTimingFilter;
+import com.authlete.spring.server.monitoring.SpanRouteFilter;
+import com.authlete.spring.server.web.StaticContentEndpoint;
 
 
 /**
@@ -67,23 +77,74 @@ import com.authlete.spring.server.api.TokenEndpoint;
  * >OpenID Connect Discovery 1.0</a> for details about the
  * requirement.
  * </p>
+ *
+ * <p>
+ * In the single-stack mode ({@code authorization-server.single-stack},
+ * enabled by the {@code single-stack} profile), Spring MVC is not started
+ * and Jersey serves all the requests including the configuration endpoint
+ * and static contents, so that every request goes through one dispatcher.
+ * </p>
  */
 @Component
 @ApplicationPath("/api")
 public class AuthorizationServerResourceConfig extends ResourceConfig
 {
-    public AuthorizationServerResourceConfig()
+    /**
+     * The path under which the endpoints are placed in the single-stack mode.
+     */
+    private static final String API_PATH = "/api";
+
+
+    public AuthorizationServerResourceConfig(
+            @Value("${authorization-server.single-stack:false}") boolean singleStack)
     {
-        // Register endpoints. Note that ConfigurationEndpoint
-        // is not registered here because the endpoint must be
-        // served at "/.well-known/openid-configuration".
-        registerClasses(
+        Class<?>[] endpoints = {
                 AuthorizationEndpoint.class,
                 AuthorizationDecisionEndpoint.class,
                 IntrospectionEndpoint.class,
                 JwksEndpoint.class,
                 RevocationEndpoint.class,
-                TokenEndpoint.class
-        );
+                TokenEndpoint.class,
+                UserInfoEndpoint.class,
+                ReadinessEndpoint.class
+        };
+
+        if (singleStack)
+        {
+            // Jersey is mapped at "/" instead of "/api" (see
+            // application-single-stack.yml) and serves all the requests.
+            // The endpoints are moved under "/api", and the configuration
+            // endpoint and static contents are served by Jersey, too.
+            for (Class<?> endpoint : endpoints)
+            {
+                registerResources(underApiPath(endpoint));
+            }
+
+            register(ConfigurationEndpoint.class);
+            register(StaticContentEndpoint.class);
+        }
+        else
+        {
+            // Register endpoints. Note that ConfigurationEndpoint
+            // is not registered here because the endpoint must be
+            // served at "/.well-known/openid-configuration".
+            registerClasses(endpoints);
+        }
+
+        // Convert JSON entities with the tuned Jackson mapper.
+        register(ObjectMapperResolver.class);
+
+        // Time and trace the phases of requests (see TimingFilter).
+        register(EntityTimingInterceptor.class);
+        register(ServerTimingFilter.class);
+        register(SpanRouteFilter.class);
+    }
+
+
+    private static Resource underApiPath(Class<?> endpoint)
+    {
+        Resource resource = Resource.from(endpoint);
+
+        return Resource.builder(resource).path(API_PATH + resource.getPath()).build();
     }
 }
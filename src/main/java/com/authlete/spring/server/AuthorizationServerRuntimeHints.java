@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server;
+
+
+import java.util.List;
+import org.springframework.aot.hint.ExecutableMode;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.util.ClassUtils;
+import com.authlete.common.conf.AuthleteConfiguration;
+import com.authlete.spring.server.api.AuthorizationDecisionEndpoint;
+import com.authlete.spring.server.api.AuthorizationEndpoint;
+import com.authlete.spring.server.api.ConfigurationEndpoint;
+import com.authlete.spring.server.api.IntrospectionEndpoint;
+import com.authlete.spring.server.api.JwksEndpoint;
+import com.authlete.spring.server.api.RevocationEndpoint;
+import com.authlete.spring.server.api.TokenEndpoint;
+import com.authlete.spring.server.api.UserInfoEndpoint;
+import com.authlete.spring.server.json.ObjectMapperAutoDiscoverable;
+import com.authlete.spring.server.json.ObjectMapperResolver;
+import com.authlete.spring.server.lifecycle.ReadinessEndpoint;
+import com.authlete.spring.server.monitoring.EntityTimingInterceptor;
+import com.authlete.spring.server.monitoring.ServerTimingFilter;
+import com.authlete.spring.server.monitoring.SpanRouteFilter;
+import com.authlete.spring.server.monitoring.TraceContextAutoDiscoverable;
+import com.authlete.spring.server.monitoring.TraceContextClientFilter;
+import com.authlete.spring.server.web.StaticContentEndpoint;
+
+
+/**
+ * Hints for GraalVM native images which Spring AOT processing cannot
+ * infer from the bean definitions.
+ *
+ * <p>
+ * The hints are evaluated at build time, so scanning the class path
+ * here does not cost anything at runtime.
+ * </p>
+ */
+public class AuthorizationServerRuntimeHints implements RuntimeHintsRegistrar
+{
+    /**
+     * Packages of authlete-java-common whose classes are converted
+     * from/to JSON by reflection when Authlete APIs are called.
+     */
+    private static final String[] AUTHLETE_PACKAGES = {
+            "com.authlete.common.dto",
+            "com.authlete.common.types",
+    };
+
+
+    /**
+     * Implementations of {@code AuthleteApi} in authlete-java-jakarta.
+     * {@code TenantApiFactory} creates them directly, but {@code
+     * AuthleteApiFactory} loads them by name and invokes their constructors
+     * which take an {@link AuthleteConfiguration}.
+     */
+    private static final String[] AUTHLETE_API_CLASSES = {
+            "com.authlete.jakarta.api.AuthleteApiImpl",
+            "com.authlete.jakarta.api.AuthleteApiImplV3",
+    };
+
+
+    /**
+     * Jersey resource and provider classes. Jersey finds resource methods
+     * and instantiates providers by reflection.
+     */
+    private static final Class<?>[] RESOURCE_CLASSES = {
+            AuthorizationEndpoint.class,
+            AuthorizationDecisionEndpoint.class,
+            ConfigurationEndpoint.class,
+            IntrospectionEndpoint.class,
+            JwksEndpoint.class,
+            RevocationEndpoint.class,
+            TokenEndpoint.class,
+            UserInfoEndpoint.class,
+            ReadinessEndpoint.class,
+            StaticContentEndpoint.class,
+            ObjectMapperResolver.class,
+            ObjectMapperAutoDiscoverable.class,
+            EntityTimingInterceptor.class,
+            ServerTimingFilter.class,
+            SpanRouteFilter.class,
+            TraceContextAutoDiscoverable.class,
+            TraceContextClientFilter.class,
+    };
+
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader)
+    {
+        // FreeMarker templates and static contents.
+        hints.resources().registerPattern("templates/*.ftlh");
+        hints.resources().registerPattern("static/**");
+
+        // Registers the Jackson mapper and the trace context filter to the
+        // Jersey clients.
+        hints.resources().registerPattern(
+                "META-INF/services/org.glassfish.jersey.internal.spi.AutoDiscoverable");
+
+        for (Class<?> type : RESOURCE_CLASSES)
+        {
+            hints.reflection().registerType(type,
+                    MemberCategory.INTROSPECT_PUBLIC_METHODS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+
+        // The default tenant's configuration may be on the class path.
+        hints.resources().registerPattern("authlete.properties");
+
+        for (String className : AUTHLETE_API_CLASSES)
+        {
+            hints.reflection().registerType(TypeReference.of(className),
+                    type -> type.withConstructor(
+                            List.of(TypeReference.of(AuthleteConfiguration.class)), ExecutableMode.INVOKE));
+        }
+
+        for (String packageName : AUTHLETE_PACKAGES)
+        {
+            registerPackage(hints, classLoader, packageName);
+        }
+    }
+
+
+    private static void registerPackage(RuntimeHints hints, ClassLoader classLoader, String packageName)
+    {
+        ClassPathScanningCandidateComponentProvider scanner = new AllClassesScanner();
+
+        for (BeanDefinition definition : scanner.findCandidateComponents(packageName))
+        {
+            String className = definition.getBeanClassName();
+
+            if (ClassUtils.isPresent(className, classLoader) == false)
+            {
+                continue;
+            }
+
+            hints.reflection().registerType(ClassUtils.resolveClassName(className, classLoader),
+                    MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+    }
+
+
+    /**
+     * Scanner which accepts every top-level or static nested class.
+     */
+    private static class AllClassesScanner extends ClassPathScanningCandidateComponentProvider
+    {
+        AllClassesScanner()
+        {
+            super(false);
+
+            addIncludeFilter((reader, factory) -> true);
+        }
+
+
+        @Override
+        protected boolean isCandidateComponent(AnnotatedBeanDefinition definition)
+        {
+            return definition.getMetadata().isIndependent();
+        }
+    }
+}
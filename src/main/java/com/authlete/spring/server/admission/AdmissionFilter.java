@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.admission;
+
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+
+/**
+ * Filter which limits the number of requests processed concurrently and
+ * sheds excess load with {@code 503 Service Unavailable} before it reaches
+ * Jersey.
+ *
+ * <p>
+ * At most {@code authorization-server.admission.max-concurrency} requests
+ * are processed at a time. The others wait for a permit, and waiters of
+ * a higher {@link EndpointClass} are admitted first. The queueing delay of
+ * each class is watched in the way of CoDel (see {@link EndpointQueue});
+ * when a standing queue builds up, discovery and unauthenticated
+ * introspection are rejected immediately and the other requests wait only
+ * for a short time, while token requests and authorization decisions keep
+ * waiting for up to {@code max-wait}. Thus the requests which are admitted
+ * are answered in time instead of all requests timing out, and the
+ * rejected ones are told to retry after {@code retry-after} seconds.
+ * </p>
+ *
+ * <p>
+ * The filter runs before {@code TenantFilter}, so it does not depend on
+ * the tenant, and shedding costs only the classification of the path.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AdmissionFilter extends OncePerRequestFilter
+{
+    private final boolean mEnabled;
+    private final String mRetryAfter;
+    private final AdmissionQueue mQueue;
+    private final Map<EndpointClass, EndpointQueue> mQueues = new EnumMap<>(EndpointClass.class);
+    private final ObjectProvider<MBeanExporter> mExporter;
+
+
+    public AdmissionFilter(
+            @Value("${authorization-server.admission.enabled:true}") boolean enabled,
+            @Value("${authorization-server.admission.max-concurrency:100}") int maxConcurrency,
+            @Value("${authorization-server.admission.target:10}") long target,
+            @Value("${authorization-server.admission.interval:100}") long interval,
+            @Value("${authorization-server.admission.max-wait:1000}") long maxWait,
+            @Value("${authorization-server.admission.retry-after:1}") long retryAfter,
+            ObjectProvider<MBeanExporter> exporter)
+    {
+        mEnabled    = enabled;
+        mRetryAfter = String.valueOf(retryAfter);
+        mQueue      = new AdmissionQueue(maxConcurrency);
+        mExporter   = exporter;
+
+        for (EndpointClass cls : EndpointClass.values())
+        {
+            mQueues.put(cls, new EndpointQueue(cls, mQueue,
+                    TimeUnit.MILLISECONDS.toNanos(target),
+                    TimeUnit.MILLISECONDS.toNanos(interval),
+                    TimeUnit.MILLISECONDS.toNanos(maxWait)));
+        }
+    }
+
+
+    @PostConstruct
+    public void start()
+    {
+        MBeanExporter exporter = mExporter.getIfAvailable();
+
+        if (exporter == null || mEnabled == false)
+        {
+            return;
+        }
+
+        mQueues.forEach((cls, queue) -> {
+            if (cls != EndpointClass.EXEMPT)
+            {
+                exporter.registerManagedResource(queue, objectName(cls));
+            }
+        });
+    }
+
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request)
+    {
+        return mEnabled == false;
+    }
+
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                    throws ServletException, IOException
+    {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+
+        EndpointClass cls = EndpointClass.of(
+                path, request.getHeader(HttpHeaders.AUTHORIZATION) != null);
+
+        if (cls == EndpointClass.EXEMPT)
+        {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        EndpointQueue queue = mQueues.get(cls);
+        long start = System.nanoTime();
+        boolean admitted;
+
+        try
+        {
+            admitted = mQueue.acquire(cls, queue.getTimeout(), TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+
+        long now = System.nanoTime();
+
+        if (admitted == false)
+        {
+            queue.shed(now, now - start);
+            reject(response);
+            return;
+        }
+
+        queue.recordDelay(now, now - start);
+        queue.admitted();
+
+        try
+        {
+            chain.doFilter(request, response);
+        }
+        finally
+        {
+            queue.completed();
+            mQueue.release();
+        }
+    }
+
+
+    private void reject(HttpServletResponse response)
+    {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, mRetryAfter);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        response.setContentLength(0);
+    }
+
+
+    private static ObjectName objectName(EndpointClass cls)
+    {
+        try
+        {
+            return new ObjectName(String.format("com.authlete.spring.server:type=Admission,class=%s",
+                    cls.name().toLowerCase(Locale.ROOT)));
+        }
+        catch (MalformedObjectNameException e)
+        {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.admission;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * A counting semaphore whose waiters are admitted in the order of
+ * {@link EndpointClass} priority, and in arrival order within a class.
+ *
+ * <p>
+ * A released permit is handed to a waiter directly, so that a request
+ * arriving later cannot take it over from a waiter of a higher priority.
+ * </p>
+ */
+final class AdmissionQueue
+{
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition[] mConditions;
+    private final int[] mWaiting;
+    private final int[] mGranted;
+    private int mAvailable;
+
+
+    AdmissionQueue(int permits)
+    {
+        int classes = EndpointClass.values().length;
+
+        mConditions = new Condition[classes];
+        mWaiting    = new int[classes];
+        mGranted    = new int[classes];
+        mAvailable  = permits;
+
+        for (int i = 0; i < classes; i++)
+        {
+            mConditions[i] = mLock.newCondition();
+        }
+    }
+
+
+    /**
+     * Acquire a permit, waiting at most for the given time.
+     *
+     * @return
+     *         True if a permit has been acquired.
+     */
+    boolean acquire(EndpointClass cls, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        int p = cls.ordinal();
+
+        mLock.lock();
+
+        try
+        {
+            // Permits are available only when nobody is waiting.
+            if (mAvailable > 0)
+            {
+                mAvailable--;
+                return true;
+            }
+
+            long remaining = unit.toNanos(timeout);
+
+            if (remaining <= 0)
+            {
+                return false;
+            }
+
+            mWaiting[p]++;
+
+            try
+            {
+                while (true)
+                {
+                    if (mGranted[p] > 0)
+                    {
+                        mGranted[p]--;
+                        return true;
+                    }
+
+                    if (remaining <= 0)
+                    {
+                        return false;
+                    }
+
+                    remaining = mConditions[p].awaitNanos(remaining);
+                }
+            }
+            finally
+            {
+                mWaiting[p]--;
+
+                // Give back a permit granted to this class but not taken
+                // because of interruption.
+                if (mGranted[p] > mWaiting[p])
+                {
+                    mGranted[p]--;
+                    mAvailable++;
+                    dispatch();
+                }
+            }
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+
+    void release()
+    {
+        mLock.lock();
+
+        try
+        {
+            mAvailable++;
+            dispatch();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+
+    /**
+     * The number of requests waiting for a permit.
+     */
+    int getWaiting(EndpointClass cls)
+    {
+        mLock.lock();
+
+        try
+        {
+            return mWaiting[cls.ordinal()] - mGranted[cls.ordinal()];
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+
+    private void dispatch()
+    {
+        for (int p = 0; p < mWaiting.length && mAvailable > 0; p++)
+        {
+            while (mAvailable > 0 && mGranted[p] < mWaiting[p])
+            {
+                mAvailable--;
+                mGranted[p]++;
+                mConditions[p].signal();
+            }
+        }
+    }
+}
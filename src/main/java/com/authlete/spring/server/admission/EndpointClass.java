@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.admission;
+
+
+/**
+ * Classes of endpoints for admission control, in the order of priority.
+ * When the server is overloaded, requests of the lowest priority are shed
+ * first.
+ */
+enum EndpointClass
+{
+    /**
+     * Token issuance and submission of authorization decisions. Waiting
+     * requests of this class are admitted first, and are not shed until
+     * they have waited for the maximum time.
+     */
+    PROTECTED,
+
+
+    /**
+     * The other endpoints such as authorization, revocation, UserInfo and
+     * introspection by authenticated callers. Requests of this class are
+     * shed by CoDel when a standing queue builds up.
+     */
+    STANDARD,
+
+
+    /**
+     * Discovery (the configuration and JWK Set documents), introspection
+     * by unauthenticated callers and static contents. Requests of this
+     * class are not queued at all while the class is overloaded.
+     */
+    SHEDDABLE,
+
+
+    /**
+     * The readiness endpoint, which is never queued nor shed so that the
+     * load balancer can tell overload from failure.
+     */
+    EXEMPT;
+
+
+    private static final String API = "/api/";
+
+
+    /**
+     * Classify a request.
+     *
+     * @param path
+     *         The path of the request without the context path. A tenant
+     *         path prefix such as {@code /t/acme} may precede {@code /api/}.
+     *
+     * @param authenticated
+     *         True if the request has an {@code Authorization} header.
+     */
+    static EndpointClass of(String path, boolean authenticated)
+    {
+        int index = path.indexOf(API);
+
+        if (index < 0)
+        {
+            // The configuration endpoint and static contents.
+            return SHEDDABLE;
+        }
+
+        switch (path.substring(index + API.length()))
+        {
+            case "token":
+            case "authorization/decision":
+                return PROTECTED;
+
+            case "introspection":
+                return authenticated ? STANDARD : SHEDDABLE;
+
+            case "jwks":
+                return SHEDDABLE;
+
+            case "ready":
+                return EXEMPT;
+
+            default:
+                return STANDARD;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.admission;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+
+/**
+ * Queueing delay and counters of an {@link EndpointClass}. Registered as
+ * an MBean per class by {@link AdmissionFilter}.
+ *
+ * <p>
+ * The class is regarded as overloaded when the minimum queueing delay
+ * observed during an interval exceeds the target, i.e. when even the
+ * luckiest request had to wait, which means a standing queue rather than
+ * a burst (CoDel). While overloaded, requests wait only for the target
+ * instead of the interval, so the queue drains quickly and the requests
+ * which are admitted are still answered in time.
+ * </p>
+ */
+@ManagedResource
+public class EndpointQueue
+{
+    private final EndpointClass mClass;
+    private final long mTarget;
+    private final long mInterval;
+    private final long mMaxWait;
+
+    private long mIntervalStart;
+    private long mMinDelay = Long.MAX_VALUE;
+    private volatile boolean mOverloaded;
+    private volatile long mLastMinDelay;
+
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private final AtomicLong mAdmitted    = new AtomicLong();
+    private final AtomicLong mShed        = new AtomicLong();
+    private final AdmissionQueue mQueue;
+
+
+    /**
+     * @param target
+     *         The acceptable queueing delay in nanoseconds.
+     *
+     * @param interval
+     *         The interval of CoDel in nanoseconds.
+     *
+     * @param maxWait
+     *         The maximum queueing delay in nanoseconds while the class
+     *         is not overloaded.
+     */
+    EndpointQueue(EndpointClass cls, AdmissionQueue queue, long target, long interval, long maxWait)
+    {
+        mClass         = cls;
+        mQueue         = queue;
+        mTarget        = target;
+        mInterval      = interval;
+        mMaxWait       = maxWait;
+        mIntervalStart = System.nanoTime();
+    }
+
+
+    /**
+     * The time in nanoseconds for which a request may wait for a permit.
+     */
+    long getTimeout()
+    {
+        switch (mClass)
+        {
+            case PROTECTED:
+                // Protected requests are admitted first, so they wait
+                // only when the server is full of protected requests.
+                return mMaxWait;
+
+            case SHEDDABLE:
+                return mOverloaded ? 0 : mInterval;
+
+            default:
+                return mOverloaded ? mTarget : Math.min(mInterval, mMaxWait);
+        }
+    }
+
+
+    /**
+     * Record the queueing delay of a request, whether it has been admitted
+     * or not.
+     */
+    synchronized void recordDelay(long now, long delay)
+    {
+        if (now - mIntervalStart >= mInterval)
+        {
+            // A new interval.
+            mOverloaded    = (mMinDelay != Long.MAX_VALUE && mMinDelay > mTarget);
+            mLastMinDelay  = (mMinDelay == Long.MAX_VALUE) ? 0 : mMinDelay;
+            mMinDelay      = Long.MAX_VALUE;
+            mIntervalStart = now;
+        }
+
+        mMinDelay = Math.min(mMinDelay, delay);
+    }
+
+
+    void admitted()
+    {
+        mAdmitted.incrementAndGet();
+        mInFlight.incrementAndGet();
+    }
+
+
+    void completed()
+    {
+        mInFlight.decrementAndGet();
+    }
+
+
+    void shed(long now, long delay)
+    {
+        mShed.incrementAndGet();
+
+        // A request shed without waiting found no permit available, which
+        // counts as a delay beyond the target, so the class stays overloaded
+        // until a request is admitted without waiting.
+        recordDelay(now, Math.max(delay, mTarget + 1));
+    }
+
+
+    @ManagedAttribute(description = "True if a standing queue has been observed in the last interval.")
+    public boolean isOverloaded()
+    {
+        return mOverloaded;
+    }
+
+
+    @ManagedAttribute(description = "The minimum queueing delay in milliseconds in the last interval.")
+    public double getMinDelay()
+    {
+        return mLastMinDelay / (double)TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+
+    @ManagedAttribute(description = "The number of requests being processed.")
+    public int getInFlight()
+    {
+        return mInFlight.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of requests waiting for admission.")
+    public int getWaiting()
+    {
+        return mQueue.getWaiting(mClass);
+    }
+
+
+    @ManagedAttribute(description = "The number of admitted requests.")
+    public long getAdmitted()
+    {
+        return mAdmitted.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of requests rejected with 503.")
+    public long getShed()
+    {
+        return mShed.get();
+    }
+}
@@ -18,6 +18,7 @@ package com.authlete.spring.server.api;
 
 
 import static com.authlete.jakarta.util.JaxRsUtils.createMultivaluedMap;
+import java.util.Arrays;
 import java.util.Date;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
@@ -30,11 +31,20 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import com.authlete.common.api.AuthleteApiFactory;
 import com.authlete.common.types.User;
 import com.authlete.jakarta.BaseAuthorizationDecisionEndpoint;
+import com.authlete.spring.server.audit.AuditEventType;
+import com.authlete.spring.server.audit.AuditLog;
+import com.authlete.spring.server.db.ConsentStore;
 import com.authlete.spring.server.db.UserDao;
+import com.authlete.spring.server.flow.AuthorizationFlowStore;
+import com.authlete.spring.server.flow.PendingAuthorization;
+import com.authlete.spring.server.monitoring.Phase;
+import com.authlete.spring.server.monitoring.RequestTimings;
+import com.authlete.spring.server.tenant.Tenant;
+import com.authlete.spring.server.tenant.TenantRegistry;
 
 
 /**
@@ -44,6 +54,22 @@ import com.authlete.spring.server.db.UserDao;
 @Path("/authorization/decision")
 public class AuthorizationDecisionEndpoint extends BaseAuthorizationDecisionEndpoint
 {
+    @Autowired
+    private AuthorizationFlowStore mFlowStore;
+
+
+    @Autowired
+    private TenantRegistry mTenants;
+
+
+    @Autowired
+    private ConsentStore mConsents;
+
+
+    @Autowired
+    private AuditLog mAuditLog;
+
+
     /**
      * Process a request from the form in the authorization page.
      *
@@ -80,18 +106,55 @@ public class AuthorizationDecisionEndpoint extends BaseAuthorizationDecisionEndp
         // Get the existing session.
         HttpSession session = getSession(request);
 
-        // Retrieve some variables from the session. See the implementation
-        // of AuthorizationRequestHandlerSpiImpl.getAuthorizationPage().
-        String   ticket       = (String)  takeAttribute(session, "ticket");
-        String[] claimNames   = (String[])takeAttribute(session, "claimNames");
-        String[] claimLocales = (String[])takeAttribute(session, "claimLocales");
-        User user             = getUser(session, parameters);
-        Date authTime         = (Date)session.getAttribute("authTime");
+        // Retrieve the pending flow. See the implementation of
+        // AuthorizationRequestHandlerSpiImpl.generateAuthorizationPage().
+        PendingAuthorization flow = getFlow(session);
+        User user                 = getUser(session, parameters);
+        Date authTime             = (Date)session.getAttribute("authTime");
+
+        // The decision must be sent to the tenant which has issued the
+        // ticket, regardless of the path the form was posted to.
+        Tenant tenant = getTenant(flow);
 
         // Handle the end-user's decision.
-        return handle(AuthleteApiFactory.getDefaultApi(),
+        Response response = handle(tenant.getApi(),
                 new AuthorizationDecisionHandlerSpiImpl(parameters, user, authTime),
-                ticket, claimNames, claimLocales);
+                flow.getTicket(), flow.getClaimNames(), flow.getClaimLocales());
+
+        // Remember the consent so that the authorization page can be
+        // skipped next time, but only if the authorization has been
+        // issued. See AuthorizationRequestHandlerSpiImpl.
+        if (user != null && parameters.containsKey("authorized") && isIssued(response))
+        {
+            mConsents.record(tenant.getId(), user.getSubject(), flow.getClientId(),
+                    Arrays.asList(flow.getScopes()));
+        }
+
+        mAuditLog.record(
+                (user != null && parameters.containsKey("authorized"))
+                        ? AuditEventType.AUTHORIZATION_GRANTED : AuditEventType.AUTHORIZATION_DENIED,
+                tenant.getId(), flow.getClientId(), (user != null) ? user.getSubject() : null,
+                response.getStatus(), String.join(" ", flow.getScopes()));
+
+        return response;
+    }
+
+
+    /**
+     * Check if the response redirects the user agent to the client with
+     * an authorization (not with an error).
+     */
+    private static boolean isIssued(Response response)
+    {
+        if (response.getStatus() != Status.FOUND.getStatusCode() || response.getLocation() == null)
+        {
+            return false;
+        }
+
+        String location = response.getLocation().toString();
+
+        return location.contains("?error=") == false && location.contains("&error=") == false
+                && location.contains("#error=") == false;
     }
 
 
@@ -101,7 +164,12 @@ public class AuthorizationDecisionEndpoint extends BaseAuthorizationDecisionEndp
     private HttpSession getSession(HttpServletRequest request)
     {
         // Get the existing session.
-        HttpSession session = request.getSession(false);
+        HttpSession session;
+
+        try (RequestTimings.Scope scope = RequestTimings.phase(Phase.SESSION))
+        {
+            session = request.getSession(false);
+        }
 
         // If there exists a session.
         if (session != null)
@@ -123,6 +191,59 @@ public class AuthorizationDecisionEndpoint extends BaseAuthorizationDecisionEndp
     }
 
 
+    /**
+     * Get the pending authorization flow associated with the session.
+     */
+    private PendingAuthorization getFlow(HttpSession session)
+    {
+        // Get the flow. It may have expired or been shed already.
+        PendingAuthorization flow = mFlowStore.take((String)takeAttribute(session, "flowId"));
+
+        // If the flow exists.
+        if (flow != null)
+        {
+            // OK.
+            return flow;
+        }
+
+        // The flow does not exist. Make a response of "400 Bad Request".
+        String message = "The authorization request has expired.";
+
+        Response response = Response
+                .status(Status.BAD_REQUEST)
+                .entity(message)
+                .type(MediaType.TEXT_PLAIN)
+                .build();
+
+        throw new WebApplicationException(message, response);
+    }
+
+
+    /**
+     * Get the tenant which has issued the ticket of the flow.
+     */
+    private Tenant getTenant(PendingAuthorization flow)
+    {
+        Tenant tenant = mTenants.findById(flow.getTenantId());
+
+        if (tenant != null)
+        {
+            return tenant;
+        }
+
+        // The tenant has been removed. Make a response of "400 Bad Request".
+        String message = "The tenant of the authorization request is not available.";
+
+        Response response = Response
+                .status(Status.BAD_REQUEST)
+                .entity(message)
+                .type(MediaType.TEXT_PLAIN)
+                .build();
+
+        throw new WebApplicationException(message, response);
+    }
+
+
     /**
      * Look up an end-user.
      */
@@ -25,13 +25,20 @@ import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.ViewResolver;
-import com.authlete.common.api.AuthleteApiFactory;
+import com.authlete.common.api.AuthleteApi;
 import com.authlete.jakarta.BaseAuthorizationEndpoint;
+import com.authlete.spring.server.audit.AuditLog;
+import com.authlete.spring.server.client.ClientPreValidator;
+import com.authlete.spring.server.db.ConsentStore;
+import com.authlete.spring.server.flow.AuthorizationFlowStore;
+import com.authlete.spring.server.tenant.Tenant;
+import com.authlete.spring.server.tenant.TenantRegistry;
 
 
 /**
@@ -58,6 +65,26 @@ public class AuthorizationEndpoint extends BaseAuthorizationEndpoint
     private ViewResolver mViewResolver;
 
 
+    @Autowired
+    private AuthorizationFlowStore mFlowStore;
+
+
+    @Autowired
+    private TenantRegistry mTenants;
+
+
+    @Autowired
+    private ClientPreValidator mClients;
+
+
+    @Autowired
+    private ConsentStore mConsents;
+
+
+    @Autowired
+    private AuditLog mAuditLog;
+
+
     /**
      * The authorization endpoint for {@code GET} method.
      *
@@ -117,9 +144,26 @@ public class AuthorizationEndpoint extends BaseAuthorizationEndpoint
 
     private Response handle(HttpServletRequest request)
     {
+        // The tenant which the request has been routed to.
+        Tenant tenant = mTenants.get(request);
+
+        MultivaluedMap<String, String> parameters = createMultivaluedMap(request.getParameterMap());
+
+        // Reject obviously invalid requests (e.g. unknown client IDs)
+        // without calling Authlete.
+        Response rejection = mClients.preValidate(tenant, parameters);
+
+        if (rejection != null)
+        {
+            return rejection;
+        }
+
         // Handle the authorization request.
-        return handle(AuthleteApiFactory.getDefaultApi(),
-                new AuthorizationRequestHandlerSpiImpl(request, mViewResolver),
-                createMultivaluedMap(request.getParameterMap()));
+        AuthleteApi api = tenant.getApi();
+
+        return handle(api,
+                new AuthorizationRequestHandlerSpiImpl(
+                        request, mViewResolver, mFlowStore, tenant.getId(), api, mConsents, mAuditLog),
+                parameters);
     }
 }
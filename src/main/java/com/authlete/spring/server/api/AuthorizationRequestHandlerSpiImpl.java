@@ -26,16 +26,26 @@ import java.util.Map;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.web.servlet.View;
 import org.springframework.web.servlet.ViewResolver;
+import com.authlete.common.api.AuthleteApi;
 import com.authlete.common.dto.AuthorizationResponse;
 import com.authlete.common.types.Prompt;
 import com.authlete.common.types.User;
+import com.authlete.jakarta.AuthorizationDecisionHandler;
 import com.authlete.jakarta.AuthorizationPageModel;
 import com.authlete.jakarta.spi.AuthorizationRequestHandlerSpiAdapter;
+import com.authlete.spring.server.audit.AuditEventType;
+import com.authlete.spring.server.audit.AuditLog;
+import com.authlete.spring.server.db.ConsentStore;
+import com.authlete.spring.server.flow.AuthorizationFlowStore;
+import com.authlete.spring.server.monitoring.Phase;
+import com.authlete.spring.server.monitoring.RequestTimings;
 
 
 /**
@@ -54,6 +64,13 @@ import com.authlete.jakarta.spi.AuthorizationRequestHandlerSpiAdapter;
  * "http://openid.net/specs/openid-connect-core-1_0.html">OpenID Connect Core
  * 1.0</a> for details about {@code prompt=none}.
  * </p>
+ *
+ * <p>
+ * If the end-user has logged in and has already approved the requested
+ * scopes for the client (see {@link ConsentStore}), the authorization page
+ * is not rendered and the authorization is issued immediately, unless the
+ * request contains {@code prompt=login} or {@code prompt=consent}.
+ * </p>
  */
 class AuthorizationRequestHandlerSpiImpl extends AuthorizationRequestHandlerSpiAdapter
 {
@@ -82,19 +99,81 @@ class AuthorizationRequestHandlerSpiImpl extends AuthorizationRequestHandlerSpiA
     private final ViewResolver mViewResolver;
 
 
+    /**
+     * Store of authorization flows waiting for the end-user's decision.
+     */
+    private final AuthorizationFlowStore mFlowStore;
+
+
+    /**
+     * The ID of the tenant which the request has been routed to.
+     */
+    private final String mTenantId;
+
+
+    /**
+     * The API of the tenant, used to issue an authorization without the
+     * authorization page.
+     */
+    private final AuthleteApi mApi;
+
+
+    /**
+     * Store of the consents given by end-users.
+     */
+    private final ConsentStore mConsents;
+
+
+    /**
+     * Audit log to which authorizations by remembered consents are recorded.
+     */
+    private final AuditLog mAuditLog;
+
+
+    /**
+     * The HTTP session of the request. Resolved lazily by {@link #getSession()}
+     * and reused by the other SPI callbacks so that the session is looked up
+     * at most once per request.
+     */
+    private HttpSession mSession;
+
+
+    /**
+     * True if {@link #mSession} has already been resolved.
+     */
+    private boolean mSessionResolved;
+
+
     /**
      * Constructor with an authorization request to the authorization endpoint.
      */
-    public AuthorizationRequestHandlerSpiImpl(HttpServletRequest request, ViewResolver viewResolver)
+    public AuthorizationRequestHandlerSpiImpl(
+            HttpServletRequest request, ViewResolver viewResolver,
+            AuthorizationFlowStore flowStore, String tenantId,
+            AuthleteApi api, ConsentStore consents, AuditLog auditLog)
     {
         mRequest      = request;
         mViewResolver = viewResolver;
+        mFlowStore    = flowStore;
+        mTenantId     = tenantId;
+        mApi          = api;
+        mConsents     = consents;
+        mAuditLog     = auditLog;
     }
 
 
     @Override
     public Response generateAuthorizationPage(AuthorizationResponse info)
     {
+        // Skip the authorization page if the end-user has already
+        // approved the request.
+        Response issued = issueIfConsented(info);
+
+        if (issued != null)
+        {
+            return issued;
+        }
+
         // Add some data into the session.
         HttpSession session = setUpSession(info);
 
@@ -123,16 +202,105 @@ class AuthorizationRequestHandlerSpiImpl extends AuthorizationRequestHandlerSpiA
     }
 
 
+    private Response issueIfConsented(AuthorizationResponse info)
+    {
+        // Get the user from the session if they exist.
+        User user     = (User)getSessionAttribute("user");
+        Date authTime = (Date)getSessionAttribute("authTime");
+
+        if (user == null || authTime == null)
+        {
+            // The end-user needs to log in on the authorization page.
+            return null;
+        }
+
+        if (info.getPrompts() != null)
+        {
+            List<Prompt> prompts = Arrays.asList(info.getPrompts());
+
+            if (prompts.contains(Prompt.LOGIN) || prompts.contains(Prompt.CONSENT)
+                    || prompts.contains(Prompt.SELECT_ACCOUNT))
+            {
+                // The client wants the end-user to interact.
+                return null;
+            }
+        }
+
+        if (info.getMaxAge() > 0
+                && (System.currentTimeMillis() - authTime.getTime()) / 1000L > info.getMaxAge())
+        {
+            // The end-user needs to log in again.
+            return null;
+        }
+
+        if (requestsMoreThanScopes(info))
+        {
+            // Consents hold scopes only. The end-user has to see the rest.
+            return null;
+        }
+
+        List<String> scopes = Arrays.asList(AuthorizationFlowStore.scopeNamesOf(info));
+        String clientId     = String.valueOf(info.getClient().getClientId());
+
+        if (mConsents.covers(mTenantId, user.getSubject(), clientId, scopes) == false)
+        {
+            return null;
+        }
+
+        // Same as the "Authorize" button on the authorization page.
+        MultivaluedMap<String, String> parameters = new MultivaluedHashMap<String, String>();
+        parameters.putSingle("authorized", "true");
+
+        // Issue the authorization.
+        Response response = new AuthorizationDecisionHandler(mApi,
+                new AuthorizationDecisionHandlerSpiImpl(parameters, user, authTime))
+                .handle(info.getTicket(), info.getClaims(), info.getClaimsLocales());
+
+        mAuditLog.record(AuditEventType.AUTHORIZATION_GRANTED, mTenantId, clientId,
+                user.getSubject(), response.getStatus(), String.join(" ", scopes));
+
+        return response;
+    }
+
+
+    /**
+     * Check if the request asks for something which is not expressed by
+     * scopes, i.e. a {@code claims} request, {@code authorization_details},
+     * {@code resource} or {@code acr_values}.
+     */
+    private static boolean requestsMoreThanScopes(AuthorizationResponse info)
+    {
+        return info.getIdTokenClaims() != null
+                || info.getUserInfoClaims() != null
+                || (info.getAuthorizationDetails() != null
+                        && info.getAuthorizationDetails().getElements() != null
+                        && info.getAuthorizationDetails().getElements().length > 0)
+                || (info.getResources() != null && info.getResources().length > 0)
+                || (info.getAcrs() != null && info.getAcrs().length > 0);
+    }
+
+
     private HttpSession setUpSession(AuthorizationResponse info)
     {
-        // Create an HTTP session.
-        HttpSession session = mRequest.getSession(true);
+        // Create an HTTP session. This is the only place where a session
+        // is created. Requests which do not reach the authorization page
+        // (e.g. requests rejected by Authlete) never allocate a session.
+        HttpSession session;
 
-        // Store some variables into the session so that they can be
-        // referred to later in AuthorizationDecisionEndpoint.
-        session.setAttribute("ticket",       info.getTicket());
-        session.setAttribute("claimNames",   info.getClaims());
-        session.setAttribute("claimLocales", info.getClaimsLocales());
+        try (RequestTimings.Scope scope = RequestTimings.phase(Phase.SESSION))
+        {
+            session = mRequest.getSession(true);
+        }
+
+        // Remember the session for the other SPI callbacks.
+        mSession         = session;
+        mSessionResolved = true;
+
+        // Keep the ticket and the claim arrays in the flow store so that
+        // they can be referred to later in AuthorizationDecisionEndpoint.
+        // Only the ID of the flow is stored into the session. The flow
+        // store reaps the data when the end-user abandons the page.
+        session.setAttribute("flowId", mFlowStore.put(info, mTenantId));
 
         // Clear the current user information in the session if necessary.
         clearCurrentUserInfoInSessionIfNecessary(info, session);
@@ -174,7 +342,10 @@ class AuthorizationRequestHandlerSpiImpl extends AuthorizationRequestHandlerSpiA
         MockHttpServletResponse response = new MockHttpServletResponse();
 
         // Render the authorization page.
-        view.render(model, mRequest, response);
+        try (RequestTimings.Scope scope = RequestTimings.phase(Phase.RENDER))
+        {
+            view.render(model, mRequest, response);
+        }
 
         // Extract the result (HTML) as a String.
         return response.getContentAsString();
@@ -209,11 +380,8 @@ class AuthorizationRequestHandlerSpiImpl extends AuthorizationRequestHandlerSpiA
     @Override
     public boolean isUserAuthenticated()
     {
-        // Create an HTTP session.
-        HttpSession session = mRequest.getSession(true);
-
         // Get the user from the session if they exist.
-        User user = (User)session.getAttribute("user");
+        User user = (User)getSessionAttribute("user");
 
         // If the user information exists in the session, the user is already
         // authenticated; Otherwise, the user is not authenticated.
@@ -224,11 +392,8 @@ class AuthorizationRequestHandlerSpiImpl extends AuthorizationRequestHandlerSpiA
     @Override
     public long getUserAuthenticatedAt()
     {
-        // Create an HTTP session.
-        HttpSession session = mRequest.getSession(true);
-
         // Get the user from the session if they exist.
-        Date authTime = (Date)session.getAttribute("authTime");
+        Date authTime = (Date)getSessionAttribute("authTime");
 
         if (authTime == null)
         {
@@ -242,11 +407,8 @@ class AuthorizationRequestHandlerSpiImpl extends AuthorizationRequestHandlerSpiA
     @Override
     public String getUserSubject()
     {
-        // Create an HTTP session.
-        HttpSession session = mRequest.getSession(true);
-
         // Get the user from the session if they exist.
-        User user = (User)session.getAttribute("user");
+        User user = (User)getSessionAttribute("user");
 
         if (user == null)
         {
@@ -257,6 +419,45 @@ class AuthorizationRequestHandlerSpiImpl extends AuthorizationRequestHandlerSpiA
     }
 
 
+    /**
+     * Get the existing session without creating a new one. The result
+     * (including {@code null}) is cached for the rest of the request.
+     */
+    private HttpSession getSession()
+    {
+        if (mSessionResolved == false)
+        {
+            // Don't create a session here. A user without a session
+            // is simply not authenticated.
+            try (RequestTimings.Scope scope = RequestTimings.phase(Phase.SESSION))
+            {
+                mSession = mRequest.getSession(false);
+            }
+
+            mSessionResolved = true;
+        }
+
+        return mSession;
+    }
+
+
+    /**
+     * Get the value of an attribute from the existing session.
+     * {@code null} is returned if there is no session.
+     */
+    private Object getSessionAttribute(String key)
+    {
+        HttpSession session = getSession();
+
+        if (session == null)
+        {
+            return null;
+        }
+
+        return session.getAttribute(key);
+    }
+
+
     private void clearCurrentUserInfoInSessionIfNecessary(AuthorizationResponse info, HttpSession session)
     {
         // Get the user from the session if they exist.
@@ -17,12 +17,24 @@
 package com.authlete.spring.server.api;
 
 
+import java.io.IOException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
-import com.authlete.common.api.AuthleteApiFactory;
 import com.authlete.jakarta.BaseConfigurationEndpoint;
+import com.authlete.spring.server.tenant.Tenant;
+import com.authlete.spring.server.tenant.TenantRegistry;
 
 
 /**
@@ -64,24 +76,84 @@ import com.authlete.jakarta.BaseConfigurationEndpoint;
  * use, so you should change it.
  * </p>
  *
+ * <p>
+ * This endpoint is served by Spring MVC by default. In the single-stack mode
+ * (the {@code single-stack} profile), Spring MVC is not used and this class
+ * is registered to Jersey as a root resource instead. See {@link
+ * com.authlete.spring.server.AuthorizationServerResourceConfig
+ * AuthorizationServerResourceConfig}.
+ * </p>
+ *
  * @see <a href="http://openid.net/specs/openid-connect-discovery-1_0.html"
  *      >OpenID Connect Discovery 1.0</a>
  */
 @RestController
+@Path("/.well-known/openid-configuration")
 public class ConfigurationEndpoint extends BaseConfigurationEndpoint
 {
+    @Autowired
+    private TenantRegistry mTenants;
+
+
     /**
      * OpenID Provider configuration endpoint.
      */
     @RequestMapping(
             value  = "/.well-known/openid-configuration",
             method = RequestMethod.GET)
-    public String get()
+    public void get(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        // The tenant which the request has been routed to.
+        Tenant tenant = mTenants.get(request);
+
+        try
+        {
+            // Write the configuration information directly to the output
+            // stream, compressed if the client accepts it. The Authlete API
+            // is called only when the cached document of the tenant has
+            // expired (see authorization-server.cache.configuration-ttl).
+            tenant.getConfiguration().get(() -> handle(tenant.getApi()))
+                    .write(acceptEncoding, response);
+        }
+        catch (WebApplicationException e)
+        {
+            // Failed to get the configuration information.
+            writeError(e.getResponse(), response);
+        }
+    }
+
+
+    /**
+     * OpenID Provider configuration endpoint for Jersey.
+     */
+    @GET
+    public Response get(
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+            @Context HttpServletRequest request)
     {
-        // Handle the configuration request.
-        Response response = handle(AuthleteApiFactory.getDefaultApi());
+        // The tenant which the request has been routed to.
+        Tenant tenant = mTenants.get(request);
+
+        // Same as above, but the encoded document is returned as an entity.
+        return tenant.getConfiguration().get(() -> handle(tenant.getApi()))
+                .toResponse(acceptEncoding);
+    }
+
+
+    private static void writeError(Response error, HttpServletResponse response) throws IOException
+    {
+        response.setStatus(error.getStatus());
+
+        if (error.getMediaType() != null)
+        {
+            response.setContentType(error.getMediaType().toString());
+        }
 
-        // Return the configuration information.
-        return response.getEntity().toString();
+        if (error.getEntity() != null)
+        {
+            response.getWriter().write(error.getEntity().toString());
+        }
     }
 }
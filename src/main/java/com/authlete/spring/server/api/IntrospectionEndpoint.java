@@ -28,10 +28,13 @@ import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import com.authlete.common.api.AuthleteApiFactory;
 import com.authlete.common.web.BasicCredentials;
 import com.authlete.jakarta.BaseIntrospectionEndpoint;
+import com.authlete.spring.server.audit.AuditEventType;
+import com.authlete.spring.server.audit.AuditLog;
+import com.authlete.spring.server.tenant.TenantRegistry;
 
 
 /**
@@ -44,6 +47,14 @@ import com.authlete.jakarta.BaseIntrospectionEndpoint;
 @Path("/introspection")
 public class IntrospectionEndpoint extends BaseIntrospectionEndpoint
 {
+    @Autowired
+    private TenantRegistry mTenants;
+
+
+    @Autowired
+    private AuditLog mAuditLog;
+
+
     @POST
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     public Response post(
@@ -70,6 +81,12 @@ public class IntrospectionEndpoint extends BaseIntrospectionEndpoint
         // If the API caller does not have necessary privileges to call this API.
         if (authenticated == false)
         {
+            BasicCredentials credentials = BasicCredentials.parse(authorization);
+
+            mAuditLog.record(AuditEventType.INTROSPECTION_DENIED, mTenants.get(request).getId(),
+                    (credentials != null) ? credentials.getUserId() : null, null,
+                    Status.UNAUTHORIZED.getStatusCode(), null);
+
             // Return "401 Unauthorized".
             return Response.status(Status.UNAUTHORIZED).build();
         }
@@ -87,7 +104,7 @@ public class IntrospectionEndpoint extends BaseIntrospectionEndpoint
 
         // Handle the introspection request.
         return handle(
-                AuthleteApiFactory.getDefaultApi(),
+                mTenants.get(request).getApi(),
                 createMultivaluedMap(request.getParameterMap()));
     }
 
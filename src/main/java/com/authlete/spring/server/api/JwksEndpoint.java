@@ -17,12 +17,18 @@
 package com.authlete.spring.server.api;
 
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import com.authlete.common.api.AuthleteApiFactory;
 import com.authlete.jakarta.BaseJwksEndpoint;
+import com.authlete.spring.server.tenant.Tenant;
+import com.authlete.spring.server.tenant.TenantRegistry;
 
 
 /**
@@ -52,13 +58,26 @@ import com.authlete.jakarta.BaseJwksEndpoint;
 @Path("/jwks")
 public class JwksEndpoint extends BaseJwksEndpoint
 {
+    @Autowired
+    private TenantRegistry mTenants;
+
+
     /**
      * JWK Set endpoint.
      */
     @GET
-    public Response get()
+    public Response get(
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+            @Context HttpServletRequest request)
     {
-        // Handle the JWK Set request.
-        return handle(AuthleteApiFactory.getDefaultApi());
+        // The tenant which the request has been routed to.
+        Tenant tenant = mTenants.get(request);
+
+        // Handle the JWK Set request. The Authlete API is called only
+        // when the cached document of the tenant has expired (see
+        // authorization-server.cache.jwks-ttl). The encoded (and possibly
+        // compressed) bytes are written to the output stream as they are.
+        return tenant.getJwks().get(() -> handle(tenant.getApi()))
+                .toResponse(acceptEncoding);
     }
 }
@@ -26,10 +26,20 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import com.authlete.common.api.AuthleteApiFactory;
 import com.authlete.jakarta.BaseRevocationEndpoint;
+import com.authlete.spring.server.audit.AuditEventType;
+import com.authlete.spring.server.audit.AuditLog;
+import com.authlete.spring.server.cluster.CacheInvalidator;
+import com.authlete.spring.server.tenant.Tenant;
+import com.authlete.spring.server.tenant.TenantRegistry;
+import com.authlete.spring.server.token.ClientCredentialsCache;
+import com.authlete.spring.server.token.RevocationFilter;
+import com.authlete.spring.server.token.TokenDigest;
+import com.authlete.spring.server.userinfo.UserInfoCache;
 
 
 /**
@@ -42,6 +52,30 @@ import com.authlete.jakarta.BaseRevocationEndpoint;
 @Path("/revocation")
 public class RevocationEndpoint extends BaseRevocationEndpoint
 {
+    @Autowired
+    private TenantRegistry mTenants;
+
+
+    @Autowired
+    private ClientCredentialsCache mClientCredentialsCache;
+
+
+    @Autowired
+    private UserInfoCache mUserInfoCache;
+
+
+    @Autowired
+    private RevocationFilter mRevocationFilter;
+
+
+    @Autowired
+    private AuditLog mAuditLog;
+
+
+    @Autowired
+    private CacheInvalidator mCacheInvalidator;
+
+
     @POST
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     public Response post(
@@ -59,10 +93,40 @@ public class RevocationEndpoint extends BaseRevocationEndpoint
         // should return an error when the request contains query
         // parameters.
 
+        MultivaluedMap<String, String> parameters = createMultivaluedMap(request.getParameterMap());
+
+        // The tenant which the request has been routed to.
+        Tenant tenant = mTenants.get(request);
+
         // Handle the revocation request.
-        return handle(
-                AuthleteApiFactory.getDefaultApi(),
-                createMultivaluedMap(request.getParameterMap()),
-                authorization);
+        Response response = handle(tenant.getApi(), parameters, authorization);
+
+        if (response.getStatus() == 200)
+        {
+            String token = parameters.getFirst("token");
+
+            // Remember the revocation first so that cache entries put back
+            // by requests in flight are not served.
+            if (token != null)
+            {
+                mRevocationFilter.add(TokenDigest.of(token));
+            }
+
+            // Stop handing out the token and accepting it if it was cached.
+            // When a refresh token is revoked, the access tokens issued with
+            // it are unknown here and stay cached until they expire from the
+            // caches (see UserInfoCache and ClientCredentialsCache).
+            mClientCredentialsCache.evict(token);
+            mUserInfoCache.evict(tenant, token);
+
+            // And on the other nodes of the cluster.
+            mCacheInvalidator.tokenRevoked(tenant, token);
+
+            mAuditLog.record(AuditEventType.TOKEN_REVOKED, tenant.getId(),
+                    AuditLog.clientIdOf(authorization, parameters), null,
+                    response.getStatus(), parameters.getFirst("token_type_hint"));
+        }
+
+        return response;
     }
 }
@@ -26,10 +26,19 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import com.authlete.common.api.AuthleteApiFactory;
 import com.authlete.jakarta.BaseTokenEndpoint;
+import com.authlete.jakarta.TokenRequestHandler.Params;
+import com.authlete.spring.server.audit.AuditEventType;
+import com.authlete.spring.server.audit.AuditLog;
+import com.authlete.spring.server.tenant.Tenant;
+import com.authlete.spring.server.tenant.TenantRegistry;
+import com.authlete.spring.server.token.ClientCredentialsCache;
+import com.authlete.spring.server.token.DPoPProofVerifier;
+import com.authlete.spring.server.token.RefreshTokenDeduplicator;
 
 
 /**
@@ -45,6 +54,26 @@ import com.authlete.jakarta.BaseTokenEndpoint;
 @Path("/token")
 public class TokenEndpoint extends BaseTokenEndpoint
 {
+    @Autowired
+    private TenantRegistry mTenants;
+
+
+    @Autowired
+    private ClientCredentialsCache mClientCredentialsCache;
+
+
+    @Autowired
+    private RefreshTokenDeduplicator mRefreshTokenDeduplicator;
+
+
+    @Autowired
+    private DPoPProofVerifier mDPoPProofVerifier;
+
+
+    @Autowired
+    private AuditLog mAuditLog;
+
+
     /**
      * The token endpoint for {@code POST} method.
      *
@@ -86,11 +115,48 @@ public class TokenEndpoint extends BaseTokenEndpoint
         // should return an error when the request contains query
         // parameters.
 
-        // Handle the token request.
-        return handle(
-                AuthleteApiFactory.getDefaultApi(),
-                new TokenRequestHandlerSpiImpl(),
-                createMultivaluedMap(request.getParameterMap()),
-                authorization);
+        // The tenant which the request has been routed to.
+        Tenant tenant = mTenants.get(request);
+
+        MultivaluedMap<String, String> parameters = createMultivaluedMap(request.getParameterMap());
+
+        // Reject malformed or replayed DPoP proofs without calling Authlete.
+        Response rejection = mDPoPProofVerifier.verify(request);
+
+        if (rejection != null)
+        {
+            return rejection;
+        }
+
+        // The DPoP proof is passed to Authlete, which binds the token to
+        // the key of the proof. "htu" is checked by Authlete against the
+        // token endpoint configured for the service.
+        Params params = new Params()
+                .setParameters(parameters)
+                .setAuthorization(authorization)
+                .setDpop(request.getHeader("DPoP"))
+                .setHtm("POST");
+
+        // Handle the token request. A client credentials request may be
+        // answered with a token issued for an identical request, and
+        // concurrent refresh token requests share one call to Authlete.
+        // The API instance and the identity of its service in the keys are
+        // taken together, so that a token issued by one service is never
+        // cached under another's even while the tenant is reconfigured.
+        TokenRequestHandlerSpiImpl spi = new TokenRequestHandlerSpiImpl();
+        Tenant.Backend backend = tenant.getBackend();
+
+        Response response = mClientCredentialsCache.handle(tenant, backend, parameters, authorization, request,
+                () -> mRefreshTokenDeduplicator.handle(tenant, backend, parameters, authorization, request,
+                        () -> handle(backend.getApi(), spi, params)));
+
+        if (response.getStatus() == 200)
+        {
+            mAuditLog.record(AuditEventType.TOKEN_ISSUED, tenant.getId(),
+                    AuditLog.clientIdOf(authorization, parameters), spi.getSubject(),
+                    response.getStatus(), parameters.getFirst("grant_type"));
+        }
+
+        return response;
     }
 }
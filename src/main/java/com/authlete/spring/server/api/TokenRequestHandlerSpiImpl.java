@@ -33,6 +33,12 @@ import com.authlete.spring.server.db.UserDao;
  */
 class TokenRequestHandlerSpiImpl extends TokenRequestHandlerSpiAdapter
 {
+    /**
+     * The subject of the user authenticated by {@link #authenticateUser}.
+     */
+    private String mSubject;
+
+
     @Override
     public String authenticateUser(String username, String password)
     {
@@ -49,8 +55,24 @@ class TokenRequestHandlerSpiImpl extends TokenRequestHandlerSpiAdapter
             return null;
         }
 
+        // Remember the subject for the audit log.
+        mSubject = user.getSubject();
+
         // Return the subject (= unique identifier) of the user.
-        return user.getSubject();
+        return mSubject;
+    }
+
+
+    /**
+     * Get the subject of the user authenticated by the resource owner
+     * password credentials flow.
+     *
+     * @return
+     *         The subject, or {@code null} if no user has been authenticated.
+     */
+    String getSubject()
+    {
+        return mSubject;
     }
 
 
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.api;
+
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import com.authlete.jakarta.BaseUserInfoEndpoint;
+import com.authlete.spring.server.db.UserCache;
+import com.authlete.spring.server.tenant.Tenant;
+import com.authlete.spring.server.tenant.TenantRegistry;
+import com.authlete.spring.server.userinfo.UserInfoCache;
+import com.authlete.spring.server.userinfo.UserInfoDocument;
+
+
+/**
+ * An implementation of UserInfo endpoint.
+ *
+ * <p>
+ * Whether the response is a JSON object or a signed and/or encrypted JWT
+ * depends on the metadata of the client ({@code userinfo_signed_response_alg}
+ * and others) registered in Authlete. In either case, the response has an
+ * entity tag which stays the same while the claims do, so a resource server
+ * can poll the endpoint with {@code If-None-Match}. See {@link UserInfoDocument}.
+ * </p>
+ *
+ * @see <a href="http://openid.net/specs/openid-connect-core-1_0.html#UserInfo"
+ *      >OpenID Connect Core 1.0, 5.3. UserInfo Endpoint</a>
+ */
+@Component
+@Path("/userinfo")
+public class UserInfoEndpoint extends BaseUserInfoEndpoint
+{
+    @Autowired
+    private TenantRegistry mTenants;
+
+
+    @Autowired
+    private UserCache mUsers;
+
+
+    @Autowired
+    private UserInfoCache mCache;
+
+
+    /**
+     * The UserInfo endpoint for {@code GET} method.
+     *
+     * @see <a href="http://openid.net/specs/openid-connect-core-1_0.html#UserInfoRequest"
+     *      >OpenID Connect Core 1.0, 5.3.1. UserInfo Request</a>
+     */
+    @GET
+    public Response get(
+            @HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+            @Context HttpServletRequest request)
+    {
+        // Handle the userinfo request.
+        return handle(request, extractAccessToken(authorization, request.getParameter("access_token")));
+    }
+
+
+    /**
+     * The UserInfo endpoint for {@code POST} method.
+     *
+     * @see <a href="http://openid.net/specs/openid-connect-core-1_0.html#UserInfoRequest"
+     *      >OpenID Connect Core 1.0, 5.3.1. UserInfo Request</a>
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    public Response post(
+            @HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+            @Context HttpServletRequest request)
+    {
+        // See the comment in TokenEndpoint.post() for the reason why
+        // HttpServletRequest.getParameter() is used.
+
+        // Handle the userinfo request.
+        return handle(request, extractAccessToken(authorization, request.getParameter("access_token")));
+    }
+
+
+    private Response handle(HttpServletRequest request, String accessToken)
+    {
+        // The tenant which the request has been routed to.
+        Tenant tenant = mTenants.get(request);
+
+        // A response issued for the same access token a moment ago.
+        UserInfoDocument document = mCache.get(tenant, accessToken, request);
+
+        if (document == null)
+        {
+            UserInfoRequestHandlerSpiImpl spi = new UserInfoRequestHandlerSpiImpl(mUsers);
+
+            // Validate the access token and issue a response with Authlete.
+            Response response = handle(tenant.getApi(), spi, accessToken);
+
+            if (response.getStatus() != Response.Status.OK.getStatusCode())
+            {
+                return response;
+            }
+
+            document = mCache.put(tenant, accessToken, request, response, spi.getClaims());
+
+            if (document == null)
+            {
+                return response;
+            }
+        }
+
+        return document.toResponse(request.getHeader(HttpHeaders.IF_NONE_MATCH));
+    }
+}
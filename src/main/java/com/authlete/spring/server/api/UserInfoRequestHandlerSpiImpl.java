@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.api;
+
+
+import com.authlete.common.types.User;
+import com.authlete.jakarta.spi.UserInfoRequestHandlerSpiAdapter;
+import com.authlete.spring.server.db.UserCache;
+
+
+/**
+ * Implementation of {@link com.authlete.jakarta.spi.UserInfoRequestHandlerSpi
+ * UserInfoRequestHandlerSpi} interface which needs to be given to the
+ * constructor of {@link com.authlete.jakarta.UserInfoRequestHandler
+ * UserInfoRequestHandler}.
+ *
+ * <p>
+ * The claim values returned from {@link #getUserClaimValue(String, String,
+ * String)} are recorded, so that the endpoint can compute an entity tag
+ * which does not change as long as the claims do not change, even if the
+ * response is a signed or encrypted JWT. The tag also covers the access
+ * token, because a response may contain no claim resolved here.
+ * </p>
+ */
+class UserInfoRequestHandlerSpiImpl extends UserInfoRequestHandlerSpiAdapter
+{
+    /**
+     * The cache of users.
+     */
+    private final UserCache mUsers;
+
+
+    /**
+     * The claims returned so far.
+     */
+    private final StringBuilder mClaims = new StringBuilder();
+
+
+    public UserInfoRequestHandlerSpiImpl(UserCache users)
+    {
+        mUsers = users;
+    }
+
+
+    @Override
+    public Object getUserClaimValue(String subject, String claimName, String languageTag)
+    {
+        // Look up the user who has the subject.
+        User user = mUsers.get(subject);
+
+        // If not found.
+        if (user == null)
+        {
+            return null;
+        }
+
+        // The value of the claim in the language, if any.
+        Object value = user.getClaim(claimName, languageTag);
+
+        // Record the claim for the entity tag.
+        mClaims.append(subject).append('\0')
+               .append(claimName).append('#').append(languageTag).append('\0')
+               .append(value).append('\0');
+
+        return value;
+    }
+
+
+    /**
+     * Get the claims returned so far in a form which can be digested.
+     */
+    String getClaims()
+    {
+        return mClaims.toString();
+    }
+}
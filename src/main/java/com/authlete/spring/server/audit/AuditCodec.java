@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.audit;
+
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Binary format of audit log files.
+ *
+ * <pre>
+ * segment = magic(int) version(int) record* [0(int)]
+ * record  = length(int) timestamp(long) type(byte) status(short)
+ *           tenant clientId subject detail
+ * string  = -1(short) | length(short) UTF-8 bytes
+ * </pre>
+ *
+ * <p>
+ * {@code length} is the number of the bytes following it. A length of
+ * zero (the rest of a memory-mapped file which has not been truncated)
+ * marks the end of the segment. Strings longer than {@link #MAX_STRING}
+ * bytes are truncated.
+ * </p>
+ */
+final class AuditCodec
+{
+    static final int MAGIC   = 0x4F415544; // "OAUD"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+
+    /**
+     * The maximum number of bytes of a string.
+     */
+    static final int MAX_STRING = 2048;
+
+
+    /**
+     * The maximum size of a record.
+     */
+    static final int MAX_RECORD = 4 + 8 + 1 + 2 + 4 * (2 + MAX_STRING);
+
+
+    private final CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final CharsetDecoder mDecoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+
+    /**
+     * Encode an event into the buffer, which must have at least {@link
+     * #MAX_RECORD} bytes remaining.
+     */
+    void encode(AuditRingBuffer.Slot slot, ByteBuffer out)
+    {
+        int start = out.position();
+
+        out.putInt(0);
+        out.putLong(slot.timestamp);
+        out.put(slot.type.getCode());
+        out.putShort((short)Math.min(slot.status, Short.MAX_VALUE));
+        putString(out, slot.tenant);
+        putString(out, slot.clientId);
+        putString(out, slot.subject);
+        putString(out, slot.detail);
+
+        out.putInt(start, out.position() - start - 4);
+    }
+
+
+    private void putString(ByteBuffer out, String value)
+    {
+        if (value == null)
+        {
+            out.putShort((short)-1);
+            return;
+        }
+
+        int lengthPosition = out.position();
+        out.putShort((short)0);
+
+        // Encode into at most MAX_STRING bytes. The rest is dropped.
+        int limit = out.limit();
+        out.limit(out.position() + MAX_STRING);
+
+        mEncoder.reset();
+        mEncoder.encode(CharBuffer.wrap(value), out, true);
+        mEncoder.flush(out);
+
+        out.limit(limit);
+        out.putShort(lengthPosition, (short)(out.position() - lengthPosition - 2));
+    }
+
+
+    /**
+     * Decode a record into tab-separated fields: the timestamp in
+     * milliseconds, the type, the status, the tenant, the client ID, the
+     * subject and the detail.
+     *
+     * @return
+     *         The fields, or {@code null} at the end of the segment.
+     */
+    String[] decode(ByteBuffer in)
+    {
+        if (in.remaining() < 4)
+        {
+            return null;
+        }
+
+        int length = in.getInt();
+
+        if (length <= 0 || length > in.remaining())
+        {
+            return null;
+        }
+
+        ByteBuffer record = in.slice(in.position(), length);
+        in.position(in.position() + length);
+
+        try
+        {
+            long timestamp      = record.getLong();
+            AuditEventType type = AuditEventType.of(record.get());
+            int status          = record.getShort();
+
+            return new String[] {
+                    String.valueOf(timestamp),
+                    (type != null) ? type.name() : "UNKNOWN",
+                    String.valueOf(status),
+                    getString(record),
+                    getString(record),
+                    getString(record),
+                    getString(record)
+            };
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException e)
+        {
+            // A broken record.
+            return null;
+        }
+    }
+
+
+    private String getString(ByteBuffer in)
+    {
+        int length = in.getShort();
+
+        if (length < 0)
+        {
+            return null;
+        }
+
+        ByteBuffer bytes = in.slice(in.position(), length);
+        in.position(in.position() + length);
+
+        try
+        {
+            return mDecoder.reset().decode(bytes).toString();
+        }
+        catch (CharacterCodingException e)
+        {
+            // Not thrown because of CodingErrorAction.REPLACE.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.audit;
+
+
+/**
+ * Types of audit events. The code is what is written to the log file, so
+ * codes must never be reused for other types.
+ */
+public enum AuditEventType
+{
+    /**
+     * The end-user (or a remembered consent) authorized a client.
+     */
+    AUTHORIZATION_GRANTED(1),
+
+
+    /**
+     * The end-user denied an authorization request, or failed to log in
+     * on the authorization page.
+     */
+    AUTHORIZATION_DENIED(2),
+
+
+    /**
+     * The token endpoint issued a token.
+     */
+    TOKEN_ISSUED(3),
+
+
+    /**
+     * The introspection endpoint rejected the caller.
+     */
+    INTROSPECTION_DENIED(4),
+
+
+    /**
+     * The revocation endpoint revoked a token.
+     */
+    TOKEN_REVOKED(5);
+
+
+    private static final AuditEventType[] BY_CODE = new AuditEventType[6];
+
+
+    static
+    {
+        for (AuditEventType type : values())
+        {
+            BY_CODE[type.mCode] = type;
+        }
+    }
+
+
+    private final byte mCode;
+
+
+    private AuditEventType(int code)
+    {
+        mCode = (byte)code;
+    }
+
+
+    byte getCode()
+    {
+        return mCode;
+    }
+
+
+    /**
+     * Get the type of a code.
+     *
+     * @return
+     *         The type, or {@code null} if the code is unknown.
+     */
+    static AuditEventType of(byte code)
+    {
+        return (0 <= code && code < BY_CODE.length) ? BY_CODE[code] : null;
+    }
+}
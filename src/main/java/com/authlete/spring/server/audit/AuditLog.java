@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.audit;
+
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.core.MultivaluedMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.common.web.BasicCredentials;
+import com.authlete.spring.server.lifecycle.WarmUp;
+
+
+/**
+ * Audit log of OAuth events.
+ *
+ * <p>
+ * {@link #record(AuditEventType, String, String, String, int, String)
+ * record()} puts an event into a preallocated lock-free ring buffer and
+ * returns immediately. A background thread drains the buffer in batches
+ * and appends compact binary records to memory-mapped segment files in
+ * {@code authorization-server.audit.directory} (see {@link
+ * AuditSegmentWriter}), forcing them to the storage device every {@code
+ * force-interval} milliseconds. The files can be read by {@link
+ * AuditLogReader}.
+ * </p>
+ *
+ * <p>
+ * When the buffer is full, the event is dropped and counted ({@code
+ * overflow: drop}), or the request thread waits for a free slot ({@code
+ * overflow: block}).
+ * </p>
+ *
+ * <p>
+ * Failures to write or force the files are counted and logged, and the
+ * writer thread goes on. If the thread stops all the same, it is logged as
+ * an error and events are dropped from then on even with {@code overflow:
+ * block}, so that request threads never wait for a writer which is gone.
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=AuditLog")
+public class AuditLog
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditLog.class);
+
+
+    /**
+     * The maximum number of events written between checks of the force
+     * interval.
+     */
+    private static final int BATCH_SIZE = 1024;
+
+
+    /**
+     * How long the writer thread parks when the buffer is empty.
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+
+    /**
+     * After the first failure, one of this many failures to write an event
+     * is logged.
+     */
+    private static final long FAILURE_LOG_INTERVAL = 10000;
+
+
+    private final boolean mEnabled;
+    private final boolean mBlock;
+    private final long mForceInterval;
+    private final AuditRingBuffer mBuffer;
+    private final AuditSegmentWriter mWriter;
+    private final AtomicLong mRecorded = new AtomicLong();
+    private final AtomicLong mDropped  = new AtomicLong();
+    private final AtomicLong mFailed   = new AtomicLong();
+    private final AtomicLong mErrors   = new AtomicLong();
+    private volatile long mWritten;
+    private volatile boolean mRunning;
+    private Thread mThread;
+
+
+    public AuditLog(
+            @Value("${authorization-server.audit.enabled:false}") boolean enabled,
+            @Value("${authorization-server.audit.directory:audit}") String directory,
+            @Value("${authorization-server.audit.capacity:65536}") int capacity,
+            @Value("${authorization-server.audit.overflow:drop}") String overflow,
+            @Value("${authorization-server.audit.segment-size:67108864}") int segmentSize,
+            @Value("${authorization-server.audit.max-segments:100}") int maxSegments,
+            @Value("${authorization-server.audit.force-interval:1000}") long forceInterval)
+    {
+        mEnabled       = enabled;
+        mBlock         = "block".equalsIgnoreCase(overflow);
+        mForceInterval = TimeUnit.MILLISECONDS.toNanos(forceInterval);
+        mBuffer        = enabled ? new AuditRingBuffer(capacity) : null;
+        mWriter        = enabled ? new AuditSegmentWriter(Paths.get(directory), segmentSize, maxSegments) : null;
+    }
+
+
+    @PostConstruct
+    public void start()
+    {
+        if (mEnabled == false)
+        {
+            return;
+        }
+
+        mRunning = true;
+
+        // Not a daemon, so that the events are written before the JVM exits.
+        mThread = new Thread(this::run, "audit-writer");
+        mThread.start();
+    }
+
+
+    @PreDestroy
+    public void stop() throws InterruptedException
+    {
+        if (mThread == null)
+        {
+            return;
+        }
+
+        mRunning = false;
+        LockSupport.unpark(mThread);
+        mThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+
+    /**
+     * Record an event. Does nothing if the audit log is disabled.
+     *
+     * @param type
+     *         The type of the event.
+     *
+     * @param tenant
+     *         The ID of the tenant.
+     *
+     * @param clientId
+     *         The client ID, if known.
+     *
+     * @param subject
+     *         The subject of the end-user, if known.
+     *
+     * @param status
+     *         The HTTP status code of the response.
+     *
+     * @param detail
+     *         Additional information such as the grant type or scopes.
+     */
+    public void record(AuditEventType type, String tenant, String clientId,
+            String subject, int status, String detail)
+    {
+        if (mEnabled == false || WarmUp.isInProgress())
+        {
+            // Disabled, or a synthetic request of the warm-up.
+            return;
+        }
+
+        if (mBuffer.offer(System.currentTimeMillis(), type, status,
+                tenant, clientId, subject, detail, mBlock))
+        {
+            mRecorded.incrementAndGet();
+        }
+        else
+        {
+            mDropped.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Get the client ID of a request from the {@code Authorization} header
+     * (client_secret_basic) or the {@code client_id} parameter.
+     */
+    public static String clientIdOf(String authorization, MultivaluedMap<String, String> parameters)
+    {
+        BasicCredentials credentials = BasicCredentials.parse(authorization);
+
+        if (credentials != null && credentials.getUserId() != null)
+        {
+            return credentials.getUserId();
+        }
+
+        return parameters.getFirst("client_id");
+    }
+
+
+    private void run()
+    {
+        long lastForce = System.nanoTime();
+        long written   = 0;
+
+        try
+        {
+            while (true)
+            {
+                boolean running = mRunning;
+                int count = drain();
+
+                written += count;
+                mWritten = written;
+
+                long now = System.nanoTime();
+
+                if (now - lastForce >= mForceInterval)
+                {
+                    force();
+                    lastForce = now;
+                }
+
+                if (count == 0)
+                {
+                    if (running == false)
+                    {
+                        // Drained everything after stop() was called.
+                        break;
+                    }
+
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        }
+        catch (Throwable t)
+        {
+            LOGGER.error("The audit log writer has stopped. Audit events are dropped from now on.", t);
+            throw t;
+        }
+        finally
+        {
+            // Producers must not wait for free slots any longer.
+            mBuffer.abandon();
+
+            try
+            {
+                mWriter.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Failed to close the audit log: {}", e.toString());
+            }
+        }
+    }
+
+
+    private int drain()
+    {
+        try
+        {
+            return mBuffer.drain(slot -> {
+                try
+                {
+                    mWriter.write(slot);
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    // The event is lost. Keep draining so that request
+                    // threads are not blocked by a broken storage.
+                    long failed = mFailed.getAndIncrement();
+
+                    if (failed % FAILURE_LOG_INTERVAL == 0)
+                    {
+                        LOGGER.error("Failed to write an audit event ({} failures so far).", failed + 1, e);
+                    }
+                }
+            }, BATCH_SIZE);
+        }
+        catch (Exception e)
+        {
+            // Not thrown by the handler above. Counted, and the events
+            // drained so far are kept.
+            mErrors.incrementAndGet();
+            LOGGER.error("Failed to drain audit events.", e);
+
+            return 0;
+        }
+    }
+
+
+    private void force()
+    {
+        try
+        {
+            mWriter.force();
+        }
+        catch (RuntimeException e)
+        {
+            // e.g. UncheckedIOException from MappedByteBuffer.force().
+            // Retried at the next force interval.
+            mErrors.incrementAndGet();
+            LOGGER.error("Failed to force the audit log to the storage.", e);
+        }
+    }
+
+
+    @ManagedAttribute(description = "The number of events put into the buffer.")
+    public long getRecorded()
+    {
+        return mRecorded.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of events dropped because the buffer was full.")
+    public long getDropped()
+    {
+        return mDropped.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of events written to the log files.")
+    public long getWritten()
+    {
+        return mWritten - mFailed.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of events which could not be written.")
+    public long getFailed()
+    {
+        return mFailed.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of failures to force the log files to the storage or to drain the buffer.")
+    public long getErrors()
+    {
+        return mErrors.get();
+    }
+
+
+    @ManagedAttribute(description = "True if the writer thread is running.")
+    public boolean isWriterAlive()
+    {
+        return mThread != null && mThread.isAlive();
+    }
+
+
+    @ManagedAttribute(description = "The number of events waiting in the buffer.")
+    public long getPending()
+    {
+        return (mBuffer == null) ? 0 : mBuffer.size();
+    }
+
+
+    @ManagedAttribute(description = "The number of segment files created since startup.")
+    public long getSegments()
+    {
+        return (mWriter == null) ? 0 : mWriter.getSegments();
+    }
+}
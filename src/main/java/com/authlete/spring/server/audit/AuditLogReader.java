@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.audit;
+
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Offline reader of audit log files written by {@link AuditLog}.
+ *
+ * <p>
+ * Prints every record as a tab-separated line of the time (ISO 8601), the
+ * event type, the HTTP status, the tenant, the client ID, the subject and
+ * the detail. Missing values are printed as {@code -}. Arguments are
+ * segment files or directories containing them; segments in a directory
+ * are read in the order of creation.
+ * </p>
+ *
+ * <pre>
+ * $ java -cp target/classes com.authlete.spring.server.audit.AuditLogReader audit
+ * </pre>
+ *
+ * <p>
+ * The segment being written by a running server can be read, too. Its
+ * records up to the point the reader has reached are printed.
+ * </p>
+ */
+public final class AuditLogReader
+{
+    private AuditLogReader()
+    {
+    }
+
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 0)
+        {
+            System.err.println("Usage: AuditLogReader {file|directory}...");
+            System.exit(1);
+        }
+
+        List<Path> files = new ArrayList<>();
+
+        for (String arg : args)
+        {
+            Path path = Paths.get(arg);
+
+            if (Files.isDirectory(path))
+            {
+                files.addAll(AuditSegmentWriter.listSegments(path));
+            }
+            else
+            {
+                files.add(path);
+            }
+        }
+
+        AuditCodec codec = new AuditCodec();
+
+        for (Path file : files)
+        {
+            read(file, codec, System.out);
+        }
+
+        System.out.flush();
+    }
+
+
+    private static void read(Path file, AuditCodec codec, PrintStream out) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (isSegment(buffer) == false)
+            {
+                System.err.println(file + ": not an audit log file");
+                return;
+            }
+
+            StringBuilder line = new StringBuilder();
+            String[] fields;
+
+            while ((fields = codec.decode(buffer)) != null)
+            {
+                line.setLength(0);
+                line.append(Instant.ofEpochMilli(Long.parseLong(fields[0])));
+
+                for (int i = 1; i < fields.length; i++)
+                {
+                    line.append('\t').append(fields[i] != null ? escape(fields[i]) : "-");
+                }
+
+                out.println(line);
+            }
+        }
+    }
+
+
+    private static boolean isSegment(ByteBuffer buffer)
+    {
+        return buffer.remaining() >= AuditCodec.HEADER_SIZE
+                && buffer.getInt() == AuditCodec.MAGIC
+                && buffer.getInt() == AuditCodec.VERSION;
+    }
+
+
+    private static String escape(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+}
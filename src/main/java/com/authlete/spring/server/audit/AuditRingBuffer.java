@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.audit;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Bounded multi-producer single-consumer ring buffer of audit events.
+ *
+ * <p>
+ * The slots are allocated once and reused, so recording an event allocates
+ * nothing. A producer claims a sequence number by CAS, fills the slot of the
+ * sequence, and publishes the sequence number in the slot's entry of
+ * {@code mPublished}. The consumer processes slots in sequence order as long
+ * as they are published, and then frees them by advancing {@code
+ * mConsumed}. Neither side takes a lock.
+ * </p>
+ */
+final class AuditRingBuffer
+{
+    /**
+     * How long a producer parks when the buffer is full in the blocking mode.
+     */
+    private static final long FULL_PARK_NANOS = 50_000;
+
+
+    /**
+     * An event in the buffer. Strings are held by reference and encoded by
+     * the consumer.
+     */
+    static final class Slot
+    {
+        long timestamp;
+        AuditEventType type;
+        int status;
+        String tenant;
+        String clientId;
+        String subject;
+        String detail;
+    }
+
+
+    /**
+     * Receiver of the events drained from the buffer.
+     */
+    interface Handler
+    {
+        void handle(Slot slot) throws Exception;
+    }
+
+
+    private final Slot[] mSlots;
+    private final AtomicLongArray mPublished;
+    private final int mMask;
+    private final AtomicLong mClaimed = new AtomicLong();
+    private volatile long mConsumed;
+    private volatile boolean mAbandoned;
+
+
+    /**
+     * @param capacity
+     *         The number of slots. Rounded up to a power of two.
+     */
+    AuditRingBuffer(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        mSlots     = new Slot[size];
+        mPublished = new AtomicLongArray(size);
+        mMask      = size - 1;
+
+        for (int i = 0; i < size; i++)
+        {
+            mSlots[i] = new Slot();
+
+            // No sequence has been published in the slot.
+            mPublished.set(i, -1);
+        }
+    }
+
+
+    /**
+     * Put an event into the buffer.
+     *
+     * @param block
+     *         True to wait for a free slot when the buffer is full. False
+     *         to give up immediately. Ignored once the consumer has stopped.
+     *
+     * @return
+     *         True if the event has been put.
+     */
+    boolean offer(long timestamp, AuditEventType type, int status,
+            String tenant, String clientId, String subject, String detail, boolean block)
+    {
+        long sequence;
+
+        while (true)
+        {
+            sequence = mClaimed.get();
+
+            if (sequence - mConsumed >= mSlots.length)
+            {
+                if (block == false || mAbandoned)
+                {
+                    // No slot will be freed if the consumer has stopped.
+                    return false;
+                }
+
+                // Wait for the consumer to free slots.
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+                continue;
+            }
+
+            if (mClaimed.compareAndSet(sequence, sequence + 1))
+            {
+                break;
+            }
+        }
+
+        int index = (int)sequence & mMask;
+        Slot slot = mSlots[index];
+
+        slot.timestamp = timestamp;
+        slot.type      = type;
+        slot.status    = status;
+        slot.tenant    = tenant;
+        slot.clientId  = clientId;
+        slot.subject   = subject;
+        slot.detail    = detail;
+
+        // Make the slot visible to the consumer.
+        mPublished.setRelease(index, sequence);
+
+        return true;
+    }
+
+
+    /**
+     * Process published events in order. Must be called by one thread only.
+     *
+     * @param max
+     *         The maximum number of events to process.
+     *
+     * @return
+     *         The number of events processed.
+     */
+    int drain(Handler handler, int max) throws Exception
+    {
+        long next  = mConsumed;
+        int  count = 0;
+
+        try
+        {
+            while (count < max)
+            {
+                int index = (int)next & mMask;
+
+                if (mPublished.getAcquire(index) != next)
+                {
+                    // Not published yet.
+                    break;
+                }
+
+                Slot slot = mSlots[index];
+
+                handler.handle(slot);
+
+                // Don't keep the strings reachable.
+                slot.tenant   = null;
+                slot.clientId = null;
+                slot.subject  = null;
+                slot.detail   = null;
+
+                next++;
+                count++;
+            }
+        }
+        finally
+        {
+            // Free the processed slots.
+            mConsumed = next;
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Tell producers that the consumer has stopped, so that they do not
+     * wait for free slots any longer.
+     */
+    void abandon()
+    {
+        mAbandoned = true;
+    }
+
+
+    /**
+     * The number of events claimed but not processed yet.
+     */
+    long size()
+    {
+        return Math.max(0, mClaimed.get() - mConsumed);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.audit;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Writer of append-only, memory-mapped audit log segments.
+ *
+ * <p>
+ * Each segment is a file named {@code audit-<timestamp>-<n>.log} of {@code
+ * segmentSize} bytes mapped into memory, so that appending a record is a
+ * memory copy. When a segment is full, it is truncated to the written size
+ * and a new one is created. The oldest segments beyond {@code maxSegments}
+ * are deleted. Used by the writer thread of {@link AuditLog} only.
+ * </p>
+ */
+final class AuditSegmentWriter implements Closeable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditSegmentWriter.class);
+
+    static final String PREFIX = "audit-";
+    static final String SUFFIX = ".log";
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+
+    private final Path mDirectory;
+    private final int mSegmentSize;
+    private final int mMaxSegments;
+    private final AuditCodec mCodec = new AuditCodec();
+    private final ByteBuffer mScratch = ByteBuffer.allocate(AuditCodec.MAX_RECORD);
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private Path mFile;
+    private boolean mDirty;
+    private volatile long mSegments;
+
+
+    AuditSegmentWriter(Path directory, int segmentSize, int maxSegments)
+    {
+        mDirectory   = directory;
+        mSegmentSize = Math.max(segmentSize, AuditCodec.HEADER_SIZE + AuditCodec.MAX_RECORD + 4);
+        mMaxSegments = maxSegments;
+    }
+
+
+    void write(AuditRingBuffer.Slot slot) throws IOException
+    {
+        mScratch.clear();
+        mCodec.encode(slot, mScratch);
+        mScratch.flip();
+
+        // Keep 4 bytes for the end mark of the segment.
+        if (mBuffer == null || mBuffer.remaining() < mScratch.remaining() + 4)
+        {
+            rotate();
+        }
+
+        mBuffer.put(mScratch);
+        mDirty = true;
+    }
+
+
+    /**
+     * Write the records to the storage device.
+     */
+    void force()
+    {
+        if (mBuffer != null && mDirty)
+        {
+            mBuffer.force();
+            mDirty = false;
+        }
+    }
+
+
+    /**
+     * The number of segments created by this writer.
+     */
+    long getSegments()
+    {
+        return mSegments;
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        finish();
+    }
+
+
+    private void rotate() throws IOException
+    {
+        finish();
+
+        Files.createDirectories(mDirectory);
+
+        // The names sort in the order of creation.
+        Path file = mDirectory.resolve(String.format("%s%s-%06d%s",
+                PREFIX, LocalDateTime.now().format(TIMESTAMP), mSegments, SUFFIX));
+
+        // CREATE_NEW so that an existing segment is never overwritten.
+        mChannel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mBuffer  = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+        mFile    = file;
+        mSegments++;
+
+        mBuffer.putInt(AuditCodec.MAGIC);
+        mBuffer.putInt(AuditCodec.VERSION);
+
+        deleteOldSegments();
+    }
+
+
+    private void finish() throws IOException
+    {
+        if (mChannel == null)
+        {
+            return;
+        }
+
+        int size = mBuffer.position();
+
+        force();
+        mBuffer = null;
+
+        try
+        {
+            // Drop the unused part of the segment. This may fail on some
+            // platforms while the file is still mapped, in which case the
+            // reader stops at the zero-filled part.
+            mChannel.truncate(size);
+        }
+        catch (IOException e)
+        {
+            LOGGER.debug("Failed to truncate '{}': {}", mFile, e.toString());
+        }
+        finally
+        {
+            mChannel.close();
+            mChannel = null;
+        }
+    }
+
+
+    private void deleteOldSegments() throws IOException
+    {
+        List<Path> segments = listSegments(mDirectory);
+
+        for (int i = 0; i < segments.size() - mMaxSegments; i++)
+        {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+
+    /**
+     * List the segments in the directory, oldest first.
+     */
+    static List<Path> listSegments(Path directory) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            return files
+                    .filter(AuditSegmentWriter::isSegment)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+
+    static boolean isSegment(Path file)
+    {
+        String name = file.getFileName().toString();
+
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.client;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import com.authlete.common.dto.Client;
+import com.authlete.common.types.ResponseType;
+
+
+/**
+ * The part of the metadata of a client which is needed to pre-validate
+ * authorization requests.
+ */
+class ClientMetadata
+{
+    /**
+     * Metadata which accepts any request. Used when the client could not
+     * be looked up.
+     */
+    static final ClientMetadata UNKNOWN = new ClientMetadata();
+
+
+    private final Set<String> mRedirectUris;
+    private final Set<String> mResponseTypes;
+    private final long mFetchedAt;
+
+
+    private ClientMetadata()
+    {
+        mRedirectUris  = Collections.emptySet();
+        mResponseTypes = Collections.emptySet();
+        mFetchedAt     = Long.MAX_VALUE;
+    }
+
+
+    ClientMetadata(Client client)
+    {
+        mRedirectUris  = toSet(client.getRedirectUris());
+        mResponseTypes = new HashSet<String>();
+        mFetchedAt     = System.currentTimeMillis();
+
+        if (client.getResponseTypes() != null)
+        {
+            for (ResponseType type : client.getResponseTypes())
+            {
+                mResponseTypes.add(type.name());
+            }
+        }
+    }
+
+
+    /**
+     * Check if the redirect URI is acceptable. Always {@code true} if the
+     * client has not registered any redirect URI, because the decision
+     * depends on the settings of the service in that case.
+     */
+    boolean acceptsRedirectUri(String redirectUri)
+    {
+        return mRedirectUris.isEmpty() || mRedirectUris.contains(redirectUri);
+    }
+
+
+    /**
+     * Check if the response type is acceptable.
+     *
+     * @param responseType
+     *         The normalized response type. See {@link
+     *         ClientPreValidator#normalizeResponseType(String)}.
+     */
+    boolean acceptsResponseType(String responseType)
+    {
+        return mResponseTypes.isEmpty() || mResponseTypes.contains(responseType);
+    }
+
+
+    /**
+     * Get the time in milliseconds when the metadata was fetched from
+     * Authlete.
+     */
+    long getFetchedAt()
+    {
+        return mFetchedAt;
+    }
+
+
+    /**
+     * Get the redirect URI which is used when the request does not
+     * contain one. {@code null} if the client has not registered exactly
+     * one redirect URI.
+     */
+    String getDefaultRedirectUri()
+    {
+        return (mRedirectUris.size() == 1) ? mRedirectUris.iterator().next() : null;
+    }
+
+
+    private static Set<String> toSet(String[] values)
+    {
+        if (values == null)
+        {
+            return Collections.emptySet();
+        }
+
+        return new HashSet<String>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,609 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.client;
+
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.common.api.AuthleteApi;
+import com.authlete.common.api.AuthleteApiException;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.ClientListResponse;
+import com.authlete.common.types.ResponseType;
+import com.authlete.jakarta.ResponseUtil;
+import com.authlete.spring.server.tenant.Tenant;
+import com.authlete.spring.server.tenant.TenantRegistry;
+
+
+/**
+ * Pre-validation of authorization requests against local replicas of the
+ * client metadata.
+ *
+ * <p>
+ * The metadata of the clients of each tenant (client IDs, redirect URIs and
+ * response types) is fetched from Authlete every {@code
+ * authorization-server.clients.refresh-interval} seconds. Authorization
+ * requests which are obviously invalid are rejected by {@link
+ * #preValidate(Tenant, MultivaluedMap)} without calling Authlete's
+ * {@code /auth/authorization} API.
+ * </p>
+ *
+ * <ul>
+ * <li>A client ID which is not in the replica is looked up once. If it
+ *     does not exist, the request is rejected and the client ID is kept
+ *     in a negative cache for {@code authorization-server.clients.negative-ttl}
+ *     seconds, during which requests with it are rejected without calling
+ *     Authlete at all. The TTL is short, so a client registered just after
+ *     such a lookup is accepted within seconds.
+ * <li>A redirect URI which is not registered is rejected without
+ *     redirection. Loopback redirect URIs are left to Authlete because
+ *     their port numbers may vary.
+ * <li>A response type which is not registered is rejected by redirecting
+ *     the user agent to the client with {@code unauthorized_client}.
+ * <li>Before a request is rejected for its redirect URI or response type,
+ *     the client is looked up again if its metadata is older than the
+ *     negative TTL, so that clients updated after the last refresh are not
+ *     rejected.
+ * </ul>
+ *
+ * <p>
+ * Requests with {@code request} or {@code request_uri} are always passed
+ * to Authlete, because their parameters may come from a request object.
+ * Requests are passed to Authlete, too, until the replica of the tenant
+ * has been loaded, and for tenants with more than {@code
+ * authorization-server.clients.max-clients} clients.
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=ClientPreValidator")
+public class ClientPreValidator
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClientPreValidator.class);
+
+
+    /**
+     * The number of clients fetched by one call of Authlete's client list API.
+     */
+    private static final int PAGE_SIZE = 200;
+
+
+    private final TenantRegistry mTenants;
+    private final boolean mEnabled;
+    private final long mRefreshInterval;
+    private final long mNegativeTtlMillis;
+    private final int mMaxNegative;
+    private final int mMaxClients;
+    private final Map<String, ClientReplica> mReplicas = new ConcurrentHashMap<String, ClientReplica>();
+    private final Set<String> mLoading = ConcurrentHashMap.newKeySet();
+    private final AtomicLong mRejected      = new AtomicLong();
+    private final AtomicLong mNegativeHits  = new AtomicLong();
+    private final AtomicLong mConfirmations = new AtomicLong();
+    private ScheduledExecutorService mRefresher;
+
+
+    public ClientPreValidator(
+            TenantRegistry tenants,
+            @Value("${authorization-server.clients.pre-validation:true}") boolean enabled,
+            @Value("${authorization-server.clients.refresh-interval:300}") long refreshInterval,
+            @Value("${authorization-server.clients.negative-ttl:10}") long negativeTtl,
+            @Value("${authorization-server.clients.max-negative:10000}") int maxNegative,
+            @Value("${authorization-server.clients.max-clients:100000}") int maxClients)
+    {
+        mTenants           = tenants;
+        mEnabled           = enabled;
+        mRefreshInterval   = refreshInterval;
+        mNegativeTtlMillis = TimeUnit.SECONDS.toMillis(negativeTtl);
+        mMaxNegative       = maxNegative;
+        mMaxClients        = maxClients;
+    }
+
+
+    @PostConstruct
+    public void start()
+    {
+        if (mEnabled == false)
+        {
+            return;
+        }
+
+        mRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "client-replicator");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        mRefresher.scheduleWithFixedDelay(this::refreshAll, 0, mRefreshInterval, TimeUnit.SECONDS);
+    }
+
+
+    @PreDestroy
+    public void stop()
+    {
+        if (mRefresher != null)
+        {
+            mRefresher.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Pre-validate an authorization request.
+     *
+     * @param tenant
+     *         The tenant which the request has been routed to.
+     *
+     * @param parameters
+     *         The request parameters.
+     *
+     * @return
+     *         A response which rejects the request, or {@code null} if the
+     *         request should be passed to Authlete.
+     */
+    public Response preValidate(Tenant tenant, MultivaluedMap<String, String> parameters)
+    {
+        if (mEnabled == false
+                || parameters.containsKey("request")
+                || parameters.containsKey("request_uri"))
+        {
+            return null;
+        }
+
+        String clientId = parameters.getFirst("client_id");
+
+        if (clientId == null)
+        {
+            // Authlete returns a proper error.
+            return null;
+        }
+
+        // The replica and the lookups belong to the same service.
+        Tenant.Backend backend = tenant.getBackend();
+        ClientReplica replica  = replicaOf(tenant, backend);
+
+        if (replica == null)
+        {
+            return null;
+        }
+
+        ClientMetadata client = replica.find(clientId);
+
+        if (client == null)
+        {
+            if (replica.isKnownUnknown(clientId))
+            {
+                // Looked up recently and not found. Looked up again once
+                // the negative TTL has passed.
+                mNegativeHits.incrementAndGet();
+                return reject("The client does not exist.");
+            }
+
+            client = confirm(backend, replica, clientId);
+
+            if (client == null)
+            {
+                return reject("The client does not exist.");
+            }
+        }
+
+        String redirectUri  = parameters.getFirst("redirect_uri");
+        String responseType = normalizeResponseType(parameters.getFirst("response_type"));
+
+        if (accepts(client, redirectUri, responseType))
+        {
+            return null;
+        }
+
+        if (client.getFetchedAt() + mNegativeTtlMillis < System.currentTimeMillis())
+        {
+            // The redirect URI or the response type may have been added
+            // since the metadata was fetched. Check the latest one. The
+            // result is kept, so this costs at most one call per client
+            // per negative TTL.
+            client = confirm(backend, replica, clientId);
+
+            if (client == null)
+            {
+                return reject("The client does not exist.");
+            }
+
+            if (accepts(client, redirectUri, responseType))
+            {
+                return null;
+            }
+        }
+
+        if (redirectUri != null && isLoopback(redirectUri) == false
+                && client.acceptsRedirectUri(redirectUri) == false)
+        {
+            return reject("The redirect URI is not registered.");
+        }
+
+        return redirectError(client, redirectUri, responseType, parameters);
+    }
+
+
+    private static boolean accepts(ClientMetadata client, String redirectUri, String responseType)
+    {
+        if (redirectUri != null && isLoopback(redirectUri) == false
+                && client.acceptsRedirectUri(redirectUri) == false)
+        {
+            return false;
+        }
+
+        return responseType == null || client.acceptsResponseType(responseType);
+    }
+
+
+    private ClientReplica replicaOf(Tenant tenant, Tenant.Backend backend)
+    {
+        ClientReplica replica = mReplicas.get(tenant.getId());
+
+        if (replica != null && replica.getIdentity().equals(backend.getIdentity()))
+        {
+            // null if the replica could not be loaded. It is retried by
+            // the periodic refresh.
+            return replica.isLoaded() ? replica : null;
+        }
+
+        // A new tenant, or the tenant now refers to another service.
+        // Load the replica in the background and let Authlete handle
+        // the request meanwhile.
+        if (mRefresher != null && mLoading.add(tenant.getId()))
+        {
+            mRefresher.execute(() -> {
+                try
+                {
+                    refresh(tenant);
+                }
+                finally
+                {
+                    mLoading.remove(tenant.getId());
+                }
+            });
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Look up a client with Authlete, e.g. because it is not in the replica.
+     * The result is cached, so a client ID costs at most one call per
+     * negative TTL or refresh.
+     */
+    private ClientMetadata confirm(Tenant.Backend backend, ClientReplica replica, String clientId)
+    {
+        mConfirmations.incrementAndGet();
+
+        try
+        {
+            ClientMetadata client = new ClientMetadata(backend.getApi().getClient(clientId));
+            replica.putConfirmed(clientId, client);
+
+            return client;
+        }
+        catch (AuthleteApiException e)
+        {
+            if (e.getStatusCode() == 400 || e.getStatusCode() == 404)
+            {
+                // The client does not exist.
+                replica.putUnknown(clientId);
+                return null;
+            }
+
+            // Authlete is not reachable or something. Pretend that the
+            // client exists and let Authlete's response tell the truth.
+            return ClientMetadata.UNKNOWN;
+        }
+    }
+
+
+    private void refreshAll()
+    {
+        for (Tenant tenant : mTenants.getTenants())
+        {
+            refresh(tenant);
+        }
+
+        // Discard the replicas of the removed tenants.
+        mReplicas.keySet().removeIf(id -> mTenants.findById(id) == null);
+    }
+
+
+    private void refresh(Tenant tenant)
+    {
+        Tenant.Backend backend = tenant.getBackend();
+        String identity        = backend.getIdentity();
+        ClientReplica replica  = mReplicas.get(tenant.getId());
+
+        if (replica == null || replica.getIdentity().equals(identity) == false)
+        {
+            replica = new ClientReplica(identity, mNegativeTtlMillis, mMaxNegative);
+            mReplicas.put(tenant.getId(), replica);
+        }
+
+        try
+        {
+            Map<String, ClientMetadata> clients = fetchClients(backend.getApi());
+
+            if (clients != null)
+            {
+                replica.replace(clients);
+                return;
+            }
+
+            LOGGER.info("Tenant '{}' has more than {} clients. Its authorization requests are not pre-validated.",
+                    tenant.getId(), mMaxClients);
+            replica.discard();
+        }
+        catch (Exception e)
+        {
+            // Keep the current snapshot, if any.
+            LOGGER.warn("Failed to refresh the clients of tenant '{}': {}", tenant.getId(), e.getMessage());
+        }
+    }
+
+
+    /**
+     * Fetch the metadata of all the clients of the service.
+     *
+     * @return
+     *         Client metadata keyed by client ID and client ID alias, or
+     *         {@code null} if there are too many clients.
+     */
+    private Map<String, ClientMetadata> fetchClients(AuthleteApi api)
+    {
+        Map<String, ClientMetadata> clients = new HashMap<String, ClientMetadata>();
+
+        for (int start = 0; ; start += PAGE_SIZE)
+        {
+            ClientListResponse page = api.getClientList(start, start + PAGE_SIZE);
+
+            if (page.getTotalCount() > mMaxClients)
+            {
+                return null;
+            }
+
+            Client[] list = page.getClients();
+
+            if (list == null || list.length == 0)
+            {
+                return clients;
+            }
+
+            for (Client client : list)
+            {
+                ClientMetadata metadata = new ClientMetadata(client);
+
+                clients.put(String.valueOf(client.getClientId()), metadata);
+
+                if (client.isClientIdAliasEnabled() && client.getClientIdAlias() != null)
+                {
+                    clients.put(client.getClientIdAlias(), metadata);
+                }
+            }
+
+            if (start + list.length >= page.getTotalCount())
+            {
+                return clients;
+            }
+        }
+    }
+
+
+    private Response reject(String description)
+    {
+        mRejected.incrementAndGet();
+
+        // The redirect URI cannot be trusted, so the error is returned
+        // to the user agent in the same format as Authlete's errors.
+        return ResponseUtil.badRequest(String.format(
+                "{\"error\":\"invalid_request\",\"error_description\":\"%s\"}", description));
+    }
+
+
+    private Response redirectError(
+            ClientMetadata client, String redirectUri, String responseType,
+            MultivaluedMap<String, String> parameters)
+    {
+        if (redirectUri == null)
+        {
+            redirectUri = client.getDefaultRedirectUri();
+        }
+
+        if (redirectUri == null || parameters.containsKey("response_mode"))
+        {
+            // Let Authlete determine where and how to report the error.
+            return null;
+        }
+
+        mRejected.incrementAndGet();
+
+        String error = isKnownResponseType(responseType)
+                ? "unauthorized_client" : "unsupported_response_type";
+
+        StringBuilder location = new StringBuilder(redirectUri);
+
+        // The default response mode is "query" for "code" and "none",
+        // and "fragment" for the others.
+        if (responseType.equals("CODE") || responseType.equals("NONE"))
+        {
+            location.append(redirectUri.indexOf('?') < 0 ? '?' : '&');
+        }
+        else
+        {
+            location.append('#');
+        }
+
+        location.append("error=").append(error);
+
+        String state = parameters.getFirst("state");
+
+        if (state != null)
+        {
+            location.append("&state=").append(URLEncoder.encode(state, StandardCharsets.UTF_8));
+        }
+
+        return ResponseUtil.location(location.toString());
+    }
+
+
+    /**
+     * Normalize the value of {@code response_type} into the name of the
+     * {@link ResponseType} enum, e.g. {@code "id_token code"} into
+     * {@code "CODE_ID_TOKEN"}. {@code null} if the value is empty.
+     */
+    static String normalizeResponseType(String value)
+    {
+        if (value == null || value.isBlank())
+        {
+            return null;
+        }
+
+        String[] tokens = value.trim().split(" +");
+        Arrays.sort(tokens);
+
+        return String.join("_", tokens).toUpperCase(Locale.ROOT);
+    }
+
+
+    private static boolean isKnownResponseType(String name)
+    {
+        for (ResponseType type : ResponseType.values())
+        {
+            if (type.name().equals(name))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private static boolean isLoopback(String redirectUri)
+    {
+        try
+        {
+            String host = URI.create(redirectUri).getHost();
+
+            return "localhost".equals(host) || "127.0.0.1".equals(host) || "[::1]".equals(host);
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Not a URI. Authlete rejects it unless it is registered.
+            return false;
+        }
+    }
+
+
+    /**
+     * Forget what is known about a client of the tenant, e.g. because the
+     * client has been updated. The client is looked up again when it is
+     * used next time.
+     */
+    public void invalidateClient(String tenantId, String clientId)
+    {
+        ClientReplica replica = mReplicas.get(tenantId);
+
+        if (replica != null)
+        {
+            replica.forget(clientId);
+        }
+    }
+
+
+    /**
+     * Forget what is known about all the clients and reload the replicas.
+     */
+    public void invalidateClients()
+    {
+        for (ClientReplica replica : mReplicas.values())
+        {
+            replica.forgetLookups();
+        }
+
+        refreshNow();
+    }
+
+
+    @ManagedOperation(description = "Refresh the client replicas of all the tenants now.")
+    public void refreshNow()
+    {
+        if (mRefresher != null)
+        {
+            mRefresher.execute(this::refreshAll);
+        }
+    }
+
+
+    @ManagedAttribute(description = "The number of clients in the replicas.")
+    public int getReplicatedClients()
+    {
+        int count = 0;
+
+        for (ClientReplica replica : mReplicas.values())
+        {
+            count += replica.size();
+        }
+
+        return count;
+    }
+
+
+    @ManagedAttribute(description = "The number of authorization requests rejected without calling Authlete.")
+    public long getRejected()
+    {
+        return mRejected.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of unknown client IDs found in the negative cache.")
+    public long getNegativeHits()
+    {
+        return mNegativeHits.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of client IDs not in the replicas looked up at Authlete.")
+    public long getConfirmations()
+    {
+        return mConfirmations.get();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.client;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Snapshot of the clients of one tenant.
+ *
+ * <p>
+ * The snapshot is replaced as a whole when it is refreshed. Clients which
+ * are confirmed between refreshes (e.g. those registered or updated after
+ * the last refresh) are kept in a separate map, and client IDs which are confirmed
+ * not to exist are kept in a bounded negative cache.
+ * </p>
+ */
+class ClientReplica
+{
+    private final String mIdentity;
+    private final long mNegativeTtlMillis;
+    private final Map<String, Long> mUnknown;
+    private final Map<String, ClientMetadata> mConfirmed = new ConcurrentHashMap<String, ClientMetadata>();
+    private volatile Map<String, ClientMetadata> mClients;
+
+
+    ClientReplica(String identity, long negativeTtlMillis, int maxNegative)
+    {
+        mIdentity          = identity;
+        mNegativeTtlMillis = negativeTtlMillis;
+
+        // Access-ordered so that the eldest entry is the least recently used one.
+        mUnknown = new LinkedHashMap<String, Long>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+            {
+                return size() > maxNegative;
+            }
+        };
+    }
+
+
+    /**
+     * Get the identity of the Authlete service from which the snapshot
+     * was loaded.
+     */
+    String getIdentity()
+    {
+        return mIdentity;
+    }
+
+
+    /**
+     * Check if the snapshot has been loaded.
+     */
+    boolean isLoaded()
+    {
+        return mClients != null;
+    }
+
+
+    /**
+     * Get the number of clients in the snapshot.
+     */
+    int size()
+    {
+        Map<String, ClientMetadata> clients = mClients;
+
+        return (clients != null) ? clients.size() : 0;
+    }
+
+
+    /**
+     * Find a client by its ID or alias.
+     *
+     * Clients confirmed after the snapshot was loaded come first, because
+     * they are newer.
+     *
+     * @return
+     *         The metadata of the client, or {@code null} if the client is
+     *         in neither the snapshot nor the confirmed clients.
+     */
+    ClientMetadata find(String clientId)
+    {
+        ClientMetadata metadata = mConfirmed.get(clientId);
+
+        if (metadata != null)
+        {
+            return metadata;
+        }
+
+        Map<String, ClientMetadata> clients = mClients;
+
+        return (clients != null) ? clients.get(clientId) : null;
+    }
+
+
+    /**
+     * Check if the client ID has recently been confirmed not to exist.
+     */
+    boolean isKnownUnknown(String clientId)
+    {
+        synchronized (mUnknown)
+        {
+            Long expiresAt = mUnknown.get(clientId);
+
+            if (expiresAt == null)
+            {
+                return false;
+            }
+
+            if (expiresAt < System.currentTimeMillis())
+            {
+                mUnknown.remove(clientId);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+
+    void putUnknown(String clientId)
+    {
+        synchronized (mUnknown)
+        {
+            mUnknown.put(clientId, System.currentTimeMillis() + mNegativeTtlMillis);
+        }
+    }
+
+
+    void putConfirmed(String clientId, ClientMetadata metadata)
+    {
+        mConfirmed.put(clientId, metadata);
+    }
+
+
+    /**
+     * Replace the snapshot. The confirmed clients are cleared because the
+     * new snapshot supersedes them. The negative cache is kept because the
+     * snapshot is consulted first anyway.
+     */
+    void replace(Map<String, ClientMetadata> clients)
+    {
+        mClients = Collections.unmodifiableMap(clients);
+        mConfirmed.clear();
+    }
+
+
+    /**
+     * Forget what is known about a client, so that it is looked up again
+     * the next time. The snapshot is copied, which is fine because clients
+     * are rarely updated.
+     */
+    void forget(String clientId)
+    {
+        Map<String, ClientMetadata> clients = mClients;
+        ClientMetadata metadata = (clients != null) ? clients.get(clientId) : null;
+
+        if (metadata != null)
+        {
+            // Remove the entries of the client ID and the alias.
+            Map<String, ClientMetadata> copy = new HashMap<String, ClientMetadata>(clients);
+            copy.values().removeIf(value -> value == metadata);
+            mClients = Collections.unmodifiableMap(copy);
+        }
+
+        mConfirmed.remove(clientId);
+
+        synchronized (mUnknown)
+        {
+            mUnknown.remove(clientId);
+        }
+    }
+
+
+    /**
+     * Forget the clients confirmed or found unknown after the snapshot was
+     * loaded.
+     */
+    void forgetLookups()
+    {
+        mConfirmed.clear();
+
+        synchronized (mUnknown)
+        {
+            mUnknown.clear();
+        }
+    }
+
+
+    /**
+     * Discard the snapshot so that requests are no longer pre-validated.
+     */
+    void discard()
+    {
+        mClients = null;
+        mConfirmed.clear();
+    }
+}
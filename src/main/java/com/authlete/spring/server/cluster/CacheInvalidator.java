@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.cluster;
+
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.spring.server.client.ClientPreValidator;
+import com.authlete.spring.server.tenant.Tenant;
+import com.authlete.spring.server.tenant.TenantRegistry;
+import com.authlete.spring.server.token.ClientCredentialsCache;
+import com.authlete.spring.server.token.RevocationFilter;
+import com.authlete.spring.server.token.TokenDigest;
+import com.authlete.spring.server.userinfo.UserInfoCache;
+
+
+/**
+ * Applies invalidations from the other nodes to the caches of this node,
+ * and lets operators invalidate cached data on all the nodes.
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=CacheInvalidator")
+public class CacheInvalidator implements InvalidationListener
+{
+    @Autowired
+    private InvalidationBus mBus;
+
+
+    @Autowired
+    private TenantRegistry mTenants;
+
+
+    @Autowired
+    private ClientCredentialsCache mClientCredentialsCache;
+
+
+    @Autowired
+    private UserInfoCache mUserInfoCache;
+
+
+    @Autowired
+    private ClientPreValidator mClientPreValidator;
+
+
+    @Autowired
+    private RevocationFilter mRevocationFilter;
+
+
+    @PostConstruct
+    public void register()
+    {
+        mBus.addListener(this);
+    }
+
+
+    /**
+     * Tell the other nodes that a token has been revoked. The caller evicts
+     * the token from the caches of this node.
+     */
+    public void tokenRevoked(Tenant tenant, String token)
+    {
+        if (token == null)
+        {
+            return;
+        }
+
+        // Tokens are not sent as they are.
+        mBus.publish(new Invalidation(
+                Invalidation.Kind.TOKEN, tenant.getId(), TokenDigest.of(token)));
+    }
+
+
+    @ManagedOperation(description = "Discard the cached configuration and JWK Set of the tenant on all the nodes.")
+    public void invalidateTenant(String tenantId)
+    {
+        Invalidation invalidation = new Invalidation(Invalidation.Kind.TENANT, tenantId, null);
+
+        invalidate(invalidation);
+        mBus.publish(invalidation);
+    }
+
+
+    @ManagedOperation(description = "Discard what is known about the client of the tenant on all the nodes.")
+    public void invalidateClient(String tenantId, String clientId)
+    {
+        Invalidation invalidation = new Invalidation(Invalidation.Kind.CLIENT, tenantId, clientId);
+
+        invalidate(invalidation);
+        mBus.publish(invalidation);
+    }
+
+
+    @Override
+    public void invalidate(Invalidation invalidation)
+    {
+        switch (invalidation.getKind())
+        {
+            case TOKEN:
+                mRevocationFilter.add(invalidation.getKey());
+                mClientCredentialsCache.evictDigest(invalidation.getKey());
+                mUserInfoCache.evictDigest(invalidation.getTenantId(), invalidation.getKey());
+                break;
+
+            case TENANT:
+                Tenant tenant = mTenants.findById(invalidation.getTenantId());
+
+                if (tenant != null)
+                {
+                    tenant.invalidateCaches();
+                }
+                break;
+
+            case CLIENT:
+                mClientPreValidator.invalidateClient(invalidation.getTenantId(), invalidation.getKey());
+                break;
+
+            default:
+                break;
+        }
+    }
+
+
+    @Override
+    public void invalidateAll()
+    {
+        mClientCredentialsCache.clear();
+        mUserInfoCache.clear();
+
+        for (Tenant tenant : mTenants.getTenants())
+        {
+            tenant.invalidateCaches();
+        }
+
+        mClientPreValidator.invalidateClients();
+    }
+}
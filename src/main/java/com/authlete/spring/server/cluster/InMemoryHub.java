@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.cluster;
+
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+
+/**
+ * In-JVM broker which connects {@link InvalidationBus} instances running in
+ * the same JVM, e.g. several application contexts started by a test or a
+ * local multi-node setup ({@code transport: memory}).
+ *
+ * <p>
+ * Every message is delivered to all the connected transports on the
+ * receiving thread of each of them, so the nodes do not block each other.
+ * A loss rate can be set to exercise retransmission and the recovery from
+ * lost messages.
+ * </p>
+ */
+public class InMemoryHub
+{
+    private static final InMemoryHub SHARED = new InMemoryHub();
+
+
+    private final List<Connection> mConnections = new CopyOnWriteArrayList<Connection>();
+    private volatile double mLossRate;
+
+
+    /**
+     * Get the hub shared by all the nodes in the JVM which use the
+     * {@code memory} transport.
+     */
+    public static InMemoryHub shared()
+    {
+        return SHARED;
+    }
+
+
+    /**
+     * Set the probability in {@code [0, 1)} that a message is not delivered
+     * to a node.
+     */
+    public void setLossRate(double lossRate)
+    {
+        mLossRate = lossRate;
+    }
+
+
+    /**
+     * Create a transport connected to this hub.
+     */
+    public InvalidationTransport connect()
+    {
+        return new Connection();
+    }
+
+
+    private void broadcast(byte[] message)
+    {
+        for (Connection connection : mConnections)
+        {
+            if (mLossRate > 0 && ThreadLocalRandom.current().nextDouble() < mLossRate)
+            {
+                continue;
+            }
+
+            connection.deliver(message);
+        }
+    }
+
+
+    private class Connection implements InvalidationTransport
+    {
+        private final ExecutorService mExecutor =
+                Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "invalidation-receiver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        private volatile Consumer<byte[]> mReceiver;
+
+
+        @Override
+        public void start(Consumer<byte[]> receiver)
+        {
+            mReceiver = receiver;
+            mConnections.add(this);
+        }
+
+
+        @Override
+        public void send(byte[] message)
+        {
+            broadcast(message.clone());
+        }
+
+
+        void deliver(byte[] message)
+        {
+            try
+            {
+                mExecutor.execute(() -> mReceiver.accept(message));
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Closed.
+            }
+        }
+
+
+        @Override
+        public void close()
+        {
+            mConnections.remove(this);
+            mExecutor.shutdownNow();
+        }
+    }
+}
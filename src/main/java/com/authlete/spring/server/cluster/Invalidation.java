@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.cluster;
+
+
+import java.util.Objects;
+
+
+/**
+ * An instruction to drop cached data, sent to the other nodes by
+ * {@link InvalidationBus}. Equal invalidations published close together
+ * are sent once.
+ */
+public final class Invalidation
+{
+    /**
+     * What is invalidated.
+     */
+    public enum Kind
+    {
+        /**
+         * A token has been revoked. The key is the digest of the token
+         * (see {@code TokenDigest}).
+         */
+        TOKEN,
+
+
+        /**
+         * The configuration and the JWK Set of the tenant's service have
+         * changed, e.g. by key rotation. The key is {@code null}.
+         */
+        TENANT,
+
+
+        /**
+         * A client has been updated. The key is the client ID.
+         */
+        CLIENT
+    }
+
+
+    private final Kind mKind;
+    private final String mTenantId;
+    private final String mKey;
+
+
+    public Invalidation(Kind kind, String tenantId, String key)
+    {
+        mKind     = kind;
+        mTenantId = tenantId;
+        mKey      = key;
+    }
+
+
+    public Kind getKind()
+    {
+        return mKind;
+    }
+
+
+    public String getTenantId()
+    {
+        return mTenantId;
+    }
+
+
+    public String getKey()
+    {
+        return mKey;
+    }
+
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (this == other)
+        {
+            return true;
+        }
+
+        if ((other instanceof Invalidation) == false)
+        {
+            return false;
+        }
+
+        Invalidation that = (Invalidation)other;
+
+        return mKind == that.mKind
+                && Objects.equals(mTenantId, that.mTenantId)
+                && Objects.equals(mKey, that.mKey);
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(mKind, mTenantId, mKey);
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return mKind + "(" + mTenantId + (mKey != null ? ", " + mKey : "") + ")";
+    }
+}
@@ -0,0 +1,646 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.cluster;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Bus which carries cache invalidations to the other nodes of the cluster.
+ *
+ * <p>
+ * Invalidations published within {@code coalesce-window} milliseconds are
+ * deduplicated and sent as one message with the next sequence number of
+ * this node. Each node acknowledges the messages it receives, and the
+ * sender retransmits a message to the group until all the nodes it knows
+ * (from their heartbeats) have acknowledged it, up to {@code retries}
+ * times, {@code retry-interval} milliseconds apart. Receivers apply each
+ * sequence number once.
+ * </p>
+ *
+ * <p>
+ * Every node announces the last sequence number it has sent in a heartbeat
+ * every {@code heartbeat-interval} milliseconds. A node which finds that it
+ * has still missed messages of another node after the retransmissions are
+ * over drops all its caches. Therefore, an invalidation takes effect on all
+ * the nodes within about {@code retries * retry-interval + 2 *
+ * heartbeat-interval} milliseconds even when messages are lost, while
+ * caching stays enabled. Messages sent before a node first heard from
+ * another node count as missed, so a node joining a running cluster drops
+ * its caches once.
+ * </p>
+ *
+ * <p>
+ * Messages are sent over UDP multicast ({@code transport: multicast}) or,
+ * for nodes in the same JVM, through {@link InMemoryHub} ({@code transport:
+ * memory}).
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=InvalidationBus")
+public class InvalidationBus
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationBus.class);
+
+
+    /**
+     * The maximum number of invalidations in a message, which keeps a
+     * message within a UDP datagram which is not fragmented much.
+     */
+    private static final int MAX_INVALIDATIONS = 16;
+
+
+    /**
+     * A message waiting for acknowledgments.
+     */
+    private static class Outgoing
+    {
+        final byte[] message;
+        final Set<String> awaiting;
+        int attempts;
+        long nextRetry;
+
+
+        Outgoing(byte[] message, Set<String> awaiting, long nextRetry)
+        {
+            this.message   = message;
+            this.awaiting  = awaiting;
+            this.nextRetry = nextRetry;
+        }
+    }
+
+
+    /**
+     * What is known about another node.
+     */
+    private static class Peer
+    {
+        /**
+         * All the sequence numbers up to this have been applied.
+         */
+        long applied;
+
+        /**
+         * Sequence numbers beyond {@link #applied} which have been applied.
+         */
+        final TreeSet<Long> ahead = new TreeSet<Long>();
+
+        /**
+         * The time when the gap before {@link #behindSince} was found,
+         * or 0 if there is no gap.
+         */
+        long behindSince;
+
+        long lastHeard;
+
+
+        Peer(long applied, long now)
+        {
+            this.applied   = applied;
+            this.lastHeard = now;
+        }
+
+
+        void markApplied(long sequence)
+        {
+            if (sequence == applied + 1)
+            {
+                applied = sequence;
+
+                while (ahead.isEmpty() == false && ahead.first() == applied + 1)
+                {
+                    applied = ahead.pollFirst();
+                }
+            }
+            else
+            {
+                ahead.add(sequence);
+            }
+        }
+
+
+        boolean isApplied(long sequence)
+        {
+            return sequence <= applied || ahead.contains(sequence);
+        }
+    }
+
+
+    private final boolean mEnabled;
+    private final String mNode = UUID.randomUUID().toString();
+    private final InvalidationTransport mTransport;
+    private final InvalidationCodec mCodec;
+    private final long mCoalesceWindow;
+    private final long mRetryInterval;
+    private final int mRetries;
+    private final long mHeartbeatInterval;
+    private final List<InvalidationListener> mListeners = new CopyOnWriteArrayList<InvalidationListener>();
+
+    // Guarded by "this".
+    private final Set<Invalidation> mPending = new LinkedHashSet<Invalidation>();
+    private final Map<Long, Outgoing> mOutgoing = new HashMap<Long, Outgoing>();
+    private final Map<String, Peer> mPeers = new HashMap<String, Peer>();
+    private long mSequence;
+
+    private final AtomicLong mSent          = new AtomicLong();
+    private final AtomicLong mReceived      = new AtomicLong();
+    private final AtomicLong mRetransmitted = new AtomicLong();
+    private final AtomicLong mAbandoned     = new AtomicLong();
+    private final AtomicLong mFlushes       = new AtomicLong();
+    private ScheduledExecutorService mScheduler;
+
+
+    @Autowired
+    public InvalidationBus(
+            @Value("${authorization-server.cluster.enabled:false}") boolean enabled,
+            @Value("${authorization-server.cluster.transport:multicast}") String transport,
+            @Value("${authorization-server.cluster.group:239.255.42.99}") String group,
+            @Value("${authorization-server.cluster.port:45588}") int port,
+            @Value("${authorization-server.cluster.interface:}") String networkInterface,
+            @Value("${authorization-server.cluster.ttl:1}") int timeToLive,
+            @Value("${authorization-server.cluster.secret:}") String secret,
+            @Value("${authorization-server.cluster.coalesce-window:20}") long coalesceWindow,
+            @Value("${authorization-server.cluster.retry-interval:200}") long retryInterval,
+            @Value("${authorization-server.cluster.retries:5}") int retries,
+            @Value("${authorization-server.cluster.heartbeat-interval:1000}") long heartbeatInterval)
+                    throws IOException
+    {
+        this(enabled ? createTransport(transport, group, port, networkInterface, timeToLive) : null,
+                secret, coalesceWindow, retryInterval, retries, heartbeatInterval);
+    }
+
+
+    /**
+     * Constructor with a transport, e.g. a connection to an {@link
+     * InMemoryHub}. The bus is disabled if the transport is {@code null}.
+     */
+    public InvalidationBus(InvalidationTransport transport, String secret,
+            long coalesceWindow, long retryInterval, int retries, long heartbeatInterval)
+    {
+        mEnabled           = (transport != null);
+        mTransport         = transport;
+        mCodec             = new InvalidationCodec(secret);
+        mCoalesceWindow    = Math.max(1, coalesceWindow);
+        mRetryInterval     = TimeUnit.MILLISECONDS.toNanos(retryInterval);
+        mRetries           = retries;
+        mHeartbeatInterval = heartbeatInterval;
+    }
+
+
+    private static InvalidationTransport createTransport(
+            String transport, String group, int port, String networkInterface, int timeToLive)
+                    throws IOException
+    {
+        switch (transport.toLowerCase(Locale.ROOT))
+        {
+            case "multicast":
+                return new MulticastTransport(group, port, networkInterface, timeToLive);
+
+            case "memory":
+                return InMemoryHub.shared().connect();
+
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown transport of authorization-server.cluster: " + transport);
+        }
+    }
+
+
+    @PostConstruct
+    public void start() throws IOException
+    {
+        if (mEnabled == false)
+        {
+            return;
+        }
+
+        mScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "invalidation-bus");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        mTransport.start(this::receive);
+
+        mScheduler.scheduleWithFixedDelay(this::flush,
+                mCoalesceWindow, mCoalesceWindow, TimeUnit.MILLISECONDS);
+        mScheduler.scheduleWithFixedDelay(this::heartbeat,
+                0, mHeartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+
+    @PreDestroy
+    public void stop() throws IOException
+    {
+        if (mScheduler == null)
+        {
+            return;
+        }
+
+        mScheduler.shutdownNow();
+
+        // Send what has been published so far once.
+        flush();
+
+        mTransport.close();
+    }
+
+
+    public void addListener(InvalidationListener listener)
+    {
+        mListeners.add(listener);
+    }
+
+
+    /**
+     * Send an invalidation to the other nodes. The caller invalidates its
+     * own caches by itself. Does nothing if the bus is disabled.
+     */
+    public void publish(Invalidation invalidation)
+    {
+        if (mEnabled == false)
+        {
+            return;
+        }
+
+        synchronized (this)
+        {
+            mPending.add(invalidation);
+        }
+    }
+
+
+    /**
+     * Send the pending invalidations and retransmit unacknowledged messages.
+     */
+    private void flush()
+    {
+        List<byte[]> messages = new ArrayList<byte[]>();
+        long now = System.nanoTime();
+
+        synchronized (this)
+        {
+            // Forget nodes which have stopped long ago. Nodes silent for a
+            // short time keep their state, because their heartbeats may
+            // just have been lost.
+            long forget = now - TimeUnit.MILLISECONDS.toNanos(100 * mHeartbeatInterval);
+            mPeers.values().removeIf(peer -> peer.lastHeard < forget);
+
+            Set<String> live = livePeers(now);
+
+            Iterator<Invalidation> pending = mPending.iterator();
+
+            while (pending.hasNext())
+            {
+                List<Invalidation> chunk = new ArrayList<Invalidation>(MAX_INVALIDATIONS);
+
+                while (pending.hasNext() && chunk.size() < MAX_INVALIDATIONS)
+                {
+                    chunk.add(pending.next());
+                    pending.remove();
+                }
+
+                long sequence  = ++mSequence;
+                byte[] message = mCodec.data(mNode, sequence, chunk);
+                messages.add(message);
+
+                if (live.isEmpty() == false)
+                {
+                    mOutgoing.put(sequence, new Outgoing(message,
+                            new HashSet<String>(live), now + mRetryInterval));
+                }
+            }
+
+            Iterator<Outgoing> outgoing = mOutgoing.values().iterator();
+
+            while (outgoing.hasNext())
+            {
+                Outgoing entry = outgoing.next();
+
+                entry.awaiting.retainAll(live);
+
+                if (entry.awaiting.isEmpty())
+                {
+                    outgoing.remove();
+                }
+                else if (entry.nextRetry <= now)
+                {
+                    if (entry.attempts++ >= mRetries)
+                    {
+                        // The nodes which have not acknowledged it will
+                        // find the gap by heartbeats.
+                        outgoing.remove();
+                        mAbandoned.incrementAndGet();
+                        continue;
+                    }
+
+                    entry.nextRetry = now + mRetryInterval;
+                    messages.add(entry.message);
+                    mRetransmitted.incrementAndGet();
+                }
+            }
+        }
+
+        for (byte[] message : messages)
+        {
+            send(message);
+        }
+    }
+
+
+    /**
+     * Get the nodes heard from within the last three heartbeat intervals.
+     * Must be called with the lock held.
+     */
+    private Set<String> livePeers(long now)
+    {
+        long expiry = now - TimeUnit.MILLISECONDS.toNanos(3 * mHeartbeatInterval);
+        Set<String> live = new HashSet<String>();
+
+        for (Map.Entry<String, Peer> entry : mPeers.entrySet())
+        {
+            if (entry.getValue().lastHeard >= expiry)
+            {
+                live.add(entry.getKey());
+            }
+        }
+
+        return live;
+    }
+
+
+    private void heartbeat()
+    {
+        long sequence;
+
+        synchronized (this)
+        {
+            sequence = mSequence;
+        }
+
+        send(mCodec.heartbeat(mNode, sequence));
+    }
+
+
+    private void send(byte[] message)
+    {
+        try
+        {
+            mTransport.send(message);
+            mSent.incrementAndGet();
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to send an invalidation message: {}", e.toString());
+        }
+    }
+
+
+    private void receive(byte[] bytes)
+    {
+        InvalidationCodec.Message message = mCodec.decode(bytes);
+
+        if (message == null || mNode.equals(message.node))
+        {
+            // Broken, not authenticated or sent by this node.
+            return;
+        }
+
+        mReceived.incrementAndGet();
+
+        switch (message.type)
+        {
+            case InvalidationCodec.DATA:
+                onData(message);
+                break;
+
+            case InvalidationCodec.ACK:
+                onAck(message);
+                break;
+
+            case InvalidationCodec.HEARTBEAT:
+                onHeartbeat(message);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+
+    private void onData(InvalidationCodec.Message message)
+    {
+        boolean apply;
+
+        synchronized (this)
+        {
+            long now  = System.nanoTime();
+            Peer peer = mPeers.get(message.node);
+
+            if (peer == null)
+            {
+                // A node not known yet, or known again after a long
+                // silence. Its earlier messages may have been missed.
+                peer = new Peer(0, now);
+                mPeers.put(message.node, peer);
+            }
+
+            peer.lastHeard = now;
+            apply = (peer.isApplied(message.sequence) == false);
+
+            if (apply)
+            {
+                peer.markApplied(message.sequence);
+            }
+        }
+
+        if (apply)
+        {
+            for (Invalidation invalidation : message.invalidations)
+            {
+                for (InvalidationListener listener : mListeners)
+                {
+                    listener.invalidate(invalidation);
+                }
+            }
+        }
+
+        // Acknowledge duplicates, too, because the first acknowledgment
+        // may have been lost.
+        send(mCodec.ack(mNode, message.node, message.sequence));
+    }
+
+
+    private synchronized void onAck(InvalidationCodec.Message message)
+    {
+        if (mNode.equals(message.origin) == false)
+        {
+            // An acknowledgment to another node.
+            return;
+        }
+
+        Outgoing entry = mOutgoing.get(message.sequence);
+
+        if (entry != null)
+        {
+            entry.awaiting.remove(message.node);
+
+            if (entry.awaiting.isEmpty())
+            {
+                mOutgoing.remove(message.sequence);
+            }
+        }
+    }
+
+
+    private void onHeartbeat(InvalidationCodec.Message message)
+    {
+        boolean flush = false;
+
+        synchronized (this)
+        {
+            long now  = System.nanoTime();
+            Peer peer = mPeers.get(message.node);
+
+            if (peer == null)
+            {
+                // Its earlier messages may have been missed. See onData().
+                peer = new Peer(0, now);
+                mPeers.put(message.node, peer);
+            }
+
+            peer.lastHeard = now;
+
+            if (peer.applied >= message.sequence)
+            {
+                peer.behindSince = 0;
+                return;
+            }
+
+            if (peer.behindSince == 0)
+            {
+                // Missing messages may still be retransmitted.
+                peer.behindSince = now;
+                return;
+            }
+
+            if (now - peer.behindSince < mRetryInterval * (mRetries + 1))
+            {
+                return;
+            }
+
+            // The missing messages will not come any more.
+            peer.applied     = message.sequence;
+            peer.behindSince = 0;
+            peer.ahead.clear();
+            flush = true;
+        }
+
+        if (flush)
+        {
+            LOGGER.warn("Invalidations from node {} have been lost. Dropping all the caches.", message.node);
+            mFlushes.incrementAndGet();
+
+            for (InvalidationListener listener : mListeners)
+            {
+                listener.invalidateAll();
+            }
+        }
+    }
+
+
+    @ManagedAttribute(description = "True if the bus is enabled.")
+    public boolean isEnabled()
+    {
+        return mEnabled;
+    }
+
+
+    @ManagedAttribute(description = "The ID of this node.")
+    public String getNode()
+    {
+        return mNode;
+    }
+
+
+    @ManagedAttribute(description = "The number of other nodes heard from recently.")
+    public synchronized int getPeers()
+    {
+        return livePeers(System.nanoTime()).size();
+    }
+
+
+    @ManagedAttribute(description = "The number of messages sent, including heartbeats and acknowledgments.")
+    public long getSent()
+    {
+        return mSent.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of messages received from the other nodes.")
+    public long getReceived()
+    {
+        return mReceived.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of retransmissions.")
+    public long getRetransmitted()
+    {
+        return mRetransmitted.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of messages given up after the retries.")
+    public long getAbandoned()
+    {
+        return mAbandoned.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of times all the caches were dropped because of lost messages.")
+    public long getFlushes()
+    {
+        return mFlushes.get();
+    }
+}
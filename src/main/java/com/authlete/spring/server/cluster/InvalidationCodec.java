@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.cluster;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * Binary format of {@link InvalidationBus} messages.
+ *
+ * <pre>
+ * message   = magic(int) version(byte) type(byte) node(UTF) body [hmac(32)]
+ * DATA      = sequence(long) count(short) invalidation*
+ * ACK       = origin(UTF) sequence(long)
+ * HEARTBEAT = last sequence(long)
+ * </pre>
+ *
+ * <p>
+ * When a shared secret is configured, every message carries an HMAC-SHA256
+ * of the preceding bytes, and messages without a valid one are ignored.
+ * </p>
+ */
+final class InvalidationCodec
+{
+    static final byte DATA      = 1;
+    static final byte ACK       = 2;
+    static final byte HEARTBEAT = 3;
+
+    private static final int  MAGIC    = 0x4F41494E; // "OAIN"
+    private static final byte VERSION  = 1;
+    private static final int  MAC_SIZE = 32;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+
+    /**
+     * A decoded message.
+     */
+    static final class Message
+    {
+        byte type;
+        String node;
+        long sequence;
+        String origin;
+        List<Invalidation> invalidations = Collections.emptyList();
+    }
+
+
+    private final SecretKeySpec mKey;
+
+
+    /**
+     * @param secret
+     *         The shared secret, or {@code null} not to authenticate messages.
+     */
+    InvalidationCodec(String secret)
+    {
+        mKey = (secret == null || secret.isEmpty()) ? null
+                : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+    }
+
+
+    byte[] data(String node, long sequence, List<Invalidation> invalidations)
+    {
+        return encode(DATA, node, out -> {
+            out.writeLong(sequence);
+            out.writeShort(invalidations.size());
+
+            for (Invalidation invalidation : invalidations)
+            {
+                out.writeByte(invalidation.getKind().ordinal());
+                writeNullable(out, invalidation.getTenantId());
+                writeNullable(out, invalidation.getKey());
+            }
+        });
+    }
+
+
+    byte[] ack(String node, String origin, long sequence)
+    {
+        return encode(ACK, node, out -> {
+            out.writeUTF(origin);
+            out.writeLong(sequence);
+        });
+    }
+
+
+    byte[] heartbeat(String node, long lastSequence)
+    {
+        return encode(HEARTBEAT, node, out -> out.writeLong(lastSequence));
+    }
+
+
+    /**
+     * Decode a message.
+     *
+     * @return
+     *         The message, or {@code null} if it is broken, of an unknown
+     *         version or not authenticated.
+     */
+    Message decode(byte[] bytes)
+    {
+        int length = bytes.length;
+
+        if (mKey != null)
+        {
+            if (length < MAC_SIZE)
+            {
+                return null;
+            }
+
+            length -= MAC_SIZE;
+
+            if (MessageDigest.isEqual(mac(bytes, length),
+                    Arrays.copyOfRange(bytes, length, bytes.length)) == false)
+            {
+                return null;
+            }
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, length)))
+        {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION)
+            {
+                return null;
+            }
+
+            Message message = new Message();
+            message.type = in.readByte();
+            message.node = in.readUTF();
+
+            switch (message.type)
+            {
+                case DATA:
+                    message.sequence = in.readLong();
+                    message.invalidations = readInvalidations(in);
+                    break;
+
+                case ACK:
+                    message.origin   = in.readUTF();
+                    message.sequence = in.readLong();
+                    break;
+
+                case HEARTBEAT:
+                    message.sequence = in.readLong();
+                    break;
+
+                default:
+                    return null;
+            }
+
+            return message;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+
+    private static List<Invalidation> readInvalidations(DataInputStream in) throws IOException
+    {
+        int count = in.readUnsignedShort();
+        Invalidation.Kind[] kinds = Invalidation.Kind.values();
+        List<Invalidation> invalidations = new ArrayList<Invalidation>(count);
+
+        for (int i = 0; i < count; i++)
+        {
+            int kind = in.readUnsignedByte();
+
+            if (kind >= kinds.length)
+            {
+                throw new IOException("Unknown kind: " + kind);
+            }
+
+            invalidations.add(new Invalidation(kinds[kind], readNullable(in), readNullable(in)));
+        }
+
+        return invalidations;
+    }
+
+
+    private interface Body
+    {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+
+    private byte[] encode(byte type, String node, Body body)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(type);
+            out.writeUTF(node);
+            body.write(out);
+
+            if (mKey != null)
+            {
+                out.write(mac(bytes.toByteArray(), bytes.size()));
+            }
+        }
+        catch (IOException e)
+        {
+            // Not thrown by ByteArrayOutputStream.
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+
+    private byte[] mac(byte[] bytes, int length)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(mKey);
+            mac.update(bytes, 0, length);
+
+            return mac.doFinal();
+        }
+        catch (GeneralSecurityException e)
+        {
+            // HmacSHA256 is always available.
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+
+        if (value != null)
+        {
+            out.writeUTF(value);
+        }
+    }
+
+
+    private static String readNullable(DataInputStream in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
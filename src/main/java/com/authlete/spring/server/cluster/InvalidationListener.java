@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.cluster;
+
+
+/**
+ * Receiver of invalidations from the other nodes.
+ */
+public interface InvalidationListener
+{
+    /**
+     * Drop the cached data designated by the invalidation.
+     */
+    void invalidate(Invalidation invalidation);
+
+
+    /**
+     * Drop all the cached data. Called when invalidations from another node
+     * may have been lost.
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.cluster;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+
+/**
+ * Transport of {@link InvalidationBus} messages. A message sent by a node
+ * is delivered to all the nodes, possibly including the sender, at most
+ * once, in any order, or not at all.
+ */
+public interface InvalidationTransport extends Closeable
+{
+    /**
+     * Start receiving messages. The receiver is called by one thread at a
+     * time.
+     */
+    void start(Consumer<byte[]> receiver) throws IOException;
+
+
+    /**
+     * Send a message to all the nodes.
+     */
+    void send(byte[] message) throws IOException;
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.cluster;
+
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Transport over UDP multicast. All the nodes join the same group on the
+ * same port. Nothing but a network which routes the group is needed.
+ */
+public class MulticastTransport implements InvalidationTransport
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MulticastTransport.class);
+
+
+    /**
+     * The maximum size of a UDP payload.
+     */
+    private static final int MAX_DATAGRAM = 65507;
+
+
+    private final InetSocketAddress mGroup;
+    private final NetworkInterface mInterface;
+    private final int mTimeToLive;
+    private MulticastSocket mSocket;
+    private Thread mReceiver;
+
+
+    /**
+     * @param networkInterface
+     *         The name of the network interface to use, or {@code null}
+     *         to let the system choose one.
+     */
+    public MulticastTransport(String group, int port, String networkInterface, int timeToLive)
+            throws IOException
+    {
+        mGroup      = new InetSocketAddress(InetAddress.getByName(group), port);
+        mInterface  = (networkInterface == null || networkInterface.isEmpty())
+                ? null : NetworkInterface.getByName(networkInterface);
+        mTimeToLive = timeToLive;
+    }
+
+
+    @Override
+    public void start(Consumer<byte[]> receiver) throws IOException
+    {
+        mSocket = new MulticastSocket(mGroup.getPort());
+        mSocket.setTimeToLive(mTimeToLive);
+
+        if (mInterface != null)
+        {
+            mSocket.setNetworkInterface(mInterface);
+        }
+
+        mSocket.joinGroup(mGroup, mInterface);
+
+        mReceiver = new Thread(() -> receive(receiver), "invalidation-receiver");
+        mReceiver.setDaemon(true);
+        mReceiver.start();
+    }
+
+
+    private void receive(Consumer<byte[]> receiver)
+    {
+        byte[] buffer = new byte[MAX_DATAGRAM];
+
+        while (mSocket.isClosed() == false)
+        {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+            try
+            {
+                mSocket.receive(packet);
+            }
+            catch (SocketException e)
+            {
+                // Closed.
+                break;
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Failed to receive an invalidation message: {}", e.toString());
+                continue;
+            }
+
+            receiver.accept(Arrays.copyOfRange(packet.getData(), packet.getOffset(),
+                    packet.getOffset() + packet.getLength()));
+        }
+    }
+
+
+    @Override
+    public void send(byte[] message) throws IOException
+    {
+        mSocket.send(new DatagramPacket(message, message.length, mGroup));
+    }
+
+
+    @Override
+    public void close()
+    {
+        if (mSocket == null)
+        {
+            return;
+        }
+
+        try
+        {
+            mSocket.leaveGroup(mGroup, mInterface);
+        }
+        catch (IOException e)
+        {
+            // Closing anyway.
+        }
+
+        mSocket.close();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.db;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import com.authlete.common.types.StandardClaims;
+
+
+/**
+ * Registry of interned claim IDs.
+ *
+ * <p>
+ * Every claim name is mapped to a small integer which is used as an index
+ * of the arrays in {@link ClaimProjection}. The standard claims defined in
+ * <a href="https://openid.net/specs/openid-connect-core-1_0.html#StandardClaims"
+ * >OpenID Connect Core 1.0, 5.1. Standard Claims</a> are registered in
+ * advance. Custom claims are registered on demand when a projection which
+ * contains them is built.
+ * </p>
+ *
+ * <p>
+ * Lookups do not take a lock. The map is replaced as a whole (copy on
+ * write) when a new claim name is registered, which happens only while
+ * user records are loaded.
+ * </p>
+ */
+public final class ClaimIds
+{
+    /**
+     * The standard claims of OpenID Connect Core 1.0.
+     */
+    private static final String[] STANDARD_CLAIMS = {
+            StandardClaims.SUB,
+            StandardClaims.NAME,
+            StandardClaims.GIVEN_NAME,
+            StandardClaims.FAMILY_NAME,
+            StandardClaims.MIDDLE_NAME,
+            StandardClaims.NICKNAME,
+            StandardClaims.PREFERRED_USERNAME,
+            StandardClaims.PROFILE,
+            StandardClaims.PICTURE,
+            StandardClaims.WEBSITE,
+            StandardClaims.EMAIL,
+            StandardClaims.EMAIL_VERIFIED,
+            StandardClaims.GENDER,
+            StandardClaims.BIRTHDATE,
+            StandardClaims.ZONEINFO,
+            StandardClaims.LOCALE,
+            StandardClaims.PHONE_NUMBER,
+            StandardClaims.PHONE_NUMBER_VERIFIED,
+            StandardClaims.ADDRESS,
+            StandardClaims.UPDATED_AT,
+    };
+
+
+    /**
+     * Claim name to claim ID.
+     */
+    private static volatile Map<String, Integer> sIds = new HashMap<String, Integer>();
+
+
+    static
+    {
+        for (String claimName : STANDARD_CLAIMS)
+        {
+            register(claimName);
+        }
+    }
+
+
+    private ClaimIds()
+    {
+    }
+
+
+    /**
+     * Get the ID of the claim.
+     *
+     * @param claimName
+     *         A claim name without a language tag.
+     *
+     * @return
+     *         The ID of the claim. -1 if the claim has not been registered.
+     */
+    public static int idOf(String claimName)
+    {
+        if (claimName == null)
+        {
+            return -1;
+        }
+
+        Integer id = sIds.get(claimName);
+
+        return (id == null) ? -1 : id.intValue();
+    }
+
+
+    /**
+     * Get the ID of the claim, registering the claim name if necessary.
+     *
+     * @param claimName
+     *         A claim name without a language tag.
+     *
+     * @return
+     *         The ID of the claim.
+     */
+    public static synchronized int register(String claimName)
+    {
+        Integer id = sIds.get(claimName);
+
+        if (id != null)
+        {
+            return id.intValue();
+        }
+
+        Map<String, Integer> ids = new HashMap<String, Integer>(sIds);
+        id = ids.size();
+        ids.put(claimName, id);
+        sIds = ids;
+
+        return id.intValue();
+    }
+
+
+    /**
+     * Get the number of registered claims.
+     */
+    public static int count()
+    {
+        return sIds.size();
+    }
+}
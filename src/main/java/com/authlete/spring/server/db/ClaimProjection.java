@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.db;
+
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Immutable projection of the claims of a user.
+ *
+ * <p>
+ * Claim values are stored in arrays indexed by the IDs managed by
+ * {@link ClaimIds}. Values of language-tagged claims (e.g. {@code
+ * "family_name#ja-Kana-JP"}) are stored in separate arrays, one per
+ * language tag. A projection is built once when the user record is
+ * loaded and is shared by all requests, so {@link #get(String, String)}
+ * does not allocate any object.
+ * </p>
+ */
+public final class ClaimProjection
+{
+    private static final Object[] EMPTY = new Object[0];
+
+
+    /**
+     * Values of the claims without a language tag.
+     */
+    private final Object[] mValues;
+
+
+    /**
+     * Values of the claims with a language tag. The keys are lower-case
+     * language tags.
+     */
+    private final Map<String, Object[]> mLocalizedValues;
+
+
+    private ClaimProjection(Object[] values, Map<String, Object[]> localizedValues)
+    {
+        mValues          = values;
+        mLocalizedValues = localizedValues;
+    }
+
+
+    /**
+     * Get the value of a claim.
+     *
+     * @param claimName
+     *         A claim name without a language tag.
+     *
+     * @param languageTag
+     *         A language tag. {@code null} if the claim is requested
+     *         without a language tag.
+     *
+     * @return
+     *         The value of the claim. If the claim does not have a value
+     *         for the language tag, the value without a language tag is
+     *         returned. {@code null} if the user does not have the claim.
+     */
+    public Object get(String claimName, String languageTag)
+    {
+        int id = ClaimIds.idOf(claimName);
+
+        if (id < 0)
+        {
+            return null;
+        }
+
+        if (languageTag != null)
+        {
+            Object value = valueAt(findLocalizedValues(languageTag), id);
+
+            if (value != null)
+            {
+                return value;
+            }
+        }
+
+        return valueAt(mValues, id);
+    }
+
+
+    private Object[] findLocalizedValues(String languageTag)
+    {
+        Object[] values = mLocalizedValues.get(languageTag);
+
+        if (values != null || mLocalizedValues.isEmpty())
+        {
+            return values;
+        }
+
+        // Language tags are case-insensitive. This path allocates but is
+        // taken only when the tag is not given in lower case.
+        return mLocalizedValues.get(languageTag.toLowerCase(Locale.ROOT));
+    }
+
+
+    private static Object valueAt(Object[] values, int id)
+    {
+        if (values == null || id >= values.length)
+        {
+            return null;
+        }
+
+        return values[id];
+    }
+
+
+    /**
+     * Builder of {@link ClaimProjection}.
+     */
+    public static class Builder
+    {
+        private final Map<Integer, Object> mValues = new HashMap<Integer, Object>();
+        private final Map<String, Map<Integer, Object>> mLocalizedValues =
+                new HashMap<String, Map<Integer, Object>>();
+
+
+        /**
+         * Set the value of a claim. A claim name which contains a language
+         * tag in the form of {@code "name#tag"} is accepted. Custom claim
+         * names are registered into {@link ClaimIds} automatically.
+         * {@code null} values are ignored.
+         *
+         * @return
+         *         {@code this} object.
+         */
+        public Builder put(String claimName, Object value)
+        {
+            int index = claimName.indexOf('#');
+
+            if (index < 0)
+            {
+                return put(claimName, null, value);
+            }
+
+            return put(claimName.substring(0, index), claimName.substring(index + 1), value);
+        }
+
+
+        /**
+         * Set the value of a claim for a language tag. {@code null}
+         * values are ignored.
+         *
+         * @return
+         *         {@code this} object.
+         */
+        public Builder put(String claimName, String languageTag, Object value)
+        {
+            if (value == null)
+            {
+                return this;
+            }
+
+            Integer id = ClaimIds.register(claimName);
+
+            if (languageTag == null)
+            {
+                mValues.put(id, value);
+            }
+            else
+            {
+                mLocalizedValues.computeIfAbsent(
+                        languageTag.toLowerCase(Locale.ROOT), tag -> new HashMap<Integer, Object>())
+                        .put(id, value);
+            }
+
+            return this;
+        }
+
+
+        /**
+         * Build an immutable projection.
+         */
+        public ClaimProjection build()
+        {
+            Map<String, Object[]> localizedValues = new HashMap<String, Object[]>();
+
+            for (Map.Entry<String, Map<Integer, Object>> entry : mLocalizedValues.entrySet())
+            {
+                localizedValues.put(entry.getKey(), toArray(entry.getValue()));
+            }
+
+            return new ClaimProjection(toArray(mValues), localizedValues);
+        }
+
+
+        private static Object[] toArray(Map<Integer, Object> values)
+        {
+            int length = 0;
+
+            for (Integer id : values.keySet())
+            {
+                length = Math.max(length, id + 1);
+            }
+
+            if (length == 0)
+            {
+                return EMPTY;
+            }
+
+            Object[] array = new Object[length];
+
+            for (Map.Entry<Integer, Object> entry : values.entrySet())
+            {
+                array[entry.getKey()] = entry.getValue();
+            }
+
+            return array;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.db;
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Store of the consents which end-users have given to client applications.
+ *
+ * <p>
+ * A consent is kept per tenant, subject and client, and holds the scopes
+ * which the end-user has approved so far. A consent expires {@code
+ * authorization-server.consent.lifetime} seconds after it was last given.
+ * Only scopes are recorded, so requests which ask for more (e.g. claims or
+ * authorization details) must not be approved by a consent.
+ * </p>
+ *
+ * <p>
+ * Consents are kept in memory. If {@code authorization-server.consent.file}
+ * is set, every consent is also appended to the file, one line per consent,
+ * and the file is read (and compacted) when the server starts.
+ * </p>
+ *
+ * <p>
+ * An expired consent is removed when it is looked up, and the others every
+ * {@code authorization-server.consent.sweep-interval} seconds, when the file
+ * is compacted, too. So neither the memory nor the file grows with
+ * consents which can no longer be used.
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=ConsentStore")
+public class ConsentStore
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConsentStore.class);
+
+
+    private static class Consent
+    {
+        final Set<String> scopes;
+        final long grantedAt;
+
+
+        Consent(Set<String> scopes, long grantedAt)
+        {
+            this.scopes    = scopes;
+            this.grantedAt = grantedAt;
+        }
+    }
+
+
+    private final boolean mEnabled;
+    private final long mLifetimeMillis;
+    private final Path mFile;
+    private final long mSweepInterval;
+    private final Map<String, Consent> mConsents = new ConcurrentHashMap<String, Consent>();
+    private final AtomicLong mHits    = new AtomicLong();
+    private final AtomicLong mExpired = new AtomicLong();
+    private BufferedWriter mWriter;
+    private ScheduledExecutorService mSweeper;
+
+
+    public ConsentStore(
+            @Value("${authorization-server.consent.enabled:true}") boolean enabled,
+            @Value("${authorization-server.consent.lifetime:7776000}") long lifetime,
+            @Value("${authorization-server.consent.file:}") String file,
+            @Value("${authorization-server.consent.sweep-interval:3600}") long sweepInterval)
+    {
+        mEnabled        = enabled;
+        mLifetimeMillis = TimeUnit.SECONDS.toMillis(lifetime);
+        mFile           = file.isEmpty() ? null : Paths.get(file);
+        mSweepInterval  = sweepInterval;
+    }
+
+
+    @PostConstruct
+    public void start() throws IOException
+    {
+        if (mEnabled == false)
+        {
+            return;
+        }
+
+        if (mFile != null)
+        {
+            if (Files.exists(mFile))
+            {
+                load();
+                compact();
+            }
+
+            mWriter = Files.newBufferedWriter(mFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        if (mSweepInterval > 0)
+        {
+            mSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "consent-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            mSweeper.scheduleWithFixedDelay(this::sweep, mSweepInterval, mSweepInterval, TimeUnit.SECONDS);
+        }
+    }
+
+
+    @PreDestroy
+    public synchronized void stop() throws IOException
+    {
+        if (mSweeper != null)
+        {
+            mSweeper.shutdownNow();
+            mSweeper = null;
+        }
+
+        if (mWriter != null)
+        {
+            mWriter.close();
+            mWriter = null;
+        }
+    }
+
+
+    /**
+     * Check if the end-user has already approved all the scopes for the
+     * client.
+     *
+     * @param tenantId
+     *         The ID of the tenant.
+     *
+     * @param subject
+     *         The subject of the end-user.
+     *
+     * @param clientId
+     *         The ID of the client.
+     *
+     * @param scopes
+     *         The requested scopes.
+     */
+    public boolean covers(String tenantId, String subject, String clientId, Collection<String> scopes)
+    {
+        if (mEnabled == false)
+        {
+            return false;
+        }
+
+        String key      = keyOf(tenantId, subject, clientId);
+        Consent consent = mConsents.get(key);
+
+        if (consent == null)
+        {
+            return false;
+        }
+
+        if (isExpired(consent, System.currentTimeMillis()))
+        {
+            // Unless it has been renewed meanwhile.
+            if (mConsents.remove(key, consent))
+            {
+                mExpired.incrementAndGet();
+            }
+
+            return false;
+        }
+
+        if (consent.scopes.containsAll(scopes) == false)
+        {
+            return false;
+        }
+
+        mHits.incrementAndGet();
+
+        return true;
+    }
+
+
+    /**
+     * Record that the end-user has approved the scopes for the client.
+     * The scopes are added to the ones approved before.
+     */
+    public void record(String tenantId, String subject, String clientId, Collection<String> scopes)
+    {
+        if (mEnabled == false)
+        {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        Consent consent = mConsents.compute(keyOf(tenantId, subject, clientId), (key, current) -> {
+            Set<String> union = new HashSet<String>(scopes);
+
+            if (current != null && isExpired(current, now) == false)
+            {
+                union.addAll(current.scopes);
+            }
+
+            return new Consent(Collections.unmodifiableSet(union), now);
+        });
+
+        append(tenantId, subject, clientId, consent);
+    }
+
+
+    @ManagedOperation(description = "Forget all the consents given by the end-user.")
+    public void forget(String subject)
+    {
+        mConsents.keySet().removeIf(key -> key.split("\t", -1)[1].equals(subject));
+
+        if (mFile != null)
+        {
+            compactQuietly();
+        }
+    }
+
+
+    /**
+     * Remove the expired consents and rewrite the file with the others.
+     */
+    @ManagedOperation(description = "Remove the expired consents now.")
+    public void sweep()
+    {
+        long now = System.currentTimeMillis();
+
+        mConsents.values().removeIf(consent -> {
+            boolean expired = isExpired(consent, now);
+
+            if (expired)
+            {
+                mExpired.incrementAndGet();
+            }
+
+            return expired;
+        });
+
+        if (mFile != null)
+        {
+            compactQuietly();
+        }
+    }
+
+
+    private boolean isExpired(Consent consent, long now)
+    {
+        return consent.grantedAt + mLifetimeMillis <= now;
+    }
+
+
+    private static String keyOf(String tenantId, String subject, String clientId)
+    {
+        return tenantId + '\t' + subject + '\t' + clientId;
+    }
+
+
+    private synchronized void append(String tenantId, String subject, String clientId, Consent consent)
+    {
+        if (mWriter == null)
+        {
+            return;
+        }
+
+        try
+        {
+            mWriter.write(format(keyOf(tenantId, subject, clientId), consent));
+            mWriter.newLine();
+            mWriter.flush();
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to write a consent to '{}': {}", mFile, e.getMessage());
+        }
+    }
+
+
+    /**
+     * Read the file. Later lines override earlier ones.
+     */
+    private void load() throws IOException
+    {
+        long now = System.currentTimeMillis();
+
+        try (BufferedReader reader = Files.newBufferedReader(mFile, StandardCharsets.UTF_8))
+        {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                // tenant, subject, client, scopes, granted-at
+                String[] fields = line.split("\t", -1);
+
+                if (fields.length != 5)
+                {
+                    continue;
+                }
+
+                Set<String> scopes = fields[3].isEmpty() ? Collections.emptySet()
+                        : Set.copyOf(Arrays.asList(fields[3].split(" ")));
+                long grantedAt = Long.parseLong(fields[4]);
+
+                if (grantedAt + mLifetimeMillis > now)
+                {
+                    mConsents.put(keyOf(fields[0], fields[1], fields[2]), new Consent(scopes, grantedAt));
+                }
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            LOGGER.warn("'{}' is broken. Consents after the broken line are ignored.", mFile);
+        }
+    }
+
+
+    /**
+     * Rewrite the file with only the live consents.
+     */
+    private synchronized void compact() throws IOException
+    {
+        Path temp = mFile.resolveSibling(mFile.getFileName() + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+        {
+            for (Map.Entry<String, Consent> entry : mConsents.entrySet())
+            {
+                writer.write(format(entry.getKey(), entry.getValue()));
+                writer.newLine();
+            }
+        }
+
+        boolean reopen = (mWriter != null);
+
+        if (reopen)
+        {
+            mWriter.close();
+        }
+
+        Files.move(temp, mFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (reopen)
+        {
+            mWriter = Files.newBufferedWriter(mFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+
+    private void compactQuietly()
+    {
+        try
+        {
+            compact();
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to compact '{}': {}", mFile, e.getMessage());
+        }
+    }
+
+
+    private static String format(String key, Consent consent)
+    {
+        return key + '\t' + String.join(" ", consent.scopes) + '\t' + consent.grantedAt;
+    }
+
+
+    @ManagedAttribute(description = "The number of consents in memory.")
+    public int getConsents()
+    {
+        return mConsents.size();
+    }
+
+
+    @ManagedAttribute(description = "The number of expired consents removed from memory.")
+    public long getExpired()
+    {
+        return mExpired.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of authorization requests which skipped the authorization page.")
+    public long getHits()
+    {
+        return mHits.get();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.db;
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.common.types.User;
+
+
+/**
+ * Per-subject cache of users, used to resolve claims.
+ *
+ * <p>
+ * A user is looked up in the user database at most once every {@code
+ * authorization-server.users.cache-ttl} seconds. Unknown subjects are not
+ * cached.
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=UserCache")
+public class UserCache
+{
+    private static class Entry
+    {
+        final User user;
+        final long expiresAt;
+
+
+        Entry(User user, long expiresAt)
+        {
+            this.user      = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+
+    private final long mTtlMillis;
+    private final int mMaxEntries;
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong mHits   = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+
+    public UserCache(
+            @Value("${authorization-server.users.cache-ttl:300}") long ttl,
+            @Value("${authorization-server.users.max-entries:10000}") int maxEntries)
+    {
+        mTtlMillis  = TimeUnit.SECONDS.toMillis(ttl);
+        mMaxEntries = maxEntries;
+    }
+
+
+    /**
+     * Get the user who has the subject.
+     *
+     * @return
+     *         The user, or {@code null} if there is no such user.
+     */
+    public User get(String subject)
+    {
+        if (subject == null)
+        {
+            return null;
+        }
+
+        long now    = System.currentTimeMillis();
+        Entry entry = mEntries.get(subject);
+
+        if (entry != null && now < entry.expiresAt)
+        {
+            mHits.incrementAndGet();
+            return entry.user;
+        }
+
+        mMisses.incrementAndGet();
+
+        User user = UserDao.getBySubject(subject);
+
+        if (user == null)
+        {
+            mEntries.remove(subject);
+            return null;
+        }
+
+        if (mEntries.size() >= mMaxEntries)
+        {
+            // Make room for the most recent users.
+            mEntries.values().removeIf(e -> e.expiresAt <= now);
+
+            if (mEntries.size() >= mMaxEntries)
+            {
+                mEntries.clear();
+            }
+        }
+
+        mEntries.put(subject, new Entry(user, now + mTtlMillis));
+
+        return user;
+    }
+
+
+    /**
+     * Remove the cached user so that the next lookup reads the database.
+     */
+    public void evict(String subject)
+    {
+        mEntries.remove(subject);
+    }
+
+
+    @ManagedOperation(description = "Remove all the cached users.")
+    public void clear()
+    {
+        mEntries.clear();
+    }
+
+
+    @ManagedAttribute(description = "The number of cached users.")
+    public int getEntries()
+    {
+        return mEntries.size();
+    }
+
+
+    @ManagedAttribute(description = "The number of lookups served from the cache.")
+    public long getHits()
+    {
+        return mHits.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of lookups which read the user database.")
+    public long getMisses()
+    {
+        return mMisses.get();
+    }
+}
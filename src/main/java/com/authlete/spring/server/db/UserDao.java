@@ -17,8 +17,11 @@
 package com.authlete.spring.server.db;
 
 
+import java.util.Map;
 import com.authlete.common.dto.Address;
 import com.authlete.common.types.User;
+import com.authlete.spring.server.monitoring.Phase;
+import com.authlete.spring.server.monitoring.RequestTimings;
 
 
 /**
@@ -33,9 +36,18 @@ public class UserDao
      */
     private static final UserEntity[] sUserDB = {
             new UserEntity("1001", "john", "john", "John Smith", "john@example.com",
-                    new Address().setCountry("USA"), "+1 (425) 555-1212"),
+                    new Address().setCountry("USA"), "+1 (425) 555-1212",
+                    Map.of("given_name",     "John",
+                           "family_name",    "Smith",
+                           "email_verified", true,
+                           "locale",         "en-US")),
             new UserEntity("1002", "jane", "jane", "Jane Smith", "jane@example.com",
-                    new Address().setCountry("Chile"), "+56 (2) 687 2400")
+                    new Address().setCountry("Chile"), "+56 (2) 687 2400",
+                    Map.of("given_name",     "Jane",
+                           "family_name",    "Smith",
+                           "name#es",        "Juana Smith",
+                           "email_verified", true,
+                           "locale",         "es-CL"))
     };
 
 
@@ -55,18 +67,52 @@ public class UserDao
      */
     public static User getByCredentials(String loginId, String password)
     {
-        // For each user.
-        for (UserEntity ue : sUserDB)
+        try (RequestTimings.Scope scope = RequestTimings.phase(Phase.USER))
         {
-            // If the login credentials are valid.
-            if (ue.getLoginId().equals(loginId) && ue.getPassword().equals(password))
+            // For each user.
+            for (UserEntity ue : sUserDB)
             {
-                // Found the user who has the login credentials.
-                return ue;
+                // If the login credentials are valid.
+                if (ue.getLoginId().equals(loginId) && ue.getPassword().equals(password))
+                {
+                    // Found the user who has the login credentials.
+                    return ue;
+                }
             }
+
+            // Not found any user who has the login credentials.
+            return null;
         }
+    }
+
+
+    /**
+     * Get a user entity by a subject.
+     *
+     * @param subject
+     *         Subject (= unique identifier) of a user.
+     *
+     * @return
+     *         A user entity that has the subject. {@code null} is
+     *         returned if there is no user who has the subject.
+     */
+    public static User getBySubject(String subject)
+    {
+        try (RequestTimings.Scope scope = RequestTimings.phase(Phase.USER))
+        {
+            // For each user.
+            for (UserEntity ue : sUserDB)
+            {
+                // If the subject matches.
+                if (ue.getSubject().equals(subject))
+                {
+                    // Found the user.
+                    return ue;
+                }
+            }
 
-        // Not found any user who has the login credentials.
-        return null;
+            // Not found any user who has the subject.
+            return null;
+        }
     }
 }
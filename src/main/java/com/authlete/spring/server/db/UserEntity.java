@@ -17,6 +17,7 @@
 package com.authlete.spring.server.db;
 
 
+import java.util.Map;
 import com.authlete.common.dto.Address;
 import com.authlete.common.types.StandardClaims;
 import com.authlete.common.types.User;
@@ -71,12 +72,36 @@ public class UserEntity implements User
     private String phoneNumber;
 
 
+    /**
+     * The claims of the user, built once when the user is loaded.
+     */
+    private ClaimProjection claims;
+
+
     /**
      * Constructor with initial values.
      */
     public UserEntity(
             String subject, String loginId, String password, String name,
             String email, Address address, String phoneNumber)
+    {
+        this(subject, loginId, password, name, email, address, phoneNumber, null);
+    }
+
+
+    /**
+     * Constructor with initial values and additional claims.
+     *
+     * @param otherClaims
+     *         Claims other than {@code name}, {@code email}, {@code address}
+     *         and {@code phone_number}. Both standard claims and custom
+     *         claims are accepted. Keys may contain a language tag in the
+     *         form of {@code "family_name#ja-Kana-JP"}. May be {@code null}.
+     */
+    public UserEntity(
+            String subject, String loginId, String password, String name,
+            String email, Address address, String phoneNumber,
+            Map<String, Object> otherClaims)
     {
         this.subject     = subject;
         this.loginId     = loginId;
@@ -85,6 +110,29 @@ public class UserEntity implements User
         this.email       = email;
         this.address     = address;
         this.phoneNumber = phoneNumber;
+        this.claims      = buildClaims(otherClaims);
+    }
+
+
+    private ClaimProjection buildClaims(Map<String, Object> otherClaims)
+    {
+        // See "OpenID Connect Core 1.0, 5. Claims".
+        ClaimProjection.Builder builder = new ClaimProjection.Builder()
+                .put(StandardClaims.SUB,          subject)
+                .put(StandardClaims.NAME,         name)
+                .put(StandardClaims.EMAIL,        email)
+                .put(StandardClaims.ADDRESS,      address)
+                .put(StandardClaims.PHONE_NUMBER, phoneNumber);
+
+        if (otherClaims != null)
+        {
+            for (Map.Entry<String, Object> entry : otherClaims.entrySet())
+            {
+                builder.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return builder.build();
     }
 
 
@@ -122,40 +170,12 @@ public class UserEntity implements User
     @Override
     public Object getClaim(String claimName, String languageTag)
     {
-        if (claimName == null)
-        {
-            return null;
-        }
-
-        // See "OpenID Connect Core 1.0, 5. Claims".
-        switch (claimName)
-        {
-            case StandardClaims.NAME:
-                // "name" claim. This claim can be requested by including "profile"
-                // in "scope" parameter of an authorization request.
-                return name;
-
-            case StandardClaims.EMAIL:
-                // "email" claim. This claim can be requested by including "email"
-                // in "scope" parameter of an authorization request.
-                return email;
-
-            case StandardClaims.ADDRESS:
-                // "address" claim. This claim can be requested by including "address"
-                // in "scope" parameter of an authorization request.
-                return address;
-
-            case StandardClaims.PHONE_NUMBER:
-                // "phone_number" claim. This claim can be requested by included "phone"
-                // in "scope" parameter of an authorization request.
-                return phoneNumber;
-
-            default:
-                // Unsupported claim.
-                return null;
-        }
+        // The claims have been projected into arrays indexed by claim IDs
+        // when this entity was created, so this lookup does not allocate.
+        return claims.get(claimName, languageTag);
     }
 
+
     @Override
     public Object getAttribute(String attributeName)
     {
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.flow;
+
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.common.dto.AuthorizationResponse;
+import com.authlete.common.dto.Scope;
+
+
+/**
+ * Bounded in-memory store of authorization flows which are waiting for
+ * the end-user's decision on the authorization page.
+ *
+ * <p>
+ * Most end-users who see the authorization page never submit it. To avoid
+ * keeping their tickets until the HTTP session times out, this store
+ * removes flows after a configurable lifetime
+ * ({@code authorization-server.flow.ticket-lifetime}, in seconds) and keeps
+ * at most {@code authorization-server.flow.max-pending} flows. When the
+ * limit is reached, the least recently used flow is shed.
+ * </p>
+ *
+ * <p>
+ * Expired flows are reaped by a timer wheel which has one slot per second
+ * of the lifetime. Each tick processes only the slot of the current second,
+ * so the cost of sweeping is proportional to the number of flows that were
+ * created one lifetime ago, not to the number of all pending flows.
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=AuthorizationFlowStore")
+public class AuthorizationFlowStore
+{
+    /**
+     * Interval of the timer wheel in milliseconds.
+     */
+    private static final long TICK_MILLIS = 1000L;
+
+
+    private final long mLifetimeMillis;
+    private final int mMaxPending;
+    private final Map<String, PendingAuthorization> mFlows;
+    private final Set<String>[] mWheel;
+    private final AtomicLong mReclaimedBytes = new AtomicLong();
+    private final AtomicLong mExpiredFlows   = new AtomicLong();
+    private final AtomicLong mShedFlows      = new AtomicLong();
+    private ScheduledExecutorService mSweeper;
+    private long mLastTick;
+
+
+    @SuppressWarnings("unchecked")
+    public AuthorizationFlowStore(
+            @Value("${authorization-server.flow.ticket-lifetime:600}") long lifetime,
+            @Value("${authorization-server.flow.max-pending:10000}") int maxPending)
+    {
+        mLifetimeMillis = TimeUnit.SECONDS.toMillis(lifetime);
+        mMaxPending     = maxPending;
+
+        // Access-ordered so that the eldest entry is the least recently used one.
+        mFlows = new LinkedHashMap<String, PendingAuthorization>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PendingAuthorization> eldest)
+            {
+                if (size() <= mMaxPending)
+                {
+                    return false;
+                }
+
+                // Shed the least recently used flow.
+                slotOf(eldest.getValue().getExpiresAt()).remove(eldest.getKey());
+                reclaim(eldest.getValue(), mShedFlows);
+                return true;
+            }
+        };
+
+        // One slot per tick of the lifetime, plus one so that a new flow
+        // is never put into the slot which is being swept.
+        int slots = (int)(mLifetimeMillis / TICK_MILLIS) + 2;
+        mWheel    = new Set[slots];
+
+        for (int i = 0; i < slots; i++)
+        {
+            mWheel[i] = new HashSet<String>();
+        }
+    }
+
+
+    @PostConstruct
+    public void start()
+    {
+        mLastTick = currentTick();
+
+        mSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "authorization-flow-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        mSweeper.scheduleWithFixedDelay(
+                this::sweep, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+
+    @PreDestroy
+    public void stop()
+    {
+        if (mSweeper != null)
+        {
+            mSweeper.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Register a new pending flow for the authorization request.
+     *
+     * @param info
+     *         The response from Authlete's {@code /auth/authorization} API.
+     *
+     * @param tenantId
+     *         The ID of the tenant which has issued the ticket.
+     *
+     * @return
+     *         The ID of the registered flow. The ID should be stored in
+     *         the HTTP session and passed to {@link #take(String)} later.
+     */
+    public String put(AuthorizationResponse info, String tenantId)
+    {
+        String id  = UUID.randomUUID().toString();
+        long   now = System.currentTimeMillis();
+
+        PendingAuthorization flow = new PendingAuthorization(
+                id, tenantId, info.getTicket(), String.valueOf(info.getClient().getClientId()),
+                scopeNamesOf(info), info.getClaims(), info.getClaimsLocales(), now + mLifetimeMillis);
+
+        synchronized (mFlows)
+        {
+            mFlows.put(id, flow);
+            slotOf(flow.getExpiresAt()).add(id);
+        }
+
+        return id;
+    }
+
+
+    /**
+     * Get the names of the scopes requested by the authorization request.
+     */
+    public static String[] scopeNamesOf(AuthorizationResponse info)
+    {
+        Scope[] scopes = info.getScopes();
+
+        if (scopes == null)
+        {
+            return new String[0];
+        }
+
+        String[] names = new String[scopes.length];
+
+        for (int i = 0; i < scopes.length; i++)
+        {
+            names[i] = scopes[i].getName();
+        }
+
+        return names;
+    }
+
+
+    /**
+     * Remove the pending flow from this store and return it.
+     *
+     * @param id
+     *         The ID of the flow. {@code null} is allowed.
+     *
+     * @return
+     *         The pending flow. {@code null} is returned if the flow does
+     *         not exist, has expired or has been shed.
+     */
+    public PendingAuthorization take(String id)
+    {
+        if (id == null)
+        {
+            return null;
+        }
+
+        PendingAuthorization flow;
+
+        synchronized (mFlows)
+        {
+            flow = mFlows.remove(id);
+
+            // Keep the wheel as small as the pending flows.
+            if (flow != null)
+            {
+                slotOf(flow.getExpiresAt()).remove(id);
+            }
+        }
+
+        if (flow == null || flow.isExpired(System.currentTimeMillis()))
+        {
+            return null;
+        }
+
+        return flow;
+    }
+
+
+    /**
+     * Reap the flows in the slots of the ticks that have passed since the
+     * last execution. Flows which are taken or shed are removed from their
+     * slots at the time, so the wheel never holds more than {@code
+     * max-pending} IDs.
+     */
+    private void sweep()
+    {
+        long tick = currentTick();
+        long now  = System.currentTimeMillis();
+
+        // Normally one slot. More than one if the sweeper was delayed,
+        // but never more than one full rotation.
+        long from = Math.max(mLastTick + 1, tick - mWheel.length + 1);
+
+        for (long t = from; t <= tick; t++)
+        {
+            sweepSlot((int)(t % mWheel.length), now);
+        }
+
+        mLastTick = tick;
+    }
+
+
+    private void sweepSlot(int index, long now)
+    {
+        synchronized (mFlows)
+        {
+            Iterator<String> it = mWheel[index].iterator();
+
+            while (it.hasNext())
+            {
+                String id = it.next();
+                PendingAuthorization flow = mFlows.get(id);
+
+                if (flow != null && flow.isExpired(now) == false)
+                {
+                    // Cannot happen unless the clock went backwards.
+                    continue;
+                }
+
+                it.remove();
+
+                if (flow != null)
+                {
+                    mFlows.remove(id);
+                    reclaim(flow, mExpiredFlows);
+                }
+            }
+        }
+    }
+
+
+    private void reclaim(PendingAuthorization flow, AtomicLong counter)
+    {
+        mReclaimedBytes.addAndGet(flow.estimateSize());
+        counter.incrementAndGet();
+    }
+
+
+    private Set<String> slotOf(long expiresAt)
+    {
+        // Round up so that the flow has expired when the slot is swept.
+        long tick = (expiresAt + TICK_MILLIS - 1) / TICK_MILLIS;
+
+        return mWheel[(int)(tick % mWheel.length)];
+    }
+
+
+    private static long currentTick()
+    {
+        return System.currentTimeMillis() / TICK_MILLIS;
+    }
+
+
+    @ManagedAttribute(description = "The number of authorization flows waiting for the end-user's decision.")
+    public int getPendingFlows()
+    {
+        synchronized (mFlows)
+        {
+            return mFlows.size();
+        }
+    }
+
+
+    @ManagedAttribute(description = "The approximate number of bytes reclaimed by expiring and shedding flows.")
+    public long getReclaimedBytes()
+    {
+        return mReclaimedBytes.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of flows removed because their tickets expired.")
+    public long getExpiredFlows()
+    {
+        return mExpiredFlows.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of flows shed because the store was full.")
+    public long getShedFlows()
+    {
+        return mShedFlows.get();
+    }
+}
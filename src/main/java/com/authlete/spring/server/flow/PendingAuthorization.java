@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.flow;
+
+
+/**
+ * Data of an authorization request which is waiting for the end-user's
+ * decision on the authorization page.
+ *
+ * <p>
+ * An instance of this class is created when the authorization page is
+ * rendered and is consumed by the authorization decision endpoint. Only
+ * the ID of the instance is stored in the HTTP session.
+ * </p>
+ */
+public class PendingAuthorization
+{
+    /**
+     * Rough per-object overhead used by {@link #estimateSize()}.
+     */
+    private static final int OBJECT_OVERHEAD = 16;
+
+
+    private final String mId;
+    private final String mTenantId;
+    private final String mTicket;
+    private final String mClientId;
+    private final String[] mScopes;
+    private final String[] mClaimNames;
+    private final String[] mClaimLocales;
+    private final long mExpiresAt;
+    private final int mEstimatedSize;
+
+
+    /**
+     * Constructor.
+     *
+     * @param id
+     *         The ID of the pending flow.
+     *
+     * @param tenantId
+     *         The ID of the tenant which has issued the ticket.
+     *
+     * @param ticket
+     *         The ticket issued by Authlete's {@code /auth/authorization} API.
+     *
+     * @param clientId
+     *         The ID of the client application.
+     *
+     * @param scopes
+     *         The names of the scopes requested by the client application.
+     *
+     * @param claimNames
+     *         The names of the claims requested by the client application.
+     *
+     * @param claimLocales
+     *         The requested locales of the claims.
+     *
+     * @param expiresAt
+     *         The time at which this flow expires in milliseconds since
+     *         the Unix epoch.
+     */
+    public PendingAuthorization(
+            String id, String tenantId, String ticket, String clientId, String[] scopes,
+            String[] claimNames, String[] claimLocales, long expiresAt)
+    {
+        mId            = id;
+        mTenantId      = tenantId;
+        mTicket        = ticket;
+        mClientId      = clientId;
+        mScopes        = scopes;
+        mClaimNames    = claimNames;
+        mClaimLocales  = claimLocales;
+        mExpiresAt     = expiresAt;
+        mEstimatedSize = computeSize();
+    }
+
+
+    /**
+     * Get the ID of the pending flow.
+     */
+    public String getId()
+    {
+        return mId;
+    }
+
+
+    /**
+     * Get the ID of the tenant which has issued the ticket.
+     */
+    public String getTenantId()
+    {
+        return mTenantId;
+    }
+
+
+    /**
+     * Get the ticket issued by Authlete's {@code /auth/authorization} API.
+     */
+    public String getTicket()
+    {
+        return mTicket;
+    }
+
+
+    /**
+     * Get the ID of the client application.
+     */
+    public String getClientId()
+    {
+        return mClientId;
+    }
+
+
+    /**
+     * Get the names of the scopes requested by the client application.
+     */
+    public String[] getScopes()
+    {
+        return mScopes;
+    }
+
+
+    /**
+     * Get the names of the claims requested by the client application.
+     */
+    public String[] getClaimNames()
+    {
+        return mClaimNames;
+    }
+
+
+    /**
+     * Get the requested locales of the claims.
+     */
+    public String[] getClaimLocales()
+    {
+        return mClaimLocales;
+    }
+
+
+    /**
+     * Get the time at which this flow expires in milliseconds since
+     * the Unix epoch.
+     */
+    public long getExpiresAt()
+    {
+        return mExpiresAt;
+    }
+
+
+    /**
+     * Check whether this flow has expired.
+     */
+    public boolean isExpired(long now)
+    {
+        return mExpiresAt <= now;
+    }
+
+
+    /**
+     * Get the approximate number of heap bytes held by this instance.
+     * The value is used only for monitoring.
+     */
+    public int estimateSize()
+    {
+        return mEstimatedSize;
+    }
+
+
+    private int computeSize()
+    {
+        return OBJECT_OVERHEAD * 2 + sizeOf(mId) + sizeOf(mTicket)
+                + sizeOf(mClientId) + sizeOf(mScopes) + sizeOf(mClaimNames) + sizeOf(mClaimLocales);
+    }
+
+
+    private static int sizeOf(String value)
+    {
+        return (value == null) ? 0 : OBJECT_OVERHEAD + value.length();
+    }
+
+
+    private static int sizeOf(String[] values)
+    {
+        if (values == null)
+        {
+            return 0;
+        }
+
+        int size = OBJECT_OVERHEAD + values.length * 4;
+
+        for (String value : values)
+        {
+            size += sizeOf(value);
+        }
+
+        return size;
+    }
+}
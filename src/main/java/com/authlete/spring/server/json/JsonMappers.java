@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.json;
+
+
+import org.springframework.core.NativeDetector;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+
+/**
+ * The {@link ObjectMapper} used to convert entities from/to JSON.
+ *
+ * <p>
+ * The mapper is configured to produce the same JSON as MOXy did: null
+ * properties are omitted, and unknown properties in Authlete's responses
+ * are ignored so that new response parameters do not break this server.
+ * </p>
+ *
+ * <p>
+ * The Blackbird module replaces the reflective property accessors of
+ * Jackson with generated lambdas. It is not used in a native image, where
+ * classes cannot be defined at runtime.
+ * </p>
+ */
+public final class JsonMappers
+{
+    private static final ObjectMapper SHARED = create();
+
+
+    private JsonMappers()
+    {
+    }
+
+
+    /**
+     * Get the shared mapper. The mapper is thread-safe and must not be
+     * reconfigured.
+     */
+    public static ObjectMapper shared()
+    {
+        return SHARED;
+    }
+
+
+    private static ObjectMapper create()
+    {
+        ObjectMapper mapper = new ObjectMapper()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+
+        if (NativeDetector.inNativeImage() == false)
+        {
+            mapper.registerModule(new BlackbirdModule());
+        }
+
+        return mapper;
+    }
+}
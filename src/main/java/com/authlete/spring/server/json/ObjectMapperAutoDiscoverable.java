@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.json;
+
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.RuntimeType;
+import jakarta.ws.rs.core.FeatureContext;
+import org.glassfish.jersey.internal.spi.AutoDiscoverable;
+
+
+/**
+ * Registers {@link ObjectMapperResolver} to every Jersey client.
+ *
+ * <p>
+ * The Jersey clients which call Authlete APIs are created inside
+ * authlete-java-jakarta, so there is no chance to register providers to
+ * them directly. Jersey loads this class through {@code
+ * META-INF/services/org.glassfish.jersey.internal.spi.AutoDiscoverable}
+ * when a client is created.
+ * </p>
+ */
+@Priority(AutoDiscoverable.DEFAULT_PRIORITY)
+public class ObjectMapperAutoDiscoverable implements AutoDiscoverable
+{
+    @Override
+    public void configure(FeatureContext context)
+    {
+        if (context.getConfiguration().getRuntimeType() != RuntimeType.CLIENT)
+        {
+            // The server side is configured by AuthorizationServerResourceConfig.
+            return;
+        }
+
+        if (context.getConfiguration().isRegistered(ObjectMapperResolver.class) == false)
+        {
+            context.register(ObjectMapperResolver.class);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.json;
+
+
+import jakarta.ws.rs.ext.ContextResolver;
+import jakarta.ws.rs.ext.Provider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+/**
+ * Provides {@link JsonMappers#shared()} to the Jackson JSON provider of
+ * Jersey.
+ */
+@Provider
+public class ObjectMapperResolver implements ContextResolver<ObjectMapper>
+{
+    @Override
+    public ObjectMapper getContext(Class<?> type)
+    {
+        return JsonMappers.shared();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.lifecycle;
+
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Readiness probe.
+ *
+ * <p>
+ * Returns {@code 200 OK} after the server has finished starting up
+ * (including {@link WarmUp}) and {@code 503 Service Unavailable} before
+ * that.
+ * </p>
+ */
+@Component
+@Path("/ready")
+public class ReadinessEndpoint
+{
+    @Autowired
+    private ApplicationAvailability mAvailability;
+
+
+    @GET
+    public Response get()
+    {
+        if (mAvailability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC)
+        {
+            return Response.ok("OK", MediaType.TEXT_PLAIN_TYPE).build();
+        }
+
+        return Response
+                .status(Status.SERVICE_UNAVAILABLE)
+                .type(MediaType.TEXT_PLAIN_TYPE)
+                .entity("Not ready")
+                .build();
+    }
+}
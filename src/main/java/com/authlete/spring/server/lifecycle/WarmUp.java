@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.lifecycle;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.ViewResolver;
+import com.authlete.spring.server.api.AuthorizationEndpoint;
+import com.authlete.spring.server.api.ConfigurationEndpoint;
+import com.authlete.spring.server.api.IntrospectionEndpoint;
+import com.authlete.spring.server.api.JwksEndpoint;
+import com.authlete.spring.server.api.TokenEndpoint;
+
+
+/**
+ * Warm-up stage which runs before the server reports that it is ready.
+ *
+ * <p>
+ * Right after startup, the JIT compiler has not compiled the request
+ * handling paths, the FreeMarker template has not been parsed, the
+ * caches are empty and there is no connection to Authlete. This class
+ * sends synthetic requests to the endpoints in-process to fix all of
+ * them before real traffic arrives.
+ * </p>
+ *
+ * <p>
+ * The warm-up runs in a listener of {@link ApplicationReadyEvent}. Spring
+ * Boot changes the readiness state to {@code ACCEPTING_TRAFFIC} after all
+ * the listeners have returned, so the readiness probe ({@link
+ * ReadinessEndpoint}) fails until the warm-up has finished.
+ * </p>
+ *
+ * <p>
+ * Requests served from local caches are repeated {@code
+ * authorization-server.warm-up.iterations} times. Requests which reach
+ * Authlete are repeated {@code authorization-server.warm-up.backend-iterations}
+ * times, which is 0 by default so that starting a server does not send
+ * synthetic traffic to the real Authlete service. They are invalid on
+ * purpose (e.g. no client credentials), so that nothing is issued. Enable
+ * them where {@code base_url} in {@code authlete.properties} points at a
+ * stub server or a service which may receive them. Requests without a
+ * tenant are served by the default tenant, so only the default tenant is
+ * warmed up.
+ * </p>
+ *
+ * <p>
+ * The latency curve of each kind of request is logged: the mean latency of
+ * iterations 1, 2-3, 4-7, 8-15 and so on. Compare the first and the last
+ * buckets to see what the warm-up saves the first real requests, and tune
+ * the numbers of iterations to where the curve flattens.
+ * </p>
+ *
+ * <p>
+ * Warm-up requests are not recorded into the audit log nor counted in the
+ * metrics of the tenant. See {@link #isInProgress()}.
+ * </p>
+ */
+@Component
+public class WarmUp implements ApplicationListener<ApplicationReadyEvent>
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmUp.class);
+
+
+    /**
+     * Credentials of the introspection API caller used by the warm-up. See
+     * {@code IntrospectionEndpoint.authenticateApiCaller(String)}.
+     */
+    private static final String INTROSPECTION_CALLER = "Basic " + Base64.getEncoder()
+            .encodeToString("warm-up:warm-up".getBytes(StandardCharsets.UTF_8));
+
+
+    /**
+     * Set on the thread which sends the warm-up requests.
+     */
+    private static final ThreadLocal<Boolean> IN_PROGRESS = new ThreadLocal<Boolean>();
+
+
+    private final boolean mEnabled;
+    private final int mIterations;
+    private final int mBackendIterations;
+    private final AuthorizationEndpoint mAuthorizationEndpoint;
+    private final TokenEndpoint mTokenEndpoint;
+    private final IntrospectionEndpoint mIntrospectionEndpoint;
+    private final JwksEndpoint mJwksEndpoint;
+    private final ConfigurationEndpoint mConfigurationEndpoint;
+    private final ViewResolver mViewResolver;
+
+
+    public WarmUp(
+            @Value("${authorization-server.warm-up.enabled:true}") boolean enabled,
+            @Value("${authorization-server.warm-up.iterations:2000}") int iterations,
+            @Value("${authorization-server.warm-up.backend-iterations:0}") int backendIterations,
+            AuthorizationEndpoint authorizationEndpoint,
+            TokenEndpoint tokenEndpoint,
+            IntrospectionEndpoint introspectionEndpoint,
+            JwksEndpoint jwksEndpoint,
+            ConfigurationEndpoint configurationEndpoint,
+            @Qualifier("freeMarkerViewResolver") ViewResolver viewResolver)
+    {
+        mEnabled               = enabled;
+        mIterations            = iterations;
+        mBackendIterations     = backendIterations;
+        mAuthorizationEndpoint = authorizationEndpoint;
+        mTokenEndpoint         = tokenEndpoint;
+        mIntrospectionEndpoint = introspectionEndpoint;
+        mJwksEndpoint          = jwksEndpoint;
+        mConfigurationEndpoint = configurationEndpoint;
+        mViewResolver          = viewResolver;
+    }
+
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event)
+    {
+        if (mEnabled == false)
+        {
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        IN_PROGRESS.set(Boolean.TRUE);
+
+        try
+        {
+            warmUp();
+        }
+        finally
+        {
+            IN_PROGRESS.remove();
+        }
+
+        LOGGER.info("Warm-up finished in {} ms.",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+
+    /**
+     * Check if the current thread is handling a warm-up request. Such
+     * requests must not be audited or counted as traffic.
+     */
+    public static boolean isInProgress()
+    {
+        return IN_PROGRESS.get() != null;
+    }
+
+
+    private void warmUp()
+    {
+        // Parse the template of the authorization page. The resolved view
+        // is cached by the view resolver.
+        run("template", 1, () -> mViewResolver.resolveViewName("authorization", Locale.US));
+
+        // Fill the caches and open connections to Authlete first.
+        run("jwks",          mIterations,        () -> mJwksEndpoint.get("gzip", jwksRequest()));
+        run("configuration", mIterations,        () -> mConfigurationEndpoint.get(
+                "gzip", configurationRequest(), new MockHttpServletResponse()));
+        run("authorization", mBackendIterations, () -> mAuthorizationEndpoint.get(authorizationRequest()));
+        run("token",         mBackendIterations, () -> mTokenEndpoint.post(null, tokenRequest()));
+        run("introspection", mBackendIterations, () -> mIntrospectionEndpoint.post(
+                INTROSPECTION_CALLER, introspectionRequest()));
+    }
+
+
+    private static void run(String name, int iterations, Task task)
+    {
+        // Total nanoseconds of iterations [2^k, 2^(k+1)), counted from 1.
+        long[] buckets = new long[32];
+        int done;
+
+        for (done = 0; done < iterations; done++)
+        {
+            long start = System.nanoTime();
+
+            try
+            {
+                task.run();
+            }
+            catch (Exception e)
+            {
+                // The warm-up must not prevent the server from starting.
+                LOGGER.warn("Warm-up of '{}' failed: {}", name, e.getMessage());
+                break;
+            }
+
+            buckets[bucketOf(done + 1)] += System.nanoTime() - start;
+        }
+
+        if (done > 0)
+        {
+            LOGGER.info("Warm-up of '{}': mean latency in microseconds by iteration: {}",
+                    name, curveOf(buckets, done));
+        }
+    }
+
+
+    private static int bucketOf(int iteration)
+    {
+        return 31 - Integer.numberOfLeadingZeros(iteration);
+    }
+
+
+    private static String curveOf(long[] buckets, int iterations)
+    {
+        StringBuilder curve = new StringBuilder();
+
+        for (int k = 0; k <= bucketOf(iterations); k++)
+        {
+            int first = 1 << k;
+            int last  = Math.min((first << 1) - 1, iterations);
+
+            if (curve.length() > 0)
+            {
+                curve.append(", ");
+            }
+
+            curve.append((first == last) ? String.valueOf(first) : first + "-" + last)
+                 .append(": ")
+                 .append(TimeUnit.NANOSECONDS.toMicros(buckets[k] / (last - first + 1)));
+        }
+
+        return curve.toString();
+    }
+
+
+    private static MockHttpServletRequest jwksRequest()
+    {
+        return new MockHttpServletRequest("GET", "/api/jwks");
+    }
+
+
+    private static MockHttpServletRequest configurationRequest()
+    {
+        return new MockHttpServletRequest("GET", "/.well-known/openid-configuration");
+    }
+
+
+    private static MockHttpServletRequest authorizationRequest()
+    {
+        // No client_id. Authlete rejects the request.
+        return new MockHttpServletRequest("GET", "/api/authorization");
+    }
+
+
+    private static MockHttpServletRequest tokenRequest()
+    {
+        // No client credentials. Authlete rejects the request.
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/token");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.addParameter("grant_type", "client_credentials");
+
+        return request;
+    }
+
+
+    private static MockHttpServletRequest introspectionRequest()
+    {
+        // A token which does not exist.
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/introspection");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.addParameter("token", "warm-up");
+
+        return request;
+    }
+
+
+    private interface Task
+    {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import java.io.IOException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.ext.ReaderInterceptor;
+import jakarta.ws.rs.ext.ReaderInterceptorContext;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+
+/**
+ * Interceptor which times reading of request entities as {@link Phase#PARSE}
+ * and writing of response entities (including rendering of templates) as
+ * {@link Phase#RENDER}.
+ */
+public class EntityTimingInterceptor implements ReaderInterceptor, WriterInterceptor
+{
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context)
+            throws IOException, WebApplicationException
+    {
+        try (RequestTimings.Scope scope = RequestTimings.phase(Phase.PARSE))
+        {
+            return context.proceed();
+        }
+    }
+
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context)
+            throws IOException, WebApplicationException
+    {
+        try (RequestTimings.Scope scope = RequestTimings.phase(Phase.RENDER))
+        {
+            context.proceed();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.authlete.spring.server.json.JsonMappers;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+
+/**
+ * Exporter which appends finished spans to a file as JSON lines, for local
+ * testing without a collector. Durations are in microseconds.
+ */
+class FileSpanExporter implements SpanExporter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSpanExporter.class);
+
+
+    private final Path mFile;
+    private BufferedWriter mWriter;
+
+
+    FileSpanExporter(Path file)
+    {
+        mFile = file;
+    }
+
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans)
+    {
+        try
+        {
+            if (mWriter == null)
+            {
+                mWriter = Files.newBufferedWriter(mFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+
+            for (SpanData span : spans)
+            {
+                mWriter.write(JsonMappers.shared().writeValueAsString(SpanRecords.toMap(span)));
+                mWriter.newLine();
+            }
+
+            mWriter.flush();
+
+            return CompletableResultCode.ofSuccess();
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to write spans to '{}': {}", mFile, e.toString());
+
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+
+    @Override
+    public CompletableResultCode flush()
+    {
+        return CompletableResultCode.ofSuccess();
+    }
+
+
+    @Override
+    public synchronized CompletableResultCode shutdown()
+    {
+        if (mWriter != null)
+        {
+            try
+            {
+                mWriter.close();
+            }
+            catch (IOException e)
+            {
+                return CompletableResultCode.ofFailure();
+            }
+        }
+
+        return CompletableResultCode.ofSuccess();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+/**
+ * Phases of request processing whose time is recorded by
+ * {@link RequestTimings}.
+ */
+public enum Phase
+{
+    /**
+     * Reading and parsing the request entity (e.g. form parameters).
+     */
+    PARSE("parse"),
+
+
+    /**
+     * Looking up the HTTP session.
+     */
+    SESSION("session"),
+
+
+    /**
+     * Looking up users.
+     */
+    USER("user"),
+
+
+    /**
+     * Calling Authlete APIs.
+     */
+    AUTHLETE("authlete"),
+
+
+    /**
+     * Writing the response entity, including rendering of templates.
+     */
+    RENDER("render");
+
+
+    private final String mMetricName;
+
+
+    private Phase(String metricName)
+    {
+        mMetricName = metricName;
+    }
+
+
+    /**
+     * The name of the metric in the {@code Server-Timing} header.
+     */
+    public String getMetricName()
+    {
+        return mMetricName;
+    }
+}
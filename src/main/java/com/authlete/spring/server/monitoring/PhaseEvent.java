@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * JFR event of a {@link Phase} of request processing. The event is emitted
+ * in the thread which processes the request, so it is nested in the
+ * {@link RequestEvent} of the request in JDK Mission Control.
+ */
+@Name("com.authlete.spring.server.Phase")
+@Label("Request Phase")
+@Category({ "Authlete", "Authorization Server" })
+@Description("A phase of an HTTP request such as an Authlete API call")
+@StackTrace(false)
+class PhaseEvent extends Event
+{
+    @Label("Phase")
+    String phase;
+
+    @Label("Path")
+    String path;
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+
+/**
+ * Exporter which keeps the most recent finished spans in memory, for local
+ * testing. The spans can be seen through the {@code recentSpans} operation
+ * of the {@code Tracing} MBean.
+ */
+class RecentSpanExporter implements SpanExporter
+{
+    private final int mCapacity;
+    private final ArrayDeque<SpanData> mSpans;
+
+
+    RecentSpanExporter(int capacity)
+    {
+        mCapacity = Math.max(1, capacity);
+        mSpans    = new ArrayDeque<>(mCapacity);
+    }
+
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans)
+    {
+        for (SpanData span : spans)
+        {
+            if (mSpans.size() == mCapacity)
+            {
+                mSpans.removeFirst();
+            }
+
+            mSpans.addLast(span);
+        }
+
+        return CompletableResultCode.ofSuccess();
+    }
+
+
+    /**
+     * Get the recent spans, oldest first.
+     */
+    synchronized List<SpanData> getSpans()
+    {
+        return new ArrayList<>(mSpans);
+    }
+
+
+    synchronized void clear()
+    {
+        mSpans.clear();
+    }
+
+
+    @Override
+    public CompletableResultCode flush()
+    {
+        return CompletableResultCode.ofSuccess();
+    }
+
+
+    @Override
+    public CompletableResultCode shutdown()
+    {
+        return CompletableResultCode.ofSuccess();
+    }
+}
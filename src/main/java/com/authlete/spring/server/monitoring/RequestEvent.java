@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * JFR event of an HTTP request, from the entry of {@link TimingFilter} to
+ * the completion of the response.
+ */
+@Name("com.authlete.spring.server.Request")
+@Label("Request")
+@Category({ "Authlete", "Authorization Server" })
+@Description("An HTTP request processed by the authorization server")
+@StackTrace(false)
+class RequestEvent extends Event
+{
+    @Label("Method")
+    String method;
+
+    @Label("Path")
+    String path;
+
+    @Label("Tenant")
+    String tenant;
+
+    @Label("Status")
+    int status;
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import java.util.Locale;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+
+
+/**
+ * Time spent in each {@link Phase} of the request being processed by the
+ * current thread.
+ *
+ * <p>
+ * An instance is bound to the thread by {@link TimingFilter} only while JFR
+ * records {@link RequestEvent}, the {@code Server-Timing} header is enabled
+ * or {@link Tracing} is enabled. Each phase is also traced as a child span
+ * of the current span. Otherwise, {@link #phase(Phase)} costs one thread-local lookup
+ * and returns a shared no-op scope.
+ * </p>
+ *
+ * <pre>
+ * try (RequestTimings.Scope scope = RequestTimings.phase(Phase.USER))
+ * {
+ *     ...
+ * }
+ * </pre>
+ *
+ * <p>
+ * Time spent in the same phase several times (e.g. two Authlete API calls)
+ * is summed up.
+ * </p>
+ */
+public final class RequestTimings
+{
+    /**
+     * A phase being timed.
+     */
+    public interface Scope extends AutoCloseable
+    {
+        @Override
+        void close();
+    }
+
+
+    private static final Scope NOOP = () -> {};
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+
+    private final String mPath;
+    private final boolean mServerTiming;
+    private final Tracer mTracer;
+    private final long mStart = System.nanoTime();
+    private final long[] mDurations = new long[Phase.values().length];
+
+
+    private RequestTimings(String path, boolean serverTiming, Tracer tracer)
+    {
+        mPath         = path;
+        mServerTiming = serverTiming;
+        mTracer       = tracer;
+    }
+
+
+    /**
+     * Start timing a phase of the current request.
+     */
+    public static Scope phase(Phase phase)
+    {
+        return phase(phase, null);
+    }
+
+
+    /**
+     * Start timing a phase of the current request.
+     *
+     * @param detail
+     *         What is done in the phase (e.g. the name of the Authlete API),
+     *         which is appended to the name of the span. May be {@code null}.
+     */
+    public static Scope phase(Phase phase, String detail)
+    {
+        RequestTimings timings = CURRENT.get();
+
+        if (timings == null)
+        {
+            return NOOP;
+        }
+
+        return timings.begin(phase, detail);
+    }
+
+
+    /**
+     * Get the timings of the current request.
+     *
+     * @return
+     *         The timings, or {@code null} if timing is not enabled.
+     */
+    public static RequestTimings current()
+    {
+        return CURRENT.get();
+    }
+
+
+    static RequestTimings bind(String path, boolean serverTiming, Tracer tracer)
+    {
+        RequestTimings timings = new RequestTimings(path, serverTiming, tracer);
+
+        CURRENT.set(timings);
+
+        return timings;
+    }
+
+
+    static void unbind()
+    {
+        CURRENT.remove();
+    }
+
+
+    private Scope begin(Phase phase, String detail)
+    {
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+
+        // The span is a child of the current span, i.e. the server span or
+        // the span of the enclosing phase.
+        Span span = (mTracer == null) ? null : mTracer.spanBuilder(
+                (detail == null) ? phase.getMetricName() : phase.getMetricName() + " " + detail).startSpan();
+        io.opentelemetry.context.Scope current = (span == null) ? null : span.makeCurrent();
+
+        long start = System.nanoTime();
+
+        return () -> {
+            mDurations[phase.ordinal()] += System.nanoTime() - start;
+
+            if (span != null)
+            {
+                current.close();
+                span.end();
+            }
+
+            event.end();
+
+            if (event.shouldCommit())
+            {
+                event.phase = phase.getMetricName();
+                event.path  = mPath;
+                event.commit();
+            }
+        };
+    }
+
+
+    /**
+     * True if the {@code Server-Timing} header should be added to the
+     * response.
+     */
+    public boolean isServerTimingEnabled()
+    {
+        return mServerTiming;
+    }
+
+
+    /**
+     * Build the value of the {@code Server-Timing} header, listing the
+     * phases which have been timed and the total time so far in
+     * milliseconds.
+     */
+    public String toServerTiming()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for (Phase phase : Phase.values())
+        {
+            long duration = mDurations[phase.ordinal()];
+
+            if (duration != 0)
+            {
+                append(sb, phase.getMetricName(), duration);
+            }
+        }
+
+        append(sb, "total", System.nanoTime() - mStart);
+
+        return sb.toString();
+    }
+
+
+    private static void append(StringBuilder sb, String name, long nanos)
+    {
+        if (sb.length() != 0)
+        {
+            sb.append(", ");
+        }
+
+        sb.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.1f", nanos / 1e6));
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+
+
+/**
+ * Response filter which adds the {@code Server-Timing} header to responses
+ * of Jersey endpoints when it is enabled by {@link TimingFilter}. The header
+ * covers the processing until the response entity starts to be written.
+ *
+ * @see <a href="https://www.w3.org/TR/server-timing/">Server Timing</a>
+ */
+public class ServerTimingFilter implements ContainerResponseFilter
+{
+    private static final String SERVER_TIMING = "Server-Timing";
+
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response)
+    {
+        RequestTimings timings = RequestTimings.current();
+
+        if (timings == null || timings.isServerTimingEnabled() == false)
+        {
+            return;
+        }
+
+        response.getHeaders().add(SERVER_TIMING, timings.toServerTiming());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import io.opentelemetry.sdk.trace.data.SpanData;
+
+
+/**
+ * Conversion of finished spans into JSON-friendly maps for the local
+ * exporters.
+ */
+final class SpanRecords
+{
+    private SpanRecords()
+    {
+    }
+
+
+    static Map<String, Object> toMap(SpanData span)
+    {
+        Map<String, Object> map = new LinkedHashMap<>();
+
+        map.put("traceId",  span.getTraceId());
+        map.put("spanId",   span.getSpanId());
+
+        if (span.getParentSpanContext().isValid())
+        {
+            map.put("parentSpanId", span.getParentSpanId());
+        }
+
+        map.put("name",     span.getName());
+        map.put("kind",     span.getKind().name());
+        map.put("start",    span.getStartEpochNanos());
+        map.put("duration", (span.getEndEpochNanos() - span.getStartEpochNanos()) / 1000);
+        map.put("status",   span.getStatus().getStatusCode().name());
+
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+
+        if (attributes.isEmpty() == false)
+        {
+            map.put("attributes", attributes);
+        }
+
+        return map;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import java.util.List;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.core.Context;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+
+
+/**
+ * Request filter which names the server span of {@link Tracing} after the
+ * matched route (e.g. {@code POST /api/token}), so that spans of the same
+ * endpoint are grouped together regardless of tenant path prefixes.
+ */
+public class SpanRouteFilter implements ContainerRequestFilter
+{
+    private static final AttributeKey<String> HTTP_ROUTE = AttributeKey.stringKey("http.route");
+
+
+    @Context
+    private ExtendedUriInfo mUriInfo;
+
+
+    @Override
+    public void filter(ContainerRequestContext request)
+    {
+        Span span = Span.current();
+
+        if (span.isRecording() == false)
+        {
+            return;
+        }
+
+        // The base path (e.g. "/api/") followed by the templates matched
+        // from the outermost resource to the innermost.
+        String base = mUriInfo.getBaseUri().getPath();
+        StringBuilder route = new StringBuilder(base.endsWith("/") ? base.substring(0, base.length() - 1) : base);
+        List<UriTemplate> templates = mUriInfo.getMatchedTemplates();
+
+        for (int i = templates.size() - 1; i >= 0; i--)
+        {
+            String template = templates.get(i).getTemplate();
+
+            if (template.equals("/") == false)
+            {
+                route.append(template);
+            }
+        }
+
+        span.setAttribute(HTTP_ROUTE, route.toString());
+        span.updateName(request.getMethod() + " " + route);
+    }
+}
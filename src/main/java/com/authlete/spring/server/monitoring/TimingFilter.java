@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import java.io.IOException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import com.authlete.spring.server.tenant.TenantRegistry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+
+
+/**
+ * Filter which records a {@link RequestEvent} and a server span of
+ * {@link Tracing} per request and binds {@link RequestTimings} to the
+ * thread processing the request.
+ *
+ * <p>
+ * Nothing is done unless JFR records {@code com.authlete.spring.server.Request}
+ * events, {@code authorization-server.monitoring.server-timing} is true or
+ * tracing is enabled. The {@code Server-Timing} header itself is added by
+ * {@link ServerTimingFilter} before the response is committed.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+public class TimingFilter extends OncePerRequestFilter
+{
+    private final TenantRegistry mRegistry;
+    private final Tracing mTracing;
+    private final boolean mServerTiming;
+
+
+    public TimingFilter(
+            TenantRegistry registry,
+            Tracing tracing,
+            @Value("${authorization-server.monitoring.server-timing:false}") boolean serverTiming)
+    {
+        mRegistry     = registry;
+        mTracing      = tracing;
+        mServerTiming = serverTiming;
+    }
+
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                    throws ServletException, IOException
+    {
+        RequestEvent event = new RequestEvent();
+        Tracer tracer      = mTracing.getTracer();
+
+        if (mServerTiming == false && event.isEnabled() == false && tracer == null)
+        {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String path = request.getRequestURI();
+        Span span   = (tracer != null) ? mTracing.startServerSpan(request) : Span.getInvalid();
+
+        event.begin();
+        RequestTimings.bind(path, mServerTiming, tracer);
+
+        try (Scope scope = span.makeCurrent())
+        {
+            chain.doFilter(request, response);
+        }
+        finally
+        {
+            RequestTimings.unbind();
+            event.end();
+
+            String tenant = mRegistry.get(request).getId();
+
+            if (tracer != null)
+            {
+                mTracing.endServerSpan(span, response, tenant);
+            }
+
+            if (event.shouldCommit())
+            {
+                event.method = request.getMethod();
+                event.path   = path;
+                event.tenant = tenant;
+                event.status = response.getStatus();
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.RuntimeType;
+import jakarta.ws.rs.core.FeatureContext;
+import org.glassfish.jersey.internal.spi.AutoDiscoverable;
+
+
+/**
+ * Registers {@link TraceContextClientFilter} to every Jersey client, in
+ * the same way as {@code ObjectMapperAutoDiscoverable}.
+ */
+@Priority(AutoDiscoverable.DEFAULT_PRIORITY)
+public class TraceContextAutoDiscoverable implements AutoDiscoverable
+{
+    @Override
+    public void configure(FeatureContext context)
+    {
+        if (context.getConfiguration().getRuntimeType() != RuntimeType.CLIENT)
+        {
+            return;
+        }
+
+        if (context.getConfiguration().isRegistered(TraceContextClientFilter.class) == false)
+        {
+            context.register(TraceContextClientFilter.class);
+        }
+    }
+}
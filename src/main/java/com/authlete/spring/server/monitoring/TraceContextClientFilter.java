@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+
+
+/**
+ * Client filter which adds the W3C {@code traceparent} header of the
+ * current span to outgoing requests such as Authlete API calls. Registered
+ * to every Jersey client by {@link TraceContextAutoDiscoverable}.
+ */
+public class TraceContextClientFilter implements ClientRequestFilter
+{
+    @Override
+    public void filter(ClientRequestContext request)
+    {
+        if (Span.current().getSpanContext().isValid() == false)
+        {
+            // Tracing is disabled or the call is not made in a request.
+            return;
+        }
+
+        W3CTraceContextPropagator.getInstance().inject(Context.current(), request,
+                (carrier, key, value) -> carrier.getHeaders().putSingle(key, value));
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.monitoring;
+
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.spring.server.json.JsonMappers;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapGetter;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+
+
+/**
+ * OpenTelemetry tracing of requests.
+ *
+ * <p>
+ * When {@code authorization-server.tracing.enabled} is true, {@link
+ * TimingFilter} starts a server span for every request, continuing the
+ * trace of the W3C {@code traceparent} header of the request if any, and
+ * every {@link Phase} timed by {@link RequestTimings} (Authlete API calls,
+ * session access, user lookups and rendering) becomes a child span. The
+ * {@code traceparent} header is propagated to Authlete by {@link
+ * TraceContextClientFilter}.
+ * </p>
+ *
+ * <p>
+ * Traces which have not been sampled by the caller are sampled at the
+ * ratio of {@code sample-ratio}. Finished spans are exported to an OTLP
+ * collector ({@code otlp}), to a file as JSON lines ({@code file}), or kept
+ * in memory and shown by the {@code recentSpans} operation of this MBean
+ * ({@code memory}).
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=Tracing")
+public class Tracing
+{
+    private static final String INSTRUMENTATION_NAME = "com.authlete.spring.server";
+    private static final AttributeKey<String> SERVICE_NAME = AttributeKey.stringKey("service.name");
+    private static final AttributeKey<String> HTTP_METHOD  = AttributeKey.stringKey("http.request.method");
+    private static final AttributeKey<String> URL_PATH     = AttributeKey.stringKey("url.path");
+    private static final AttributeKey<Long>   HTTP_STATUS  = AttributeKey.longKey("http.response.status_code");
+    private static final AttributeKey<String> TENANT       = AttributeKey.stringKey("authlete.tenant");
+
+
+    private static final TextMapGetter<HttpServletRequest> GETTER = new TextMapGetter<>()
+    {
+        @Override
+        public Iterable<String> keys(HttpServletRequest request)
+        {
+            return Collections.list(request.getHeaderNames());
+        }
+
+
+        @Override
+        public String get(HttpServletRequest request, String key)
+        {
+            return (request == null) ? null : request.getHeader(key);
+        }
+    };
+
+
+    private final SdkTracerProvider mProvider;
+    private final Tracer mTracer;
+    private final RecentSpanExporter mRecentSpans;
+
+
+    public Tracing(
+            @Value("${authorization-server.tracing.enabled:false}") boolean enabled,
+            @Value("${authorization-server.tracing.sample-ratio:0.1}") double sampleRatio,
+            @Value("${authorization-server.tracing.exporter:memory}") String exporter,
+            @Value("${authorization-server.tracing.file:spans.jsonl}") String file,
+            @Value("${authorization-server.tracing.memory-size:1000}") int memorySize,
+            @Value("${authorization-server.tracing.otlp-endpoint:http://localhost:4318/v1/traces}") String otlpEndpoint,
+            @Value("${spring.application.name:spring-oauth-server}") String serviceName)
+    {
+        if (enabled == false)
+        {
+            mProvider    = null;
+            mTracer      = null;
+            mRecentSpans = null;
+            return;
+        }
+
+        SpanProcessor processor;
+
+        switch (exporter.toLowerCase(Locale.ROOT))
+        {
+            case "otlp":
+                processor = BatchSpanProcessor.builder(
+                        OtlpHttpSpanExporter.builder().setEndpoint(otlpEndpoint).build()).build();
+                mRecentSpans = null;
+                break;
+
+            case "file":
+                processor = BatchSpanProcessor.builder(new FileSpanExporter(Paths.get(file))).build();
+                mRecentSpans = null;
+                break;
+
+            case "memory":
+                mRecentSpans = new RecentSpanExporter(memorySize);
+                processor = SimpleSpanProcessor.create(mRecentSpans);
+                break;
+
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown exporter of authorization-server.tracing: " + exporter);
+        }
+
+        mProvider = SdkTracerProvider.builder()
+                .setResource(Resource.getDefault().merge(
+                        Resource.create(Attributes.of(SERVICE_NAME, serviceName))))
+                .setSampler(Sampler.parentBased(Sampler.traceIdRatioBased(sampleRatio)))
+                .addSpanProcessor(processor)
+                .build();
+
+        mTracer = mProvider.get(INSTRUMENTATION_NAME);
+    }
+
+
+    @PreDestroy
+    public void stop()
+    {
+        if (mProvider != null)
+        {
+            // Export the spans still in the batch.
+            mProvider.shutdown().join(10, TimeUnit.SECONDS);
+        }
+    }
+
+
+    /**
+     * Get the tracer.
+     *
+     * @return
+     *         The tracer, or {@code null} if tracing is disabled.
+     */
+    public Tracer getTracer()
+    {
+        return mTracer;
+    }
+
+
+    /**
+     * Start the server span of a request. The caller must make the span
+     * current and pass it to {@link #endServerSpan(Span, HttpServletResponse, String)}.
+     */
+    Span startServerSpan(HttpServletRequest request)
+    {
+        Context parent = W3CTraceContextPropagator.getInstance()
+                .extract(Context.root(), request, GETTER);
+
+        // The name is replaced with the route by SpanRouteFilter.
+        return mTracer.spanBuilder(request.getMethod())
+                .setParent(parent)
+                .setSpanKind(SpanKind.SERVER)
+                .setAttribute(HTTP_METHOD, request.getMethod())
+                .setAttribute(URL_PATH, request.getRequestURI())
+                .startSpan();
+    }
+
+
+    void endServerSpan(Span span, HttpServletResponse response, String tenant)
+    {
+        int status = response.getStatus();
+
+        span.setAttribute(HTTP_STATUS, (long)status);
+        span.setAttribute(TENANT, tenant);
+
+        if (status >= 500)
+        {
+            span.setStatus(StatusCode.ERROR);
+        }
+
+        span.end();
+    }
+
+
+    @ManagedOperation(description = "Show the recent spans as JSON lines when the exporter is 'memory'.")
+    public String recentSpans()
+    {
+        if (mRecentSpans == null)
+        {
+            return "";
+        }
+
+        return mRecentSpans.getSpans().stream()
+                .map(span -> {
+                    try
+                    {
+                        return JsonMappers.shared().writeValueAsString(SpanRecords.toMap(span));
+                    }
+                    catch (JsonProcessingException e)
+                    {
+                        return e.toString();
+                    }
+                })
+                .collect(Collectors.joining("\n"));
+    }
+
+
+    @ManagedOperation(description = "Discard the recent spans kept in memory.")
+    public void clearRecentSpans()
+    {
+        if (mRecentSpans != null)
+        {
+            mRecentSpans.clear();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.tenant;
+
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import com.authlete.common.api.AuthleteApi;
+import com.authlete.spring.server.lifecycle.WarmUp;
+import com.authlete.spring.server.monitoring.Phase;
+import com.authlete.spring.server.monitoring.RequestTimings;
+
+
+/**
+ * {@link AuthleteApi} wrapper which records every API call into
+ * {@link TenantMetrics} and times (and traces) it as {@link Phase#AUTHLETE}
+ * of the current request.
+ *
+ * <p>
+ * The wrapper is a dynamic proxy so that it does not have to follow
+ * the methods added to {@code AuthleteApi} by new versions of
+ * authlete-java-common.
+ * </p>
+ */
+final class MeteredAuthleteApi implements InvocationHandler
+{
+    private final AuthleteApi mApi;
+    private final TenantMetrics mMetrics;
+
+
+    private MeteredAuthleteApi(AuthleteApi api, TenantMetrics metrics)
+    {
+        mApi     = api;
+        mMetrics = metrics;
+    }
+
+
+    /**
+     * Wrap the API instance.
+     */
+    static AuthleteApi wrap(AuthleteApi api, TenantMetrics metrics)
+    {
+        return (AuthleteApi)Proxy.newProxyInstance(
+                AuthleteApi.class.getClassLoader(),
+                new Class<?>[] { AuthleteApi.class },
+                new MeteredAuthleteApi(api, metrics));
+    }
+
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        if (method.getDeclaringClass() == Object.class)
+        {
+            return method.invoke(mApi, args);
+        }
+
+        boolean failed = true;
+
+        try (RequestTimings.Scope scope = RequestTimings.phase(Phase.AUTHLETE, method.getName()))
+        {
+            Object result = method.invoke(mApi, args);
+            failed = false;
+
+            return result;
+        }
+        catch (InvocationTargetException e)
+        {
+            // Rethrow the exception thrown by the API implementation.
+            throw e.getCause();
+        }
+        finally
+        {
+            // Warm-up calls are not traffic.
+            if (WarmUp.isInProgress() == false)
+            {
+                mMetrics.recordBackendCall(failed);
+            }
+        }
+    }
+}
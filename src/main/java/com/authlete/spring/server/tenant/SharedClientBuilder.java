@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.tenant;
+
+
+import java.security.KeyStore;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.Configuration;
+
+
+/**
+ * A {@link ClientBuilder} whose {@link #build()} returns the same client
+ * every time, so that the {@code AuthleteApi} instances given this builder
+ * share one JAX-RS client and its connection pool.
+ *
+ * <p>
+ * The other methods configure the shared client and take effect only
+ * before it has been built.
+ * </p>
+ */
+class SharedClientBuilder extends ClientBuilder
+{
+    private final ClientBuilder mDelegate = ClientBuilder.newBuilder();
+    private Client mClient;
+
+
+    @Override
+    public synchronized Client build()
+    {
+        if (mClient == null)
+        {
+            mClient = mDelegate.build();
+        }
+
+        return mClient;
+    }
+
+
+    /**
+     * Close the shared client, if it has been built.
+     */
+    synchronized void close()
+    {
+        if (mClient != null)
+        {
+            mClient.close();
+            mClient = null;
+        }
+    }
+
+
+    @Override
+    public Configuration getConfiguration()
+    {
+        return mDelegate.getConfiguration();
+    }
+
+
+    @Override
+    public ClientBuilder property(String name, Object value)
+    {
+        mDelegate.property(name, value);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder register(Class<?> componentClass)
+    {
+        mDelegate.register(componentClass);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder register(Class<?> componentClass, int priority)
+    {
+        mDelegate.register(componentClass, priority);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder register(Class<?> componentClass, Class<?>... contracts)
+    {
+        mDelegate.register(componentClass, contracts);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder register(Class<?> componentClass, Map<Class<?>, Integer> contracts)
+    {
+        mDelegate.register(componentClass, contracts);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder register(Object component)
+    {
+        mDelegate.register(component);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder register(Object component, int priority)
+    {
+        mDelegate.register(component, priority);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder register(Object component, Class<?>... contracts)
+    {
+        mDelegate.register(component, contracts);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder register(Object component, Map<Class<?>, Integer> contracts)
+    {
+        mDelegate.register(component, contracts);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder withConfig(Configuration config)
+    {
+        mDelegate.withConfig(config);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder sslContext(SSLContext sslContext)
+    {
+        mDelegate.sslContext(sslContext);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder keyStore(KeyStore keyStore, char[] password)
+    {
+        mDelegate.keyStore(keyStore, password);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder trustStore(KeyStore trustStore)
+    {
+        mDelegate.trustStore(trustStore);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder hostnameVerifier(HostnameVerifier verifier)
+    {
+        mDelegate.hostnameVerifier(verifier);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder executorService(ExecutorService executorService)
+    {
+        mDelegate.executorService(executorService);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder scheduledExecutorService(ScheduledExecutorService scheduledExecutorService)
+    {
+        mDelegate.scheduledExecutorService(scheduledExecutorService);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder connectTimeout(long timeout, TimeUnit unit)
+    {
+        mDelegate.connectTimeout(timeout, unit);
+        return this;
+    }
+
+
+    @Override
+    public ClientBuilder readTimeout(long timeout, TimeUnit unit)
+    {
+        mDelegate.readTimeout(timeout, unit);
+        return this;
+    }
+}
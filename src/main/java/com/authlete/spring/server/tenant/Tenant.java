@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.tenant;
+
+
+import java.util.Set;
+import com.authlete.common.api.AuthleteApi;
+import com.authlete.spring.server.web.CachedDocument;
+import com.authlete.spring.server.web.TransferStatistics;
+
+
+/**
+ * A tenant, i.e. an Authlete service served by this server.
+ *
+ * <p>
+ * Each tenant has its own {@link AuthleteApi} instance, caches and
+ * metrics. The API instances of all the tenants send requests through
+ * one JAX-RS client and share its connections to the Authlete server
+ * (see {@link TenantApiFactory}).
+ * </p>
+ *
+ * <p>
+ * The API instance can be replaced at runtime by {@link
+ * #reconfigure(AuthleteApi, String, Set)}. Endpoints call {@link #getApi()}
+ * once per request, so requests in flight finish with the instance they
+ * started with while new requests use the new one. The API instance, the
+ * identity of its service and the host names are replaced together as one
+ * {@link Backend}; code which needs two of them takes them from the same
+ * {@link #getBackend()}.
+ * </p>
+ */
+public class Tenant
+{
+    /**
+     * The ID of the tenant configured by {@code authlete.properties}.
+     */
+    public static final String DEFAULT_ID = "default";
+
+
+    /**
+     * The Authlete service of a tenant at a point in time: the API instance,
+     * the identity of the service and the host names routed to the tenant.
+     */
+    public static final class Backend
+    {
+        private final AuthleteApi mApi;
+        private final String mIdentity;
+        private final Set<String> mHosts;
+
+
+        Backend(AuthleteApi api, String identity, Set<String> hosts)
+        {
+            mApi      = api;
+            mIdentity = identity;
+            mHosts    = hosts;
+        }
+
+
+        /**
+         * Get the API instance to communicate with the Authlete service.
+         */
+        public AuthleteApi getApi()
+        {
+            return mApi;
+        }
+
+
+        /**
+         * Get the identity of the Authlete service of {@link #getApi()}.
+         */
+        public String getIdentity()
+        {
+            return mIdentity;
+        }
+
+
+        /**
+         * Get the host names which are routed to the tenant.
+         */
+        public Set<String> getHosts()
+        {
+            return mHosts;
+        }
+    }
+
+
+    private final String mId;
+    private volatile Backend mBackend;
+    private final CachedDocument mConfiguration;
+    private final CachedDocument mJwks;
+    private final TransferStatistics mTransferStatistics;
+    private final TenantMetrics mMetrics;
+
+
+    Tenant(String id, Set<String> hosts, AuthleteApi api, String identity,
+            long configurationTtl, long jwksTtl)
+    {
+        mId                 = id;
+        mMetrics            = new TenantMetrics();
+        mBackend            = new Backend(MeteredAuthleteApi.wrap(api, mMetrics), identity, hosts);
+        mTransferStatistics = new TransferStatistics();
+        mConfiguration      = new CachedDocument(configurationTtl, mTransferStatistics);
+        mJwks               = new CachedDocument(jwksTtl, mTransferStatistics);
+    }
+
+
+    /**
+     * Get the ID of the tenant.
+     */
+    public String getId()
+    {
+        return mId;
+    }
+
+
+    /**
+     * Get the host names which are routed to the tenant.
+     */
+    public Set<String> getHosts()
+    {
+        return mBackend.getHosts();
+    }
+
+
+    /**
+     * Get the current API instance, identity and host names of the tenant
+     * as one consistent set.
+     */
+    public Backend getBackend()
+    {
+        return mBackend;
+    }
+
+
+    /**
+     * Get the API instance to communicate with the Authlete service
+     * of the tenant.
+     */
+    public AuthleteApi getApi()
+    {
+        return mBackend.getApi();
+    }
+
+
+    /**
+     * Get the identity of the Authlete service of the tenant, which is
+     * made of the base URL of the Authlete server and the API key of
+     * the service.
+     */
+    public String getIdentity()
+    {
+        return mBackend.getIdentity();
+    }
+
+
+    /**
+     * Replace the API instance and the host names of the tenant.
+     *
+     * <p>
+     * The caches are kept if only the credentials have changed (e.g. the
+     * API secret has been rotated). They are discarded if the tenant now
+     * refers to a different Authlete service.
+     * </p>
+     *
+     * @param api
+     *         The new API instance.
+     *
+     * @param identity
+     *         The identity of the Authlete service of the new API instance.
+     *
+     * @param hosts
+     *         The host names which are routed to the tenant.
+     */
+    void reconfigure(AuthleteApi api, String identity, Set<String> hosts)
+    {
+        boolean serviceChanged = mBackend.getIdentity().equals(identity) == false;
+
+        // One write, so that no request sees the new API instance with
+        // the old identity or vice versa.
+        mBackend = new Backend(MeteredAuthleteApi.wrap(api, mMetrics), identity, hosts);
+
+        if (serviceChanged)
+        {
+            // The documents of the previous service must not be served
+            // even if the new service cannot be reached.
+            mConfiguration.discard();
+            mJwks.discard();
+        }
+    }
+
+
+    /**
+     * Discard the cached documents of the tenant.
+     */
+    public void invalidateCaches()
+    {
+        mConfiguration.invalidate();
+        mJwks.invalidate();
+    }
+
+
+    /**
+     * Get the cached configuration information of the tenant, which is
+     * served at {@code /.well-known/openid-configuration}.
+     */
+    public CachedDocument getConfiguration()
+    {
+        return mConfiguration;
+    }
+
+
+    /**
+     * Get the cached JWK Set document of the tenant.
+     */
+    public CachedDocument getJwks()
+    {
+        return mJwks;
+    }
+
+
+    /**
+     * Get the statistics of the cached documents of the tenant.
+     */
+    public TransferStatistics getTransferStatistics()
+    {
+        return mTransferStatistics;
+    }
+
+
+    /**
+     * Get the metrics of the tenant.
+     */
+    public TenantMetrics getMetrics()
+    {
+        return mMetrics;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.tenant;
+
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import com.authlete.common.api.AuthleteApi;
+import com.authlete.common.conf.AuthleteConfiguration;
+import com.authlete.jakarta.api.AuthleteApiImpl;
+import com.authlete.jakarta.api.AuthleteApiImplV3;
+
+
+/**
+ * Creates the {@link AuthleteApi} instances of tenants.
+ *
+ * <p>
+ * All the instances send their requests through one JAX-RS client, so
+ * they share its connection pool, and replacing the instance of a tenant
+ * (e.g. after its API secret has been rotated, or after a new
+ * configuration has failed validation) leaves no client behind. The
+ * client is closed when the application stops.
+ * </p>
+ */
+@Component
+public class TenantApiFactory
+{
+    private final SharedClientBuilder mClientBuilder = new SharedClientBuilder();
+
+
+    /**
+     * Create an API instance for the configuration. Authlete API V3 is
+     * used if the configuration says so, as {@code AuthleteApiFactory}
+     * does.
+     */
+    public AuthleteApi create(AuthleteConfiguration configuration)
+    {
+        if ("V3".equalsIgnoreCase(configuration.getApiVersion()))
+        {
+            AuthleteApiImplV3 api = new AuthleteApiImplV3(configuration);
+            api.setJaxRsClientBuilder(mClientBuilder);
+
+            return api;
+        }
+
+        AuthleteApiImpl api = new AuthleteApiImpl(configuration);
+        api.setJaxRsClientBuilder(mClientBuilder);
+
+        return api;
+    }
+
+
+    @PreDestroy
+    public void close()
+    {
+        mClientBuilder.close();
+    }
+}
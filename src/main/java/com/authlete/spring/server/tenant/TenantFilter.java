@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.tenant;
+
+
+import java.io.IOException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+
+/**
+ * Filter which resolves the tenant of a request.
+ *
+ * <p>
+ * A request whose path starts with {@code authorization-server.tenants.path-prefix}
+ * (e.g. {@code /t/acme/api/token}) is routed to the tenant whose ID follows
+ * the prefix ({@code acme}), and is forwarded to the rest of the path
+ * ({@code /api/token}). Otherwise, the tenant is resolved by the host name
+ * of the request. Requests which match neither are served by the default
+ * tenant.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class TenantFilter extends OncePerRequestFilter
+{
+    private final TenantRegistry mRegistry;
+    private final String mPathPrefix;
+
+
+    public TenantFilter(
+            TenantRegistry registry,
+            @Value("${authorization-server.tenants.path-prefix:/t/}") String pathPrefix)
+    {
+        mRegistry   = registry;
+        mPathPrefix = pathPrefix.endsWith("/") ? pathPrefix : pathPrefix + "/";
+    }
+
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                    throws ServletException, IOException
+    {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+
+        if (path.startsWith(mPathPrefix))
+        {
+            forward(path, request, response);
+            return;
+        }
+
+        Tenant tenant = mRegistry.findByHost(request.getServerName());
+
+        bind(request, (tenant != null) ? tenant : mRegistry.getDefault());
+
+        chain.doFilter(request, response);
+    }
+
+
+    private void forward(String path, HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException
+    {
+        int start = mPathPrefix.length();
+        int slash = path.indexOf('/', start);
+        String id = (slash < 0) ? path.substring(start) : path.substring(start, slash);
+
+        Tenant tenant = mRegistry.findById(id);
+
+        if (tenant == null)
+        {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        bind(request, tenant);
+
+        String rest = (slash < 0) ? "/" : path.substring(slash);
+
+        request.getRequestDispatcher(rest).forward(request, response);
+    }
+
+
+    private static void bind(HttpServletRequest request, Tenant tenant)
+    {
+        request.setAttribute(TenantRegistry.REQUEST_ATTRIBUTE, tenant);
+        tenant.getMetrics().recordRequest();
+    }
+}
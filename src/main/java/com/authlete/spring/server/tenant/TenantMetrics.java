@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.tenant;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+
+/**
+ * Metrics of a tenant. Registered as an MBean per tenant by
+ * {@link TenantRegistry}.
+ */
+@ManagedResource
+public class TenantMetrics
+{
+    private final AtomicLong mRequests      = new AtomicLong();
+    private final AtomicLong mBackendCalls  = new AtomicLong();
+    private final AtomicLong mBackendErrors = new AtomicLong();
+
+
+    void recordRequest()
+    {
+        mRequests.incrementAndGet();
+    }
+
+
+    void recordBackendCall(boolean failed)
+    {
+        mBackendCalls.incrementAndGet();
+
+        if (failed)
+        {
+            mBackendErrors.incrementAndGet();
+        }
+    }
+
+
+    @ManagedAttribute(description = "The number of requests routed to the tenant.")
+    public long getRequests()
+    {
+        return mRequests.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of Authlete API calls made for the tenant.")
+    public long getBackendCalls()
+    {
+        return mBackendCalls.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of Authlete API calls which threw an exception.")
+    public long getBackendErrors()
+    {
+        return mBackendErrors.get();
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.tenant;
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.common.api.AuthleteApi;
+import com.authlete.common.conf.AuthleteConfiguration;
+import com.authlete.common.conf.AuthletePropertiesConfiguration;
+
+
+/**
+ * Registry of the tenants served by this server.
+ *
+ * <p>
+ * The default tenant is configured by {@code authlete.properties} (or the
+ * file specified by the system property {@code authlete.configuration.file}).
+ * Additional tenants are configured by the files {@code <i>{tenant-id}</i>.properties}
+ * in the directory specified by {@code authorization-server.tenants.directory}.
+ * The format of the files is the same as that of {@code authlete.properties}.
+ * In addition, {@code tenant.hosts} can list the host names (comma-separated)
+ * which are routed to the tenant.
+ * </p>
+ *
+ * <p>
+ * The files are checked every {@code authorization-server.tenants.scan-interval}
+ * seconds, or when the {@code reload} operation of the MBean is invoked.
+ * Tenants are added and removed as their files appear and disappear. When
+ * a file is modified (e.g. the API secret has been rotated), the new
+ * configuration is validated by calling Authlete with it and is then
+ * swapped into the tenant. An invalid configuration is ignored and the
+ * tenant keeps working with the previous one.
+ * </p>
+ *
+ * @see TenantFilter
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=TenantRegistry")
+public class TenantRegistry
+{
+    /**
+     * The name of the request attribute which holds the resolved tenant.
+     */
+    static final String REQUEST_ATTRIBUTE = Tenant.class.getName();
+
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TenantRegistry.class);
+    private static final String FILE_SUFFIX = ".properties";
+    private static final String HOSTS_KEY = "tenant.hosts";
+
+
+    private final long mConfigurationTtl;
+    private final long mJwksTtl;
+    private final long mScanInterval;
+    private final Path mDefaultFile;
+    private final Path mDirectory;
+    private final ObjectProvider<MBeanExporter> mExporter;
+    private final TenantApiFactory mApis;
+    private final Tenant mDefault;
+    private final Map<String, String> mFileStamps = new HashMap<String, String>();
+    private volatile Map<String, Tenant> mTenants = Collections.emptyMap();
+    private volatile Map<String, Tenant> mTenantsByHost = Collections.emptyMap();
+    private ScheduledExecutorService mScanner;
+
+
+    public TenantRegistry(
+            @Value("${authorization-server.cache.configuration-ttl:300}") long configurationTtl,
+            @Value("${authorization-server.cache.jwks-ttl:300}") long jwksTtl,
+            @Value("${authorization-server.tenants.directory:}") String directory,
+            @Value("${authorization-server.tenants.scan-interval:30}") long scanInterval,
+            ObjectProvider<MBeanExporter> exporter,
+            TenantApiFactory apis)
+    {
+        mConfigurationTtl = configurationTtl;
+        mJwksTtl          = jwksTtl;
+        mScanInterval     = scanInterval;
+        mDefaultFile      = Paths.get(System.getProperty(
+                "authlete.configuration.file", "authlete.properties"));
+        mDirectory        = directory.isEmpty() ? null : Paths.get(directory);
+        mExporter         = exporter;
+        mApis             = apis;
+
+        // The default configuration may be loaded from the class path,
+        // so it is not read from mDefaultFile here.
+        AuthleteConfiguration configuration = new AuthletePropertiesConfiguration();
+        mDefault = new Tenant(Tenant.DEFAULT_ID, Collections.emptySet(),
+                mApis.create(configuration), identityOf(configuration),
+                mConfigurationTtl, mJwksTtl);
+    }
+
+
+    @PostConstruct
+    public void start()
+    {
+        registerMBeans(mDefault);
+
+        // Remember the current state of the default file.
+        mFileStamps.put(Tenant.DEFAULT_ID, stampOf(mDefaultFile));
+
+        scan();
+
+        mScanner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tenant-scanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        mScanner.scheduleWithFixedDelay(this::scan, mScanInterval, mScanInterval, TimeUnit.SECONDS);
+    }
+
+
+    @PreDestroy
+    public void stop()
+    {
+        if (mScanner != null)
+        {
+            mScanner.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Get the tenant of the request. The default tenant is returned if
+     * {@link TenantFilter} has not resolved a tenant for the request.
+     */
+    public Tenant get(HttpServletRequest request)
+    {
+        Object tenant = request.getAttribute(REQUEST_ATTRIBUTE);
+
+        return (tenant != null) ? (Tenant)tenant : mDefault;
+    }
+
+
+    /**
+     * Get the default tenant.
+     */
+    public Tenant getDefault()
+    {
+        return mDefault;
+    }
+
+
+    /**
+     * Find a tenant by its ID.
+     *
+     * @return
+     *         The tenant, or {@code null} if there is no such tenant.
+     */
+    public Tenant findById(String id)
+    {
+        return mTenants.get(id);
+    }
+
+
+    /**
+     * Find a tenant by a host name.
+     *
+     * @return
+     *         The tenant, or {@code null} if no tenant is bound to the host.
+     */
+    public Tenant findByHost(String host)
+    {
+        if (host == null || mTenantsByHost.isEmpty())
+        {
+            return null;
+        }
+
+        return mTenantsByHost.get(host.toLowerCase(Locale.ROOT));
+    }
+
+
+    /**
+     * Get all the tenants.
+     */
+    public Collection<Tenant> getTenants()
+    {
+        return mTenants.values();
+    }
+
+
+    /**
+     * Check the configuration files now.
+     */
+    @ManagedOperation(description = "Reload the configuration files of the tenants.")
+    public void reload()
+    {
+        scan();
+    }
+
+
+    /**
+     * Check the configuration files and add, reconfigure or remove tenants.
+     */
+    synchronized void scan()
+    {
+        Map<String, Tenant> current = mTenants;
+        Map<String, Tenant> tenants = new HashMap<String, Tenant>();
+
+        // The default tenant is never removed, but its file may be modified.
+        reloadIfModified(mDefault, mDefaultFile);
+        tenants.put(Tenant.DEFAULT_ID, mDefault);
+
+        for (Map.Entry<String, Path> entry : listTenantFiles().entrySet())
+        {
+            String id     = entry.getKey();
+            Path file     = entry.getValue();
+            Tenant tenant = current.get(id);
+
+            if (tenant == null)
+            {
+                tenant = loadTenant(id, file);
+            }
+            else
+            {
+                reloadIfModified(tenant, file);
+            }
+
+            if (tenant != null)
+            {
+                tenants.put(id, tenant);
+            }
+        }
+
+        publish(tenants);
+
+        // Unregister the tenants whose files have been removed.
+        for (Tenant tenant : current.values())
+        {
+            if (tenants.get(tenant.getId()) != tenant)
+            {
+                LOGGER.info("Removed tenant '{}'.", tenant.getId());
+                mFileStamps.remove(tenant.getId());
+                unregisterMBeans(tenant);
+            }
+        }
+    }
+
+
+    private void publish(Map<String, Tenant> tenants)
+    {
+        Map<String, Tenant> byHost = new HashMap<String, Tenant>();
+
+        for (Tenant tenant : tenants.values())
+        {
+            for (String host : tenant.getHosts())
+            {
+                byHost.put(host, tenant);
+            }
+        }
+
+        mTenantsByHost = byHost;
+        mTenants       = tenants;
+    }
+
+
+    private Map<String, Path> listTenantFiles()
+    {
+        Map<String, Path> files = new LinkedHashMap<String, Path>();
+
+        if (mDirectory == null || Files.isDirectory(mDirectory) == false)
+        {
+            return files;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(mDirectory, "*" + FILE_SUFFIX))
+        {
+            for (Path file : stream)
+            {
+                String id = tenantIdOf(file);
+
+                if (Tenant.DEFAULT_ID.equals(id))
+                {
+                    LOGGER.warn("'{}' is ignored because '{}' is reserved.", file, id);
+                    continue;
+                }
+
+                files.put(id, file);
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to list tenant files in '{}': {}", mDirectory, e.getMessage());
+        }
+
+        return files;
+    }
+
+
+    private Tenant loadTenant(String id, Path file)
+    {
+        mFileStamps.put(id, stampOf(file));
+
+        try
+        {
+            AuthleteConfiguration configuration = loadConfiguration(file);
+
+            Tenant tenant = new Tenant(id, readHosts(file),
+                    mApis.create(configuration), identityOf(configuration),
+                    mConfigurationTtl, mJwksTtl);
+
+            registerMBeans(tenant);
+            LOGGER.info("Added tenant '{}'.", id);
+
+            return tenant;
+        }
+        catch (Exception e)
+        {
+            LOGGER.warn("Failed to load tenant '{}' from '{}': {}", id, file, e.getMessage());
+            return null;
+        }
+    }
+
+
+    private void reloadIfModified(Tenant tenant, Path file)
+    {
+        String stamp = stampOf(file);
+
+        if (stamp == null || stamp.equals(mFileStamps.get(tenant.getId())))
+        {
+            // Not modified, or the file is not on the file system.
+            return;
+        }
+
+        // Remember the stamp even if the new configuration turns out to
+        // be invalid. It is retried when the file is modified again.
+        mFileStamps.put(tenant.getId(), stamp);
+
+        try
+        {
+            AuthleteConfiguration configuration = loadConfiguration(file);
+            AuthleteApi api = mApis.create(configuration);
+
+            // Make sure that Authlete accepts the new credentials before
+            // using them for real requests.
+            api.getServiceConfiguration();
+
+            tenant.reconfigure(api, identityOf(configuration),
+                    Tenant.DEFAULT_ID.equals(tenant.getId()) ? tenant.getHosts() : readHosts(file));
+
+            LOGGER.info("Reloaded the configuration of tenant '{}'.", tenant.getId());
+        }
+        catch (Exception e)
+        {
+            LOGGER.warn("Ignored the new configuration of tenant '{}' in '{}': {}",
+                    tenant.getId(), file, e.getMessage());
+        }
+    }
+
+
+    private static AuthleteConfiguration loadConfiguration(Path file)
+    {
+        AuthleteConfiguration configuration = new AuthletePropertiesConfiguration(file.toString());
+
+        if (isEmpty(configuration.getBaseUrl()) || isEmpty(configuration.getServiceApiKey()))
+        {
+            throw new IllegalArgumentException("base_url and service.api_key are mandatory.");
+        }
+
+        return configuration;
+    }
+
+
+    private static boolean isEmpty(String value)
+    {
+        return value == null || value.isBlank();
+    }
+
+
+    private static String identityOf(AuthleteConfiguration configuration)
+    {
+        return configuration.getBaseUrl() + "#" + configuration.getServiceApiKey();
+    }
+
+
+    /**
+     * Get a string which changes when the file is modified. {@code null}
+     * if the file does not exist on the file system.
+     */
+    private static String stampOf(Path file)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(file).toMillis() + ":" + Files.size(file);
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+
+    private static Set<String> readHosts(Path file) throws IOException
+    {
+        Properties properties = new Properties();
+
+        try (Reader reader = Files.newBufferedReader(file))
+        {
+            properties.load(reader);
+        }
+
+        Set<String> hosts = new LinkedHashSet<String>();
+        String value      = properties.getProperty(HOSTS_KEY, "");
+
+        for (String host : value.split(","))
+        {
+            if (host.isBlank() == false)
+            {
+                hosts.add(host.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        return hosts;
+    }
+
+
+    private static String tenantIdOf(Path file)
+    {
+        String name = file.getFileName().toString();
+
+        return name.substring(0, name.length() - FILE_SUFFIX.length());
+    }
+
+
+    private void registerMBeans(Tenant tenant)
+    {
+        MBeanExporter exporter = mExporter.getIfAvailable();
+
+        if (exporter == null)
+        {
+            return;
+        }
+
+        exporter.registerManagedResource(tenant.getMetrics(), objectName("Tenant", tenant));
+        exporter.registerManagedResource(tenant.getTransferStatistics(), objectName("TransferStatistics", tenant));
+    }
+
+
+    private void unregisterMBeans(Tenant tenant)
+    {
+        MBeanExporter exporter = mExporter.getIfAvailable();
+
+        if (exporter == null)
+        {
+            return;
+        }
+
+        exporter.unregisterManagedResource(objectName("Tenant", tenant));
+        exporter.unregisterManagedResource(objectName("TransferStatistics", tenant));
+    }
+
+
+    private static ObjectName objectName(String type, Tenant tenant)
+    {
+        try
+        {
+            return new ObjectName(String.format("com.authlete.spring.server:type=%s,tenant=%s",
+                    type, ObjectName.quote(tenant.getId())));
+        }
+        catch (MalformedObjectNameException e)
+        {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.token;
+
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.core.MultivaluedMap;
+import com.authlete.common.web.BasicCredentials;
+
+
+/**
+ * The client credentials presented in a token request.
+ *
+ * <p>
+ * This server does not authenticate clients by itself; Authlete does.
+ * Caches in this package therefore derive their keys from the presented
+ * credentials, so that a cached result is returned only to a request
+ * which presents the same credentials as the request that Authlete
+ * accepted.
+ * </p>
+ */
+class ClientAuthentication
+{
+    private final String mClientId;
+    private final String mSecret;
+    private final boolean mOther;
+
+
+    private ClientAuthentication(String clientId, String secret, boolean other)
+    {
+        mClientId = clientId;
+        mSecret   = secret;
+        mOther    = other;
+    }
+
+
+    /**
+     * Extract the client credentials from a token request.
+     *
+     * @param authorization
+     *         The value of the {@code Authorization} header. May be {@code null}.
+     *
+     * @param parameters
+     *         The request parameters.
+     *
+     * @param request
+     *         The request, used to detect TLS client certificates.
+     */
+    static ClientAuthentication of(
+            String authorization, MultivaluedMap<String, String> parameters, HttpServletRequest request)
+    {
+        // Client authentication methods whose credentials change for
+        // every request, or are not visible as a string.
+        boolean other = parameters.containsKey("client_assertion")
+                || request.getAttribute("jakarta.servlet.request.X509Certificate") != null;
+
+        BasicCredentials basic = BasicCredentials.parse(authorization);
+
+        if (basic != null)
+        {
+            return new ClientAuthentication(basic.getUserId(), basic.getPassword(), other);
+        }
+
+        return new ClientAuthentication(
+                parameters.getFirst("client_id"), parameters.getFirst("client_secret"), other);
+    }
+
+
+    /**
+     * Get the client ID. {@code null} if the request does not contain it.
+     */
+    String getClientId()
+    {
+        return mClientId;
+    }
+
+
+    /**
+     * Check if the credentials can be used as a part of a cache key,
+     * i.e. the client is a public client or has presented a client secret.
+     */
+    boolean isKeyable()
+    {
+        return mClientId != null && mOther == false;
+    }
+
+
+    /**
+     * Compute a cache key from the credentials and the given values.
+     */
+    String keyOf(String... values)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            update(digest, mClientId);
+            update(digest, mSecret);
+
+            for (String value : values)
+            {
+                update(digest, value);
+            }
+
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // SHA-256 is always available.
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static void update(MessageDigest digest, String value)
+    {
+        if (value != null)
+        {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Separator, so that ("ab", "c") and ("a", "bc") differ.
+        digest.update((byte)0);
+    }
+}
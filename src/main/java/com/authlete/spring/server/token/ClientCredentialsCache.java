@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.token;
+
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.spring.server.json.JsonMappers;
+import com.authlete.spring.server.tenant.Tenant;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+
+/**
+ * Cache of access tokens issued by the client credentials flow.
+ *
+ * <p>
+ * A machine client often requests a new token although the one it got a
+ * moment ago is still valid. For the clients listed in {@code
+ * authorization-server.token.client-credentials-reuse.clients}, this cache
+ * returns the previously issued token to a client credentials request
+ * which is identical to the one that obtained the token (same tenant,
+ * client credentials, scopes and resources), as long as the token remains
+ * valid for at least the configured number of seconds. {@code expires_in}
+ * of the returned response is the remaining lifetime.
+ * </p>
+ *
+ * <p>
+ * The list has the form {@code client-id[=seconds],...}. {@code seconds}
+ * overrides {@code authorization-server.token.client-credentials-reuse.min-remaining}
+ * for the client.
+ * </p>
+ *
+ * <p>
+ * Only clients which authenticate with a client secret are eligible,
+ * because the cache key includes the secret. Requests with {@code
+ * authorization_details} or a {@code DPoP} header are never served from
+ * the cache. An access token revoked at the revocation endpoint of this
+ * server is evicted by {@link #evict(String)}. Revoking a refresh token
+ * issued with it revokes the access token at Authlete but does not evict
+ * it, because the cache does not know the refresh token; it is handed out
+ * until its remaining lifetime falls below the minimum.
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=ClientCredentialsCache")
+public class ClientCredentialsCache
+{
+    private static final ObjectMapper MAPPER = JsonMappers.shared();
+
+
+    private static class Entry
+    {
+        final TokenResponseSnapshot snapshot;
+        final ObjectNode body;
+        final String accessToken;
+        final String digest;
+        final long expiresAt;
+
+
+        Entry(TokenResponseSnapshot snapshot, ObjectNode body, long expiresAt)
+        {
+            this.snapshot    = snapshot;
+            this.body        = body;
+            this.accessToken = body.path("access_token").asText();
+            this.digest      = TokenDigest.of(accessToken);
+            this.expiresAt   = expiresAt;
+        }
+    }
+
+
+    private final Map<String, Long> mPolicies;
+    private final int mMaxEntries;
+    private final RevocationFilter mRevocations;
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong mHits   = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+
+    public ClientCredentialsCache(
+            @Value("${authorization-server.token.client-credentials-reuse.clients:}") String clients,
+            @Value("${authorization-server.token.client-credentials-reuse.min-remaining:300}") long minRemaining,
+            @Value("${authorization-server.token.client-credentials-reuse.max-entries:10000}") int maxEntries,
+            RevocationFilter revocations)
+    {
+        mPolicies    = parsePolicies(clients, minRemaining);
+        mMaxEntries  = maxEntries;
+        mRevocations = revocations;
+    }
+
+
+    private static Map<String, Long> parsePolicies(String clients, long minRemaining)
+    {
+        Map<String, Long> policies = new HashMap<String, Long>();
+
+        for (String entry : clients.split(","))
+        {
+            if (entry.isBlank())
+            {
+                continue;
+            }
+
+            String[] pair = entry.trim().split("=", 2);
+            long seconds  = (pair.length == 2) ? Long.parseLong(pair[1].trim()) : minRemaining;
+
+            policies.put(pair[0].trim(), TimeUnit.SECONDS.toMillis(seconds));
+        }
+
+        return policies;
+    }
+
+
+    /**
+     * Handle a token request. If the request is an eligible client
+     * credentials request and a token issued for an identical request is
+     * still fresh enough, a response carrying the token is returned.
+     * Otherwise, the issuer is called and its result is cached if it is
+     * a successful response.
+     *
+     * @param tenant
+     *         The tenant which the request has been routed to.
+     *
+     * @param backend
+     *         The backend of the tenant which the issuer uses. Its identity
+     *         is part of the cache key.
+     *
+     * @param parameters
+     *         The request parameters.
+     *
+     * @param authorization
+     *         The value of the {@code Authorization} header.
+     *
+     * @param request
+     *         The request.
+     *
+     * @param issuer
+     *         The function which handles the request with Authlete.
+     */
+    public Response handle(
+            Tenant tenant, Tenant.Backend backend, MultivaluedMap<String, String> parameters,
+            String authorization, HttpServletRequest request, Supplier<Response> issuer)
+    {
+        ClientAuthentication client = ClientAuthentication.of(authorization, parameters, request);
+        String key = keyOf(tenant, backend, parameters, client, request);
+
+        if (key == null)
+        {
+            return issuer.get();
+        }
+
+        long now  = System.currentTimeMillis();
+        Entry hit = mEntries.get(key);
+
+        if (hit != null && mRevocations.mightBeRevoked(hit.digest))
+        {
+            // The token may have been revoked after it was cached.
+            mEntries.remove(key, hit);
+            hit = null;
+        }
+
+        if (hit != null && hit.expiresAt - now >= mPolicies.get(client.getClientId()))
+        {
+            mHits.incrementAndGet();
+            return toResponse(hit, now);
+        }
+
+        mMisses.incrementAndGet();
+
+        Response response = issuer.get();
+
+        if (response.getStatus() == 200)
+        {
+            store(key, response, now);
+        }
+
+        return response;
+    }
+
+
+    /**
+     * Remove the entries of the access token.
+     */
+    public void evict(String accessToken)
+    {
+        if (accessToken != null)
+        {
+            mEntries.values().removeIf(entry -> entry.accessToken.equals(accessToken));
+        }
+    }
+
+
+    /**
+     * Remove the entries of the access token whose digest (see {@link
+     * TokenDigest}) is given. Used for revocations on other nodes.
+     */
+    public void evictDigest(String digest)
+    {
+        mEntries.values().removeIf(entry -> entry.digest.equals(digest));
+    }
+
+
+    /**
+     * Remove all the entries.
+     */
+    public void clear()
+    {
+        mEntries.clear();
+    }
+
+
+    private String keyOf(
+            Tenant tenant, Tenant.Backend backend, MultivaluedMap<String, String> parameters, ClientAuthentication client,
+            HttpServletRequest request)
+    {
+        if (mPolicies.isEmpty()
+                || "client_credentials".equals(parameters.getFirst("grant_type")) == false
+                || parameters.containsKey("authorization_details")
+                || request.getHeader("DPoP") != null)
+        {
+            return null;
+        }
+
+        // Only clients which have opted in and authenticate with a secret.
+        if (client.isKeyable() == false || mPolicies.containsKey(client.getClientId()) == false)
+        {
+            return null;
+        }
+
+        return client.keyOf(tenant.getId(), backend.getIdentity(),
+                normalize(parameters.getFirst("scope")), normalize(parameters.get("resource")));
+    }
+
+
+    private static String normalize(String scope)
+    {
+        if (scope == null)
+        {
+            return null;
+        }
+
+        String[] scopes = scope.trim().split(" +");
+        Arrays.sort(scopes);
+
+        return String.join(" ", scopes);
+    }
+
+
+    private static String normalize(List<String> values)
+    {
+        if (values == null)
+        {
+            return null;
+        }
+
+        String[] sorted = values.toArray(new String[0]);
+        Arrays.sort(sorted);
+
+        return String.join(" ", sorted);
+    }
+
+
+    private void store(String key, Response response, long now)
+    {
+        TokenResponseSnapshot snapshot = TokenResponseSnapshot.of(response);
+
+        if (snapshot == null || snapshot.getEntity() == null)
+        {
+            return;
+        }
+
+        try
+        {
+            JsonNode body = MAPPER.readTree(snapshot.getEntity());
+
+            if (body instanceof ObjectNode == false || body.path("expires_in").canConvertToLong() == false)
+            {
+                return;
+            }
+
+            long expiresAt = now + TimeUnit.SECONDS.toMillis(body.get("expires_in").asLong());
+
+            if (mEntries.size() >= mMaxEntries)
+            {
+                removeExpired(now);
+
+                if (mEntries.size() >= mMaxEntries)
+                {
+                    return;
+                }
+            }
+
+            mEntries.put(key, new Entry(snapshot, (ObjectNode)body, expiresAt));
+        }
+        catch (Exception e)
+        {
+            // Not JSON. Not cached.
+        }
+    }
+
+
+    private void removeExpired(long now)
+    {
+        Iterator<Entry> it = mEntries.values().iterator();
+
+        while (it.hasNext())
+        {
+            if (it.next().expiresAt <= now)
+            {
+                it.remove();
+            }
+        }
+    }
+
+
+    private static Response toResponse(Entry entry, long now)
+    {
+        ObjectNode body = entry.body.deepCopy();
+        body.put("expires_in", TimeUnit.MILLISECONDS.toSeconds(entry.expiresAt - now));
+
+        try
+        {
+            return entry.snapshot.toResponse(MAPPER.writeValueAsString(body));
+        }
+        catch (Exception e)
+        {
+            // Cannot happen.
+            return entry.snapshot.toResponse();
+        }
+    }
+
+
+    @ManagedAttribute(description = "The number of cached client credentials tokens.")
+    public int getEntries()
+    {
+        return mEntries.size();
+    }
+
+
+    @ManagedAttribute(description = "The number of client credentials requests served from the cache.")
+    public long getHits()
+    {
+        return mHits.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of eligible client credentials requests passed to Authlete.")
+    public long getMisses()
+    {
+        return mMisses.get();
+    }
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.token;
+
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.core.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.jakarta.ResponseUtil;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+
+/**
+ * Local checks of DPoP proofs (RFC 9449) presented to the token endpoint.
+ *
+ * <p>
+ * The structure of a proof, its {@code htm}, {@code htu} and {@code iat}
+ * claims and its signature by the embedded public key are checked, and
+ * the {@code jti} is recorded per key so that a proof is not used twice
+ * within the {@code iat} window. Requests with malformed or replayed
+ * proofs are rejected without calling Authlete; the others are passed to
+ * Authlete with the proof, which binds the issued token to the key.
+ * </p>
+ *
+ * <p>
+ * Clients usually keep one key, so the verifier made from a proof header
+ * is cached and the key is not parsed again for the client's next proof.
+ * Only keys which have verified a proof are cached, and the least recently
+ * used one is dropped when the cache is full, so forged proofs cannot push
+ * out the keys of real clients. Keys of types other than RSA and EC are
+ * left to Authlete.
+ * </p>
+ *
+ * <p>
+ * {@code htu} is compared with the URL clients use. Behind a reverse
+ * proxy which terminates TLS, set {@code authorization-server.dpop.external-url}
+ * or let the proxy send {@code X-Forwarded-*} headers (see
+ * {@code server.forward-headers-strategy}).
+ * </p>
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc9449.html"
+ *      >RFC 9449, OAuth 2.0 Demonstrating Proof of Possession (DPoP)</a>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=DPoPProofVerifier")
+public class DPoPProofVerifier
+{
+    private static final JOSEObjectType TYPE = new JOSEObjectType("dpop+jwt");
+
+
+    /**
+     * What is cached for a proof header.
+     */
+    private static class Key
+    {
+        final JWSVerifier verifier;
+        final String thumbprint;
+
+
+        Key(JWSVerifier verifier, String thumbprint)
+        {
+            this.verifier   = verifier;
+            this.thumbprint = thumbprint;
+        }
+    }
+
+
+    private final boolean mEnabled;
+    private final long mWindowMillis;
+    private final long mSkewMillis;
+    private final boolean mCheckHtu;
+    private final String mExternalUrl;
+    private final ReplayCache mReplays;
+    private final Map<String, Key> mKeys;
+    private final AtomicLong mVerified   = new AtomicLong();
+    private final AtomicLong mRejected   = new AtomicLong();
+    private final AtomicLong mReplayed   = new AtomicLong();
+    private final AtomicLong mKeyHits    = new AtomicLong();
+
+
+    public DPoPProofVerifier(
+            @Value("${authorization-server.dpop.enabled:true}") boolean enabled,
+            @Value("${authorization-server.dpop.iat-window:60}") long window,
+            @Value("${authorization-server.dpop.clock-skew:5}") long skew,
+            @Value("${authorization-server.dpop.check-htu:true}") boolean checkHtu,
+            @Value("${authorization-server.dpop.external-url:}") String externalUrl,
+            @Value("${authorization-server.dpop.max-keys:10000}") int maxKeys,
+            @Value("${authorization-server.dpop.jti-shards:16}") int shards,
+            @Value("${authorization-server.dpop.jti-max-entries:100000}") int maxEntries)
+    {
+        mEnabled      = enabled;
+        mWindowMillis = TimeUnit.SECONDS.toMillis(window);
+        mSkewMillis   = TimeUnit.SECONDS.toMillis(skew);
+        mCheckHtu     = checkHtu;
+        mExternalUrl  = trimTrailingSlash(externalUrl);
+        mReplays      = new ReplayCache(shards, maxEntries);
+
+        // Access-ordered so that the least recently used key is dropped.
+        mKeys = new LinkedHashMap<String, Key>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Key> eldest)
+            {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+
+    private static String trimTrailingSlash(String url)
+    {
+        if (url == null || url.isBlank())
+        {
+            return null;
+        }
+
+        url = url.trim();
+
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+
+    /**
+     * Check the DPoP proof of a token request.
+     *
+     * @return
+     *         An error response if the proof must be rejected. {@code null}
+     *         if the request has no proof or the proof has passed the
+     *         checks.
+     */
+    public Response verify(HttpServletRequest request)
+    {
+        if (mEnabled == false)
+        {
+            return null;
+        }
+
+        Enumeration<String> headers = request.getHeaders("DPoP");
+
+        if (headers == null || headers.hasMoreElements() == false)
+        {
+            return null;
+        }
+
+        String proof = headers.nextElement();
+
+        if (headers.hasMoreElements())
+        {
+            return reject("More than one DPoP header is given.");
+        }
+
+        String error = check(proof, request.getMethod(), urlOf(request));
+
+        if (error != null)
+        {
+            return reject(error);
+        }
+
+        mVerified.incrementAndGet();
+
+        return null;
+    }
+
+
+    /**
+     * @return
+     *         The description of the problem, or {@code null} if the proof
+     *         is fine.
+     */
+    private String check(String proof, String method, String uri)
+    {
+        SignedJWT jwt;
+        JWTClaimsSet claims;
+
+        try
+        {
+            jwt    = SignedJWT.parse(proof);
+            claims = jwt.getJWTClaimsSet();
+        }
+        catch (ParseException e)
+        {
+            return "The DPoP proof is not a signed JWT.";
+        }
+
+        JWSHeader header = jwt.getHeader();
+
+        if (TYPE.equals(header.getType()) == false)
+        {
+            return "The typ of the DPoP proof is not dpop+jwt.";
+        }
+
+        if (JWSAlgorithm.Family.SIGNATURE.contains(header.getAlgorithm()) == false)
+        {
+            return "The alg of the DPoP proof is not an asymmetric signature algorithm.";
+        }
+
+        JWK jwk = header.getJWK();
+
+        if (jwk == null || jwk.isPrivate())
+        {
+            return "The DPoP proof does not contain a public key.";
+        }
+
+        String jti;
+        String htm;
+        String htu;
+
+        try
+        {
+            jti = claims.getJWTID();
+            htm = claims.getStringClaim("htm");
+            htu = claims.getStringClaim("htu");
+        }
+        catch (ParseException e)
+        {
+            return "The claims of the DPoP proof are malformed.";
+        }
+
+        Date iat = claims.getIssueTime();
+
+        if (jti == null || htm == null || htu == null || iat == null)
+        {
+            return "The DPoP proof lacks jti, htm, htu or iat.";
+        }
+
+        if (method.equals(htm) == false)
+        {
+            return "The htm of the DPoP proof does not match the request.";
+        }
+
+        if (mCheckHtu && normalize(uri).equals(normalize(htu)) == false)
+        {
+            return "The htu of the DPoP proof does not match the request.";
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (iat.getTime() < now - mWindowMillis || now + mSkewMillis < iat.getTime())
+        {
+            return "The iat of the DPoP proof is out of the acceptable range.";
+        }
+
+        // The encoded header identifies the key and the algorithm.
+        String id      = header.getParsedBase64URL().toString();
+        Key key        = cachedKeyOf(id);
+        boolean cached = (key != null);
+
+        if (cached == false)
+        {
+            key = keyOf(header, jwk);
+        }
+
+        if (key == null)
+        {
+            // A key type this class does not handle. Left to Authlete.
+            return null;
+        }
+
+        try
+        {
+            if (jwt.verify(key.verifier) == false)
+            {
+                return "The signature of the DPoP proof is invalid.";
+            }
+        }
+        catch (JOSEException e)
+        {
+            return "The signature of the DPoP proof cannot be verified.";
+        }
+
+        if (cached == false)
+        {
+            // Cached only now, so that forged proofs cannot fill the cache.
+            synchronized (mKeys)
+            {
+                mKeys.put(id, key);
+            }
+        }
+
+        // Checked after the signature so that forged proofs cannot fill
+        // the cache. Proofs are unique per key.
+        if (mReplays.firstUse(key.thumbprint + ':' + jti, iat.getTime() + mWindowMillis, now) == false)
+        {
+            mReplayed.incrementAndGet();
+            return "The DPoP proof has been used already.";
+        }
+
+        return null;
+    }
+
+
+    private Key cachedKeyOf(String id)
+    {
+        Key key;
+
+        synchronized (mKeys)
+        {
+            key = mKeys.get(id);
+        }
+
+        if (key != null)
+        {
+            mKeyHits.incrementAndGet();
+        }
+
+        return key;
+    }
+
+
+    private static Key keyOf(JWSHeader header, JWK jwk)
+    {
+        try
+        {
+            JWSVerifier verifier;
+
+            if (jwk instanceof RSAKey)
+            {
+                verifier = new RSASSAVerifier((RSAKey)jwk);
+            }
+            else if (jwk instanceof ECKey)
+            {
+                verifier = new ECDSAVerifier((ECKey)jwk);
+            }
+            else
+            {
+                return null;
+            }
+
+            if (verifier.supportedJWSAlgorithms().contains(header.getAlgorithm()) == false)
+            {
+                // Verification fails with the algorithm.
+                return null;
+            }
+
+            return new Key(verifier, jwk.computeThumbprint().toString());
+        }
+        catch (JOSEException e)
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * Get the URL which the client sent the request to, with the external
+     * URL of this server if it is configured.
+     */
+    private String urlOf(HttpServletRequest request)
+    {
+        if (mExternalUrl == null)
+        {
+            return requestUrlOf(request);
+        }
+
+        String original = (String)request.getAttribute(RequestDispatcher.FORWARD_REQUEST_URI);
+
+        return mExternalUrl + ((original != null) ? original : request.getRequestURI());
+    }
+
+
+    /**
+     * Get the URL which the client sent the request to. Requests to a
+     * path-prefix tenant ({@code /t/{id}/api/token}) have been forwarded by
+     * {@code TenantFilter}, and the forwarded request lacks the prefix.
+     */
+    private static String requestUrlOf(HttpServletRequest request)
+    {
+        String original = (String)request.getAttribute(RequestDispatcher.FORWARD_REQUEST_URI);
+
+        if (original == null)
+        {
+            return request.getRequestURL().toString();
+        }
+
+        StringBuilder url = new StringBuilder()
+                .append(request.getScheme()).append("://").append(request.getServerName());
+
+        int port = request.getServerPort();
+
+        if (port > 0 && (("http".equalsIgnoreCase(request.getScheme()) && port != 80)
+                || ("https".equalsIgnoreCase(request.getScheme()) && port != 443)))
+        {
+            url.append(':').append(port);
+        }
+
+        return url.append(original).toString();
+    }
+
+
+    private static String normalize(String uri)
+    {
+        try
+        {
+            // "htu" is compared without the query and the fragment.
+            URI parsed = new URI(uri);
+
+            return parsed.getScheme().toLowerCase(Locale.ROOT) + "://"
+                    + parsed.getRawAuthority().toLowerCase(Locale.ROOT)
+                    + ((parsed.getRawPath() != null) ? parsed.getRawPath() : "");
+        }
+        catch (URISyntaxException | NullPointerException e)
+        {
+            return uri;
+        }
+    }
+
+
+    private Response reject(String description)
+    {
+        mRejected.incrementAndGet();
+
+        return ResponseUtil.badRequest(String.format(
+                "{\"error\":\"invalid_dpop_proof\",\"error_description\":\"%s\"}", description));
+    }
+
+
+    @ManagedAttribute(description = "True if DPoP proofs are checked locally.")
+    public boolean isEnabled()
+    {
+        return mEnabled;
+    }
+
+
+    @ManagedAttribute(description = "The number of DPoP proofs which have passed the checks.")
+    public long getVerified()
+    {
+        return mVerified.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of requests rejected for their DPoP proofs.")
+    public long getRejected()
+    {
+        return mRejected.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of DPoP proofs rejected as replays.")
+    public long getReplayed()
+    {
+        return mReplayed.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of times a cached key was used.")
+    public long getKeyHits()
+    {
+        return mKeyHits.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of cached keys.")
+    public int getKeys()
+    {
+        synchronized (mKeys)
+        {
+            return mKeys.size();
+        }
+    }
+
+
+    @ManagedAttribute(description = "The number of jti values remembered.")
+    public int getJtiEntries()
+    {
+        return mReplays.size();
+    }
+
+
+    @ManagedAttribute(description = "The number of jti values dropped before their expiry because the cache was full.")
+    public long getJtiEvictions()
+    {
+        return mReplays.getEvictions();
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.token;
+
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.spring.server.tenant.Tenant;
+
+
+/**
+ * Deduplication of concurrent refresh token requests.
+ *
+ * <p>
+ * When an app resumes, it often sends several token requests with the same
+ * refresh token at once. If refresh tokens are rotated, only the first one
+ * succeeds and the others fail with {@code invalid_grant}, which typically
+ * makes the app retry or log the user out. This class forwards only one of
+ * such requests to Authlete and gives its result to all of them. A request
+ * which arrives within {@code authorization-server.token.refresh-dedup.grace-period}
+ * seconds after the result has been obtained receives the same result, too.
+ * </p>
+ *
+ * <p>
+ * Requests are identical when they have the same tenant, client
+ * credentials, refresh token and scope. Requests with a client assertion,
+ * a TLS client certificate or a {@code DPoP} header are never deduplicated,
+ * because their proofs need to be verified one by one.
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=RefreshTokenDeduplicator")
+public class RefreshTokenDeduplicator
+{
+    /**
+     * A request forwarded to Authlete, and its result.
+     */
+    private static class Flight
+    {
+        final CompletableFuture<TokenResponseSnapshot> result = new CompletableFuture<TokenResponseSnapshot>();
+        volatile long completedAt;
+
+
+        boolean isJoinable(long now, long graceMillis)
+        {
+            long completed = completedAt;
+
+            if (completed == 0)
+            {
+                // Still in flight.
+                return true;
+            }
+
+            // Only a result which can be shared.
+            return now - completed <= graceMillis
+                    && result.isCompletedExceptionally() == false
+                    && result.getNow(null) != null;
+        }
+    }
+
+
+    private final boolean mEnabled;
+    private final long mGraceMillis;
+    private final long mWaitMillis;
+    private final Map<String, Flight> mFlights = new ConcurrentHashMap<String, Flight>();
+    private final AtomicLong mForwarded    = new AtomicLong();
+    private final AtomicLong mDeduplicated = new AtomicLong();
+    private ScheduledExecutorService mSweeper;
+
+
+    public RefreshTokenDeduplicator(
+            @Value("${authorization-server.token.refresh-dedup.enabled:true}") boolean enabled,
+            @Value("${authorization-server.token.refresh-dedup.grace-period:5}") long gracePeriod,
+            @Value("${authorization-server.token.refresh-dedup.wait-timeout:30}") long waitTimeout)
+    {
+        mEnabled     = enabled;
+        mGraceMillis = TimeUnit.SECONDS.toMillis(gracePeriod);
+        mWaitMillis  = TimeUnit.SECONDS.toMillis(waitTimeout);
+    }
+
+
+    @PostConstruct
+    public void start()
+    {
+        if (mEnabled == false)
+        {
+            return;
+        }
+
+        mSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refresh-dedup-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        mSweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.SECONDS);
+    }
+
+
+    @PreDestroy
+    public void stop()
+    {
+        if (mSweeper != null)
+        {
+            mSweeper.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Handle a token request. If the request is a refresh token request
+     * identical to one in flight (or one completed within the grace
+     * period), the result of that request is returned. Otherwise, the
+     * issuer is called.
+     *
+     * @param tenant
+     *         The tenant which the request has been routed to.
+     *
+     * @param backend
+     *         The backend of the tenant which the issuer uses. Its identity
+     *         is part of the cache key.
+     *
+     * @param parameters
+     *         The request parameters.
+     *
+     * @param authorization
+     *         The value of the {@code Authorization} header.
+     *
+     * @param request
+     *         The request.
+     *
+     * @param issuer
+     *         The function which handles the request with Authlete.
+     */
+    public Response handle(
+            Tenant tenant, Tenant.Backend backend, MultivaluedMap<String, String> parameters,
+            String authorization, HttpServletRequest request, Supplier<Response> issuer)
+    {
+        String key = keyOf(tenant, backend, parameters, authorization, request);
+
+        if (key == null)
+        {
+            return issuer.get();
+        }
+
+        long now = System.currentTimeMillis();
+        Flight created = new Flight();
+
+        Flight flight = mFlights.compute(key,
+                (k, current) -> (current != null && current.isJoinable(now, mGraceMillis)) ? current : created);
+
+        if (flight == created)
+        {
+            return lead(key, flight, issuer);
+        }
+
+        Response response = follow(flight);
+
+        // null if the result could not be shared.
+        return (response != null) ? response : issuer.get();
+    }
+
+
+    private Response lead(String key, Flight flight, Supplier<Response> issuer)
+    {
+        mForwarded.incrementAndGet();
+
+        try
+        {
+            Response response = issuer.get();
+
+            // null if the response cannot be copied. The followers will
+            // call Authlete by themselves.
+            flight.result.complete(TokenResponseSnapshot.of(response));
+
+            return response;
+        }
+        catch (Throwable t)
+        {
+            // Including errors, so that followers never wait for a result
+            // which does not come. Late duplicates call Authlete by
+            // themselves instead of sharing the failure.
+            flight.result.completeExceptionally(t);
+            mFlights.remove(key, flight);
+            throw t;
+        }
+        finally
+        {
+            flight.completedAt = System.currentTimeMillis();
+        }
+    }
+
+
+    private Response follow(Flight flight)
+    {
+        try
+        {
+            TokenResponseSnapshot snapshot = flight.result.get(mWaitMillis, TimeUnit.MILLISECONDS);
+
+            if (snapshot == null)
+            {
+                return null;
+            }
+
+            mDeduplicated.incrementAndGet();
+
+            return snapshot.toResponse();
+        }
+        catch (ExecutionException e)
+        {
+            // The leader failed. Fail in the same way.
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException)e.getCause();
+            }
+
+            return null;
+        }
+        catch (TimeoutException e)
+        {
+            return null;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+
+    private String keyOf(
+            Tenant tenant, Tenant.Backend backend, MultivaluedMap<String, String> parameters, String authorization,
+            HttpServletRequest request)
+    {
+        if (mEnabled == false
+                || "refresh_token".equals(parameters.getFirst("grant_type")) == false
+                || parameters.getFirst("refresh_token") == null
+                || request.getHeader("DPoP") != null)
+        {
+            return null;
+        }
+
+        ClientAuthentication client = ClientAuthentication.of(authorization, parameters, request);
+
+        if (client.isKeyable() == false)
+        {
+            return null;
+        }
+
+        return client.keyOf(tenant.getId(), backend.getIdentity(),
+                parameters.getFirst("refresh_token"), parameters.getFirst("scope"));
+    }
+
+
+    /**
+     * Remove the flights whose grace period has passed.
+     */
+    private void sweep()
+    {
+        long now = System.currentTimeMillis();
+
+        mFlights.values().removeIf(flight -> {
+            long completed = flight.completedAt;
+            return completed != 0 && now - completed > mGraceMillis;
+        });
+    }
+
+
+    @ManagedAttribute(description = "The number of refresh token requests forwarded to Authlete.")
+    public long getForwarded()
+    {
+        return mForwarded.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of refresh token requests answered with the result of another request.")
+    public long getDeduplicated()
+    {
+        return mDeduplicated.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of refresh token requests in flight or within the grace period.")
+    public int getFlights()
+    {
+        return mFlights.size();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.token;
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Time-bounded set of the {@code jti} values of DPoP proofs which have
+ * been used, split into shards with their own locks so that concurrent
+ * token requests rarely wait for each other.
+ *
+ * <p>
+ * An entry is kept until the proof would be rejected anyway for its
+ * {@code iat}. When a shard is full, its oldest entry is dropped; Authlete
+ * still checks proofs after this cache, so an overflow weakens only the
+ * local check.
+ * </p>
+ */
+class ReplayCache
+{
+    private static class Shard extends LinkedHashMap<String, Long>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int mMaxEntries;
+        private final AtomicLong mEvictions;
+
+
+        Shard(int maxEntries, AtomicLong evictions)
+        {
+            mMaxEntries = maxEntries;
+            mEvictions  = evictions;
+        }
+
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+        {
+            if (size() <= mMaxEntries)
+            {
+                return false;
+            }
+
+            mEvictions.incrementAndGet();
+
+            return true;
+        }
+    }
+
+
+    private final Shard[] mShards;
+    private final AtomicLong mEvictions = new AtomicLong();
+
+
+    /**
+     * @param shards
+     *         The number of shards, rounded up to a power of two.
+     *
+     * @param maxEntries
+     *         The maximum number of entries in all the shards.
+     */
+    ReplayCache(int shards, int maxEntries)
+    {
+        int count = 1;
+
+        while (count < shards)
+        {
+            count <<= 1;
+        }
+
+        int perShard = Math.max(1, maxEntries / count);
+
+        mShards = new Shard[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            mShards[i] = new Shard(perShard, mEvictions);
+        }
+    }
+
+
+    /**
+     * Record the use of a key.
+     *
+     * @param expiresAt
+     *         The time in milliseconds until which the key is kept.
+     *
+     * @return
+     *         True if the key has not been used, false if it is a replay.
+     */
+    boolean firstUse(String key, long expiresAt, long now)
+    {
+        int hash    = key.hashCode();
+        Shard shard = mShards[(hash ^ (hash >>> 16)) & (mShards.length - 1)];
+
+        synchronized (shard)
+        {
+            // Entries are roughly in the order of expiry.
+            Iterator<Long> it = shard.values().iterator();
+
+            while (it.hasNext() && it.next() <= now)
+            {
+                it.remove();
+            }
+
+            Long previous = shard.get(key);
+
+            if (previous != null && previous > now)
+            {
+                return false;
+            }
+
+            shard.put(key, expiresAt);
+
+            return true;
+        }
+    }
+
+
+    int size()
+    {
+        int size = 0;
+
+        for (Shard shard : mShards)
+        {
+            synchronized (shard)
+            {
+                size += shard.size();
+            }
+        }
+
+        return size;
+    }
+
+
+    long getEvictions()
+    {
+        return mEvictions.get();
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.token;
+
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Bloom filter of recently revoked tokens, consulted before a cached
+ * response derived from a token is served.
+ *
+ * <p>
+ * Revocations evict tokens from the caches, but a request which was being
+ * handled at the time may put the token back right after the eviction.
+ * The filter catches such entries: when it says that a token may have been
+ * revoked, the cached entry is dropped and the request goes to Authlete.
+ * A false positive therefore only costs an API call.
+ * </p>
+ *
+ * <p>
+ * The filter consists of {@code buckets} Bloom filters, each of which
+ * receives the revocations of {@code window / buckets} seconds. When the
+ * period of the current one is over, the oldest one is replaced with an
+ * empty one, so the memory stays bounded however many tokens are revoked,
+ * and a revocation is remembered for at least {@code window - window /
+ * buckets} seconds. Each bucket is sized for its share of {@code
+ * expected-revocations} so that the false positive rate of the whole
+ * filter stays within {@code false-positive-rate}.
+ * </p>
+ *
+ * <p>
+ * Tokens are identified by their digests (see {@link TokenDigest}), which
+ * are also what other nodes send on revocations.
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=RevocationFilter")
+public class RevocationFilter
+{
+    private static class Bucket
+    {
+        final AtomicLongArray words;
+        final long bits;
+        final int hashes;
+        final AtomicLong insertions = new AtomicLong();
+
+
+        Bucket(long bits, int hashes)
+        {
+            this.words  = new AtomicLongArray((int)((bits + 63) / 64));
+            this.bits   = words.length() * 64L;
+            this.hashes = hashes;
+        }
+
+
+        void add(long h1, long h2)
+        {
+            for (int i = 0; i < hashes; i++)
+            {
+                long index = Math.floorMod(h1 + i * h2, bits);
+                int word   = (int)(index >>> 6);
+                long mask  = 1L << index;
+                long value = words.get(word);
+
+                while ((value & mask) == 0 && words.compareAndSet(word, value, value | mask) == false)
+                {
+                    value = words.get(word);
+                }
+            }
+
+            insertions.incrementAndGet();
+        }
+
+
+        boolean mightContain(long h1, long h2)
+        {
+            for (int i = 0; i < hashes; i++)
+            {
+                long index = Math.floorMod(h1 + i * h2, bits);
+
+                if ((words.get((int)(index >>> 6)) & (1L << index)) == 0)
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+
+    private final boolean mEnabled;
+    private final long mBucketBits;
+    private final int mHashes;
+    private final long mBucketSeconds;
+    private final AtomicLong mPositives = new AtomicLong();
+    private final AtomicLong mRotations = new AtomicLong();
+
+    // Index 0 is the current bucket. Replaced as a whole on rotation.
+    private volatile Bucket[] mBuckets;
+    private ScheduledExecutorService mRotator;
+
+
+    public RevocationFilter(
+            @Value("${authorization-server.revocation-filter.enabled:true}") boolean enabled,
+            @Value("${authorization-server.revocation-filter.expected-revocations:1000000}") long expected,
+            @Value("${authorization-server.revocation-filter.false-positive-rate:0.001}") double rate,
+            @Value("${authorization-server.revocation-filter.window:86400}") long window,
+            @Value("${authorization-server.revocation-filter.buckets:24}") int buckets)
+    {
+        int count = Math.max(1, buckets);
+
+        // Each bucket gets an even share of the revocations and of the
+        // false positive rate, because a token is checked against all.
+        double n = Math.max(1.0, (double)expected / count);
+        double p = rate / count;
+        double m = Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+
+        mEnabled       = enabled;
+        mBucketBits    = (long)m;
+        mHashes        = Math.max(1, (int)Math.round(m / n * Math.log(2)));
+        mBucketSeconds = Math.max(1, window / count);
+        mBuckets       = new Bucket[count];
+
+        if (enabled)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                mBuckets[i] = new Bucket(mBucketBits, mHashes);
+            }
+        }
+    }
+
+
+    @PostConstruct
+    public void start()
+    {
+        if (mEnabled == false)
+        {
+            return;
+        }
+
+        mRotator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "revocation-filter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        mRotator.scheduleAtFixedRate(this::rotate, mBucketSeconds, mBucketSeconds, TimeUnit.SECONDS);
+    }
+
+
+    @PreDestroy
+    public void stop()
+    {
+        if (mRotator != null)
+        {
+            mRotator.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Record that the token whose digest is given has been revoked.
+     */
+    public void add(String digest)
+    {
+        if (mEnabled == false || digest == null)
+        {
+            return;
+        }
+
+        ByteBuffer hash = hashOf(digest);
+
+        mBuckets[0].add(hash.getLong(0), hash.getLong(8));
+    }
+
+
+    /**
+     * Check if the token whose digest is given may have been revoked
+     * recently.
+     *
+     * @return
+     *         False if the token has not been revoked within the window.
+     *         True if it has been, or rarely, if it has not.
+     */
+    public boolean mightBeRevoked(String digest)
+    {
+        if (mEnabled == false)
+        {
+            return false;
+        }
+
+        ByteBuffer hash = hashOf(digest);
+        long h1 = hash.getLong(0);
+        long h2 = hash.getLong(8);
+
+        for (Bucket bucket : mBuckets)
+        {
+            if (bucket.mightContain(h1, h2))
+            {
+                mPositives.incrementAndGet();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private static ByteBuffer hashOf(String digest)
+    {
+        // The digest is a SHA-256 hash, whose bits are already uniform,
+        // so two halves of it serve as the hashes for double hashing.
+        return ByteBuffer.wrap(Base64.getUrlDecoder().decode(digest));
+    }
+
+
+    /**
+     * Start a new bucket and drop the oldest one.
+     */
+    private synchronized void rotate()
+    {
+        Bucket[] current = mBuckets;
+        Bucket[] rotated = new Bucket[current.length];
+
+        rotated[0] = new Bucket(mBucketBits, mHashes);
+        System.arraycopy(current, 0, rotated, 1, current.length - 1);
+
+        mBuckets = rotated;
+        mRotations.incrementAndGet();
+    }
+
+
+    @ManagedOperation(description = "Forget all the revocations.")
+    public synchronized void clear()
+    {
+        if (mEnabled == false)
+        {
+            return;
+        }
+
+        Bucket[] cleared = new Bucket[mBuckets.length];
+
+        for (int i = 0; i < cleared.length; i++)
+        {
+            cleared[i] = new Bucket(mBucketBits, mHashes);
+        }
+
+        mBuckets = cleared;
+    }
+
+
+    @ManagedAttribute(description = "True if the filter is enabled.")
+    public boolean isEnabled()
+    {
+        return mEnabled;
+    }
+
+
+    @ManagedAttribute(description = "The number of revocations in the filter.")
+    public long getInsertions()
+    {
+        long insertions = 0;
+
+        for (Bucket bucket : mBuckets)
+        {
+            if (bucket != null)
+            {
+                insertions += bucket.insertions.get();
+            }
+        }
+
+        return insertions;
+    }
+
+
+    @ManagedAttribute(description = "The estimated false positive rate for the current number of revocations.")
+    public double getEstimatedFalsePositiveRate()
+    {
+        double miss = 1.0;
+
+        for (Bucket bucket : mBuckets)
+        {
+            if (bucket != null)
+            {
+                double load = Math.exp(-(double)mHashes * bucket.insertions.get() / bucket.bits);
+                miss *= 1.0 - Math.pow(1.0 - load, mHashes);
+            }
+        }
+
+        return 1.0 - miss;
+    }
+
+
+    @ManagedAttribute(description = "The number of bytes used by the filter.")
+    public long getMemoryBytes()
+    {
+        return mEnabled ? mBuckets.length * ((mBucketBits + 63) / 64) * 8 : 0;
+    }
+
+
+    @ManagedAttribute(description = "The number of checks which said a token might have been revoked.")
+    public long getPositives()
+    {
+        return mPositives.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of times the oldest bucket was dropped.")
+    public long getRotations()
+    {
+        return mRotations.get();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.token;
+
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+
+/**
+ * Digests of tokens, used where tokens must be identified without being
+ * kept in memory or sent to other nodes as they are.
+ */
+public final class TokenDigest
+{
+    private TokenDigest()
+    {
+    }
+
+
+    /**
+     * Get the base64url-encoded SHA-256 digest of a token.
+     */
+    public static String of(String token)
+    {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.UTF_8));
+
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // SHA-256 is always available.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.token;
+
+
+import java.util.List;
+import java.util.Map;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+
+
+/**
+ * Immutable copy of a response of the token endpoint, which can be turned
+ * into a new {@link Response} any number of times.
+ *
+ * <p>
+ * The responses built by {@link com.authlete.jakarta.TokenRequestHandler
+ * TokenRequestHandler} have a {@code String} entity. A response with any
+ * other entity cannot be copied.
+ * </p>
+ */
+class TokenResponseSnapshot
+{
+    private final int mStatus;
+    private final MediaType mMediaType;
+    private final String mEntity;
+    private final MultivaluedMap<String, String> mHeaders;
+
+
+    private TokenResponseSnapshot(
+            int status, MediaType mediaType, String entity, MultivaluedMap<String, String> headers)
+    {
+        mStatus    = status;
+        mMediaType = mediaType;
+        mEntity    = entity;
+        mHeaders   = headers;
+    }
+
+
+    /**
+     * Copy a response.
+     *
+     * @return
+     *         The snapshot, or {@code null} if the entity of the response
+     *         is not a string.
+     */
+    static TokenResponseSnapshot of(Response response)
+    {
+        Object entity = response.getEntity();
+
+        if (entity != null && (entity instanceof String) == false)
+        {
+            return null;
+        }
+
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<String, String>();
+
+        for (Map.Entry<String, List<String>> header : response.getStringHeaders().entrySet())
+        {
+            if (header.getKey().equalsIgnoreCase("Content-Type") == false)
+            {
+                headers.put(header.getKey(), List.copyOf(header.getValue()));
+            }
+        }
+
+        return new TokenResponseSnapshot(
+                response.getStatus(), response.getMediaType(), (String)entity, headers);
+    }
+
+
+    int getStatus()
+    {
+        return mStatus;
+    }
+
+
+    String getEntity()
+    {
+        return mEntity;
+    }
+
+
+    /**
+     * Build a new response from this snapshot.
+     */
+    Response toResponse()
+    {
+        return toResponse(mEntity);
+    }
+
+
+    /**
+     * Build a new response from this snapshot with a different entity.
+     */
+    Response toResponse(String entity)
+    {
+        Response.ResponseBuilder builder = Response.status(mStatus).entity(entity);
+
+        if (mMediaType != null)
+        {
+            builder.type(mMediaType);
+        }
+
+        for (Map.Entry<String, List<String>> header : mHeaders.entrySet())
+        {
+            for (String value : header.getValue())
+            {
+                builder.header(header.getKey(), value);
+            }
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.userinfo;
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.core.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import com.authlete.spring.server.tenant.Tenant;
+import com.authlete.spring.server.token.RevocationFilter;
+import com.authlete.spring.server.token.TokenDigest;
+
+
+/**
+ * Short-lived per-token cache of UserInfo responses.
+ *
+ * <p>
+ * A resource server which polls the UserInfo endpoint with the same access
+ * token gets the cached response for {@code
+ * authorization-server.userinfo.response-ttl} seconds without Authlete
+ * being called. Therefore, a token which expires or is revoked elsewhere
+ * may still be accepted for up to that many seconds. Tokens revoked at the
+ * revocation endpoint of this server are evicted immediately. Access tokens
+ * issued with a refresh token revoked there are not, because which access
+ * tokens came from a refresh token is only known by Authlete; they are
+ * accepted for up to that many seconds, too.
+ * </p>
+ *
+ * <p>
+ * Requests presenting a DPoP proof or a TLS client certificate are not
+ * served from the cache, because the binding of the token needs to be
+ * verified for every request.
+ * </p>
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=UserInfoCache")
+public class UserInfoCache
+{
+    private final long mTtlMillis;
+    private final int mMaxEntries;
+    private final RevocationFilter mRevocations;
+    private final Map<String, UserInfoDocument> mEntries = new ConcurrentHashMap<String, UserInfoDocument>();
+    private final AtomicLong mHits   = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+
+    public UserInfoCache(
+            @Value("${authorization-server.userinfo.response-ttl:30}") long ttl,
+            @Value("${authorization-server.userinfo.max-entries:10000}") int maxEntries,
+            RevocationFilter revocations)
+    {
+        mTtlMillis   = TimeUnit.SECONDS.toMillis(ttl);
+        mMaxEntries  = maxEntries;
+        mRevocations = revocations;
+    }
+
+
+    /**
+     * Get the cached document for the access token.
+     *
+     * @return
+     *         The document, or {@code null} if not cached.
+     */
+    public UserInfoDocument get(Tenant tenant, String accessToken, HttpServletRequest request)
+    {
+        if (isCacheable(accessToken, request) == false)
+        {
+            return null;
+        }
+
+        String digest = TokenDigest.of(accessToken);
+        String key    = keyOf(tenant.getId(), digest);
+        UserInfoDocument document = mEntries.get(key);
+
+        if (document != null && mRevocations.mightBeRevoked(digest))
+        {
+            // The token may have been revoked after it was cached.
+            mEntries.remove(key, document);
+            document = null;
+        }
+
+        if (document == null || document.isExpired(System.currentTimeMillis()))
+        {
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        mHits.incrementAndGet();
+
+        return document;
+    }
+
+
+    /**
+     * Create a document from a successful response of the UserInfo
+     * endpoint and cache it if the request allows.
+     *
+     * @param claims
+     *         The claims in the response, from which the entity tag of a
+     *         JWT response is computed together with the access token.
+     *
+     * @return
+     *         The document, or {@code null} if the entity of the response
+     *         is not a string.
+     */
+    public UserInfoDocument put(
+            Tenant tenant, String accessToken, HttpServletRequest request, Response response, String claims)
+    {
+        if ((response.getEntity() instanceof String) == false)
+        {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+
+        UserInfoDocument document = new UserInfoDocument(
+                (String)response.getEntity(), response.getMediaType(),
+                (accessToken != null) ? TokenDigest.of(accessToken) : "", claims, now + mTtlMillis);
+
+        if (mTtlMillis <= 0 || isCacheable(accessToken, request) == false)
+        {
+            return document;
+        }
+
+        if (mEntries.size() >= mMaxEntries)
+        {
+            mEntries.values().removeIf(entry -> entry.isExpired(now));
+
+            if (mEntries.size() >= mMaxEntries)
+            {
+                return document;
+            }
+        }
+
+        mEntries.put(keyOf(tenant, accessToken), document);
+
+        return document;
+    }
+
+
+    /**
+     * Remove the cached document of the access token.
+     */
+    public void evict(Tenant tenant, String accessToken)
+    {
+        if (accessToken != null)
+        {
+            mEntries.remove(keyOf(tenant, accessToken));
+        }
+    }
+
+
+    /**
+     * Remove the cached document of the access token whose digest (see
+     * {@link TokenDigest}) is given. Used for revocations on other nodes.
+     */
+    public void evictDigest(String tenantId, String digest)
+    {
+        mEntries.remove(keyOf(tenantId, digest));
+    }
+
+
+    /**
+     * Remove all the cached documents.
+     */
+    public void clear()
+    {
+        mEntries.clear();
+    }
+
+
+    private static boolean isCacheable(String accessToken, HttpServletRequest request)
+    {
+        String authorization = request.getHeader("Authorization");
+
+        return accessToken != null
+                && request.getHeader("DPoP") == null
+                && (authorization == null || authorization.regionMatches(true, 0, "DPoP ", 0, 5) == false)
+                && request.getAttribute("jakarta.servlet.request.X509Certificate") == null;
+    }
+
+
+    private static String keyOf(Tenant tenant, String accessToken)
+    {
+        // Access tokens are not kept in memory as they are.
+        return keyOf(tenant.getId(), TokenDigest.of(accessToken));
+    }
+
+
+    private static String keyOf(String tenantId, String digest)
+    {
+        return tenantId + ':' + digest;
+    }
+
+
+    @ManagedAttribute(description = "The number of cached UserInfo responses.")
+    public int getEntries()
+    {
+        return mEntries.size();
+    }
+
+
+    @ManagedAttribute(description = "The number of UserInfo requests served from the cache.")
+    public long getHits()
+    {
+        return mHits.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of cacheable UserInfo requests passed to Authlete.")
+    public long getMisses()
+    {
+        return mMisses.get();
+    }
+}
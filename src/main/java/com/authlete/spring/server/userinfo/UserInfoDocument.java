@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.userinfo;
+
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+
+/**
+ * A successful response of the UserInfo endpoint, which is either a JSON
+ * object or a JWT (signed and/or encrypted).
+ *
+ * <p>
+ * The entity tag of a JSON response is computed from the response itself.
+ * Signed and encrypted responses differ every time they are issued, so
+ * their entity tag is computed from the access token and the claims in the
+ * response instead. It stays the same while the claims stay the same, so
+ * that a resource server which polls the endpoint can use conditional
+ * requests, and it differs between tokens, so that a tag obtained with one
+ * token never matches the document of another user or client.
+ * </p>
+ */
+public class UserInfoDocument
+{
+    private static final CacheControl CACHE_CONTROL = CacheControl.valueOf("private, no-cache");
+
+
+    private final String mEntity;
+    private final MediaType mMediaType;
+    private final EntityTag mEntityTag;
+    private final long mExpiresAt;
+
+
+    UserInfoDocument(String entity, MediaType mediaType, String tokenDigest, String claims, long expiresAt)
+    {
+        mEntity    = entity;
+        mMediaType = mediaType;
+        mEntityTag = new EntityTag(digest(tagSourceOf(entity, mediaType, tokenDigest, claims)));
+        mExpiresAt = expiresAt;
+    }
+
+
+    private static String tagSourceOf(String entity, MediaType mediaType, String tokenDigest, String claims)
+    {
+        if (MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType))
+        {
+            // The JSON contains "sub", so it differs between users.
+            return entity + '\0' + mediaType;
+        }
+
+        // The token identifies the user and the client.
+        return tokenDigest + '\0' + claims + '\0' + mediaType;
+    }
+
+
+    boolean isExpired(long now)
+    {
+        return mExpiresAt <= now;
+    }
+
+
+    /**
+     * Build a response from this document.
+     *
+     * @param ifNoneMatch
+     *         The value of the {@code If-None-Match} request header.
+     *         {@code null} is allowed.
+     *
+     * @return
+     *         {@code 304 Not Modified} if the entity tag matches.
+     *         Otherwise, {@code 200 OK} with the document.
+     */
+    public Response toResponse(String ifNoneMatch)
+    {
+        if (matches(ifNoneMatch))
+        {
+            return Response.notModified(mEntityTag)
+                    .cacheControl(CACHE_CONTROL)
+                    .header(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION)
+                    .build();
+        }
+
+        return Response.ok(mEntity, mMediaType)
+                .tag(mEntityTag)
+                .cacheControl(CACHE_CONTROL)
+                .header(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION)
+                .build();
+    }
+
+
+    private boolean matches(String ifNoneMatch)
+    {
+        if (ifNoneMatch == null)
+        {
+            return false;
+        }
+
+        String tag = mEntityTag.getValue();
+
+        for (String candidate : ifNoneMatch.split(","))
+        {
+            candidate = candidate.trim();
+
+            // Weak comparison (RFC 9110, 13.1.2).
+            if (candidate.startsWith("W/"))
+            {
+                candidate = candidate.substring(2);
+            }
+
+            if (candidate.equals("*") || candidate.equals('"' + tag + '"'))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private static String digest(String value)
+    {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(value.getBytes(StandardCharsets.UTF_8));
+
+            // 128 bits are enough for an entity tag.
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 22);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // SHA-256 is always available.
+            throw new IllegalStateException(e);
+        }
+    }
+}
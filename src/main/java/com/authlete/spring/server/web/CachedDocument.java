@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.web;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+
+
+/**
+ * A document fetched from Authlete and kept as {@link EncodedDocument}
+ * for a fixed time. The document is encoded and compressed only when
+ * it is loaded.
+ *
+ * <p>
+ * Only one thread reloads an expired document at a time, and the other
+ * threads keep serving the expired document meanwhile instead of waiting
+ * for Authlete (stale-while-revalidate). Threads wait only when there is
+ * no document yet. When reloading fails but an older document exists, the
+ * older document keeps being served and reloading is retried after a
+ * short delay.
+ * </p>
+ */
+public class CachedDocument
+{
+    /**
+     * Delay before retrying a failed reload in milliseconds.
+     */
+    private static final long RETRY_DELAY_MILLIS = 10000L;
+
+
+    private final long mTtlMillis;
+    private final TransferStatistics mStatistics;
+    private final Object mLock = new Object();
+    private final AtomicBoolean mReloading = new AtomicBoolean();
+    private volatile EncodedDocument mDocument;
+    private volatile long mExpiresAt;
+
+
+    /**
+     * Constructor.
+     *
+     * @param ttl
+     *         Time to live of a loaded document in seconds.
+     *
+     * @param statistics
+     *         Statistics to record responses into. May be {@code null}.
+     */
+    public CachedDocument(long ttl, TransferStatistics statistics)
+    {
+        mTtlMillis  = TimeUnit.SECONDS.toMillis(ttl);
+        mStatistics = statistics;
+    }
+
+
+    /**
+     * Get the document, loading it if it has not been loaded or has expired.
+     *
+     * @param loader
+     *         A function to call an Authlete API. Typically, {@code handle()}
+     *         method of one of the endpoint classes of authlete-java-jakarta.
+     *
+     * @return
+     *         The document.
+     *
+     * @throws WebApplicationException
+     *         The loader returned a response other than {@code 200 OK} and
+     *         there is no older document. The exception holds the response.
+     */
+    public EncodedDocument get(Supplier<Response> loader)
+    {
+        EncodedDocument document = mDocument;
+
+        if (document != null)
+        {
+            if (System.currentTimeMillis() < mExpiresAt
+                    || mReloading.compareAndSet(false, true) == false)
+            {
+                // Fresh, or another thread is reloading it. Serve the
+                // current document without waiting.
+                return document;
+            }
+
+            // This thread reloads the expired document.
+            try
+            {
+                synchronized (mLock)
+                {
+                    return load(loader);
+                }
+            }
+            finally
+            {
+                mReloading.set(false);
+            }
+        }
+
+        // Nothing to serve yet. Wait for the document.
+        synchronized (mLock)
+        {
+            return load(loader);
+        }
+    }
+
+
+    /**
+     * Load the document unless another thread has loaded it. Must be
+     * called with {@code mLock} held.
+     */
+    private EncodedDocument load(Supplier<Response> loader)
+    {
+        long now = System.currentTimeMillis();
+
+        if (mDocument != null && now < mExpiresAt)
+        {
+            return mDocument;
+        }
+
+        Response response = loader.get();
+
+        if (response.getStatus() == Status.OK.getStatusCode())
+        {
+            mDocument  = EncodedDocument.from(response, mStatistics);
+            mExpiresAt = now + mTtlMillis;
+
+            return mDocument;
+        }
+
+        if (mDocument == null)
+        {
+            // Nothing to serve. Let the caller return the error.
+            throw new WebApplicationException(response);
+        }
+
+        // Keep serving the older document for a while.
+        mExpiresAt = now + Math.min(mTtlMillis, RETRY_DELAY_MILLIS);
+
+        return mDocument;
+    }
+
+
+    /**
+     * Mark the document expired so that it is reloaded on the next access.
+     * The document is still served if reloading fails.
+     */
+    public void invalidate()
+    {
+        mExpiresAt = 0;
+    }
+
+
+    /**
+     * Discard the document, e.g. because it belongs to another Authlete
+     * service. The document is not served any more, even if reloading
+     * fails.
+     */
+    public void discard()
+    {
+        synchronized (mLock)
+        {
+            mDocument  = null;
+            mExpiresAt = 0;
+        }
+    }
+}
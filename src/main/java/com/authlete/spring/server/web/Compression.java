@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.web;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Utility to compress content which is compressed once and sent many times.
+ */
+public final class Compression
+{
+    private Compression()
+    {
+    }
+
+
+    /**
+     * Compress the data by GZIP with the best compression level. Because
+     * the result is reused, the extra CPU cost is paid only once.
+     *
+     * @return
+     *         The compressed data, or {@code null} if compression does not
+     *         make the data smaller.
+     */
+    public static byte[] gzip(byte[] data)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 32);
+
+        try (GZIPOutputStream gzip = new BestGzipOutputStream(out))
+        {
+            gzip.write(data);
+        }
+        catch (IOException e)
+        {
+            // ByteArrayOutputStream does not throw IOException.
+            throw new UncheckedIOException(e);
+        }
+
+        byte[] compressed = out.toByteArray();
+
+        return (compressed.length < data.length) ? compressed : null;
+    }
+
+
+    private static class BestGzipOutputStream extends GZIPOutputStream
+    {
+        BestGzipOutputStream(ByteArrayOutputStream out) throws IOException
+        {
+            super(out);
+
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
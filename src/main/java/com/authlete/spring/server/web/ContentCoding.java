@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.web;
+
+
+/**
+ * Content codings which this server can send.
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc9110#section-12.5.3"
+ *      >RFC 9110, 12.5.3. Accept-Encoding</a>
+ */
+public enum ContentCoding
+{
+    /**
+     * Brotli (RFC 7932).
+     */
+    BR("br"),
+
+
+    /**
+     * GZIP (RFC 1952).
+     */
+    GZIP("gzip"),
+
+
+    /**
+     * No compression.
+     */
+    IDENTITY(null);
+
+
+    /**
+     * How an element of {@code Accept-Encoding} applies to a coding.
+     */
+    private enum Match
+    {
+        NONE,
+        ACCEPTED,
+        REFUSED,
+        WILDCARD,
+    }
+
+
+    private final String mToken;
+
+
+    private ContentCoding(String token)
+    {
+        mToken = token;
+    }
+
+
+    /**
+     * Get the value for the {@code Content-Encoding} header.
+     * {@code null} for {@link #IDENTITY}.
+     */
+    public String getToken()
+    {
+        return mToken;
+    }
+
+
+    /**
+     * Check whether the value of an {@code Accept-Encoding} header accepts
+     * this coding. {@link #IDENTITY} is always accepted. An element
+     * naming the coding takes precedence over {@code *}.
+     *
+     * <p>
+     * The header is scanned in place. A substring is created only when a
+     * coding has a {@code q} parameter.
+     * </p>
+     */
+    public boolean isAcceptedBy(String acceptEncoding)
+    {
+        if (mToken == null)
+        {
+            return true;
+        }
+
+        if (acceptEncoding == null)
+        {
+            return false;
+        }
+
+        int length       = acceptEncoding.length();
+        int start        = 0;
+        boolean wildcard = false;
+
+        while (start < length)
+        {
+            int end = acceptEncoding.indexOf(',', start);
+
+            if (end < 0)
+            {
+                end = length;
+            }
+
+            switch (match(acceptEncoding, start, end))
+            {
+                case ACCEPTED:
+                    return true;
+
+                case REFUSED:
+                    // The coding itself is listed with "q=0", which
+                    // overrides "*" listed anywhere in the header.
+                    return false;
+
+                case WILDCARD:
+                    wildcard = true;
+                    break;
+
+                default:
+                    break;
+            }
+
+            start = end + 1;
+        }
+
+        return wildcard;
+    }
+
+
+    private Match match(String header, int start, int end)
+    {
+        // Skip leading whitespace.
+        while (start < end && header.charAt(start) == ' ')
+        {
+            start++;
+        }
+
+        int paramStart = header.indexOf(';', start);
+
+        if (paramStart < 0 || end < paramStart)
+        {
+            paramStart = end;
+        }
+
+        // The coding without trailing whitespace.
+        int codingEnd = paramStart;
+
+        while (start < codingEnd && header.charAt(codingEnd - 1) == ' ')
+        {
+            codingEnd--;
+        }
+
+        int codingLength = codingEnd - start;
+
+        if (codingLength == mToken.length() && header.regionMatches(true, start, mToken, 0, codingLength))
+        {
+            return isNonZeroQuality(header, paramStart, end) ? Match.ACCEPTED : Match.REFUSED;
+        }
+
+        if (codingLength == 1 && header.charAt(start) == '*' && isNonZeroQuality(header, paramStart, end))
+        {
+            return Match.WILDCARD;
+        }
+
+        return Match.NONE;
+    }
+
+
+    private static boolean isNonZeroQuality(String header, int paramStart, int end)
+    {
+        if (paramStart >= end)
+        {
+            // No parameter. Same as "q=1".
+            return true;
+        }
+
+        int q = header.indexOf("q=", paramStart);
+
+        if (q < 0 || end <= q)
+        {
+            return true;
+        }
+
+        try
+        {
+            return Double.parseDouble(header.substring(q + 2, end).trim()) > 0;
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.web;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
+
+
+/**
+ * A document (e.g. a JSON document) which has been encoded into bytes
+ * in advance so that it can be written to clients without building a
+ * {@code String} copy on every request.
+ *
+ * <p>
+ * A GZIP-compressed variant is built together with the encoded bytes and
+ * is sent to clients which accept it.
+ * </p>
+ */
+public class EncodedDocument
+{
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+
+    private final byte[] mContent;
+    private final byte[] mGzipped;
+    private final MediaType mMediaType;
+    private final String mContentType;
+    private final TransferStatistics mStatistics;
+
+
+    /**
+     * Constructor.
+     *
+     * @param content
+     *         The content of the document.
+     *
+     * @param mediaType
+     *         The media type of the document.
+     *
+     * @param statistics
+     *         Statistics to record responses into. May be {@code null}.
+     */
+    public EncodedDocument(String content, MediaType mediaType, TransferStatistics statistics)
+    {
+        mContent     = content.getBytes(StandardCharsets.UTF_8);
+        mGzipped     = Compression.gzip(mContent);
+        mMediaType   = mediaType.withCharset("UTF-8");
+        mContentType = mMediaType.toString();
+        mStatistics  = statistics;
+    }
+
+
+    /**
+     * Create a document from the entity of a response built by one of
+     * the endpoint classes of authlete-java-jakarta.
+     */
+    public static EncodedDocument from(Response response, TransferStatistics statistics)
+    {
+        MediaType mediaType = response.getMediaType();
+
+        if (mediaType == null)
+        {
+            mediaType = MediaType.APPLICATION_JSON_TYPE;
+        }
+
+        return new EncodedDocument(response.getEntity().toString(), mediaType, statistics);
+    }
+
+
+    /**
+     * Get the length of the encoded content.
+     */
+    public int getContentLength()
+    {
+        return mContent.length;
+    }
+
+
+    /**
+     * Build a JAX-RS response which writes the encoded bytes as they are.
+     *
+     * @param acceptEncoding
+     *         The value of the {@code Accept-Encoding} header of the request.
+     */
+    public Response toResponse(String acceptEncoding)
+    {
+        ContentCoding coding = select(acceptEncoding);
+        byte[] body          = bodyOf(coding);
+
+        ResponseBuilder builder = Response
+                .ok(body, mMediaType)
+                .header(HttpHeaders.CONTENT_LENGTH, body.length)
+                .header(HttpHeaders.VARY, ACCEPT_ENCODING);
+
+        if (coding != ContentCoding.IDENTITY)
+        {
+            builder.header(HttpHeaders.CONTENT_ENCODING, coding.getToken());
+        }
+
+        record(coding, body);
+
+        return builder.build();
+    }
+
+
+    /**
+     * Write the encoded bytes directly to the servlet response.
+     *
+     * @param acceptEncoding
+     *         The value of the {@code Accept-Encoding} header of the request.
+     */
+    public void write(String acceptEncoding, HttpServletResponse response) throws IOException
+    {
+        ContentCoding coding = select(acceptEncoding);
+        byte[] body          = bodyOf(coding);
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(mContentType);
+        response.setContentLength(body.length);
+        response.setHeader(HttpHeaders.VARY, ACCEPT_ENCODING);
+
+        if (coding != ContentCoding.IDENTITY)
+        {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, coding.getToken());
+        }
+
+        record(coding, body);
+
+        OutputStream out = response.getOutputStream();
+        out.write(body);
+        out.flush();
+    }
+
+
+    private ContentCoding select(String acceptEncoding)
+    {
+        if (mGzipped != null && ContentCoding.GZIP.isAcceptedBy(acceptEncoding))
+        {
+            return ContentCoding.GZIP;
+        }
+
+        return ContentCoding.IDENTITY;
+    }
+
+
+    private byte[] bodyOf(ContentCoding coding)
+    {
+        return (coding == ContentCoding.GZIP) ? mGzipped : mContent;
+    }
+
+
+    private void record(ContentCoding coding, byte[] body)
+    {
+        if (mStatistics != null)
+        {
+            mStatistics.record(coding, mContent.length, body.length);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.web;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+
+/**
+ * Resource resolver which serves static resources from memory, compressed
+ * if the client accepts it.
+ *
+ * <p>
+ * The first time a resource is requested, its content and a GZIP-compressed
+ * variant are loaded into memory. If files with the extensions {@code .br}
+ * or {@code .gz} exist next to the resource (e.g. because they were created
+ * at build time), they are loaded as the Brotli and GZIP variants instead
+ * of compressing the content at runtime.
+ * </p>
+ */
+public class PrecompressedResourceResolver extends AbstractResourceResolver
+{
+    private final ConcurrentMap<String, Variants> mVariants = new ConcurrentHashMap<>();
+    private final TransferStatistics mStatistics;
+
+
+    public PrecompressedResourceResolver(TransferStatistics statistics)
+    {
+        mStatistics = statistics;
+    }
+
+
+    @Override
+    protected Resource resolveResourceInternal(
+            HttpServletRequest request, String requestPath,
+            List<? extends Resource> locations, ResourceResolverChain chain)
+    {
+        if (request == null)
+        {
+            return chain.resolveResource(request, requestPath, locations);
+        }
+
+        // Resources loaded once are served without touching the class path.
+        Variants variants = mVariants.get(requestPath);
+
+        if (variants == null)
+        {
+            Resource resource = chain.resolveResource(request, requestPath, locations);
+
+            if (resource == null)
+            {
+                return null;
+            }
+
+            variants = mVariants.computeIfAbsent(requestPath, path -> Variants.load(resource));
+        }
+
+        return variants.select(request.getHeader(HttpHeaders.ACCEPT_ENCODING), mStatistics);
+    }
+
+
+    @Override
+    protected String resolveUrlPathInternal(
+            String resourceUrlPath, List<? extends Resource> locations, ResourceResolverChain chain)
+    {
+        return chain.resolveUrlPath(resourceUrlPath, locations);
+    }
+
+
+    /**
+     * The in-memory variants of a static resource.
+     */
+    private static class Variants
+    {
+        private final InMemoryResource mIdentity;
+        private final InMemoryResource mGzip;
+        private final InMemoryResource mBrotli;
+
+
+        private Variants(InMemoryResource identity, InMemoryResource gzip, InMemoryResource brotli)
+        {
+            mIdentity = identity;
+            mGzip     = gzip;
+            mBrotli   = brotli;
+        }
+
+
+        static Variants load(Resource resource)
+        {
+            String filename   = resource.getFilename();
+            long lastModified = lastModified(resource);
+            byte[] content    = read(resource);
+
+            // Prefer variants created at build time.
+            byte[] gzipped = readSibling(resource, filename + ".gz");
+            byte[] brotli  = readSibling(resource, filename + ".br");
+
+            if (gzipped == null)
+            {
+                gzipped = Compression.gzip(content);
+            }
+
+            return new Variants(
+                    new InMemoryResource(content, filename, lastModified, content.length, ContentCoding.IDENTITY),
+                    variant(gzipped, filename, lastModified, content.length, ContentCoding.GZIP),
+                    variant(brotli,  filename, lastModified, content.length, ContentCoding.BR));
+        }
+
+
+        InMemoryResource select(String acceptEncoding, TransferStatistics statistics)
+        {
+            InMemoryResource selected = mIdentity;
+
+            if (mBrotli != null && ContentCoding.BR.isAcceptedBy(acceptEncoding))
+            {
+                selected = mBrotli;
+            }
+            else if (mGzip != null && ContentCoding.GZIP.isAcceptedBy(acceptEncoding))
+            {
+                selected = mGzip;
+            }
+
+            if (statistics != null)
+            {
+                statistics.record(selected.mCoding, selected.mOriginalLength, selected.contentLength());
+            }
+
+            return selected;
+        }
+
+
+        private static InMemoryResource variant(
+                byte[] data, String filename, long lastModified, int originalLength, ContentCoding coding)
+        {
+            if (data == null || data.length >= originalLength)
+            {
+                // Not worth sending compressed.
+                return null;
+            }
+
+            return new InMemoryResource(data, filename, lastModified, originalLength, coding);
+        }
+
+
+        private static byte[] readSibling(Resource resource, String filename)
+        {
+            try
+            {
+                Resource sibling = resource.createRelative(filename);
+
+                return sibling.exists() ? read(sibling) : null;
+            }
+            catch (IOException e)
+            {
+                return null;
+            }
+        }
+
+
+        private static byte[] read(Resource resource)
+        {
+            try (InputStream in = resource.getInputStream())
+            {
+                return in.readAllBytes();
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+
+        private static long lastModified(Resource resource)
+        {
+            try
+            {
+                return resource.lastModified();
+            }
+            catch (IOException e)
+            {
+                return -1;
+            }
+        }
+    }
+
+
+    /**
+     * A variant of a static resource held in memory.
+     */
+    private static class InMemoryResource extends ByteArrayResource implements HttpResource
+    {
+        private final String mFilename;
+        private final long mLastModified;
+        private final int mOriginalLength;
+        private final ContentCoding mCoding;
+
+
+        InMemoryResource(
+                byte[] data, String filename, long lastModified, int originalLength, ContentCoding coding)
+        {
+            super(data, filename);
+
+            mFilename       = filename;
+            mLastModified   = lastModified;
+            mOriginalLength = originalLength;
+            mCoding         = coding;
+        }
+
+
+        @Override
+        public String getFilename()
+        {
+            // Used to determine the media type.
+            return mFilename;
+        }
+
+
+        @Override
+        public long lastModified()
+        {
+            return mLastModified;
+        }
+
+
+        @Override
+        public HttpHeaders getResponseHeaders()
+        {
+            HttpHeaders headers = new HttpHeaders();
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+            if (mCoding != ContentCoding.IDENTITY)
+            {
+                headers.add(HttpHeaders.CONTENT_ENCODING, mCoding.getToken());
+            }
+
+            return headers;
+        }
+
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return this == other;
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(this);
+        }
+    }
+}
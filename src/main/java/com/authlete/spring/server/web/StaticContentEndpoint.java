@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.web;
+
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+
+/**
+ * Jersey resource which serves static contents under {@code classpath:/static/}
+ * in the single-stack mode, where Spring MVC (and therefore {@link WebConfig})
+ * is not used.
+ *
+ * <p>
+ * Resources are resolved by {@link PrecompressedResourceResolver}, so they
+ * are served from memory and compressed in the same way as in the default
+ * mode.
+ * </p>
+ */
+@Component
+@Path("/")
+public class StaticContentEndpoint
+{
+    private static final String LOCATION = "static/";
+    private static final List<Resource> LOCATIONS = List.of(new ClassPathResource(LOCATION));
+
+
+    /**
+     * Resolves a path to a class path resource. The last link of the
+     * chain of {@link PrecompressedResourceResolver}.
+     */
+    private static final ResourceResolverChain CLASS_PATH = new ResourceResolverChain()
+    {
+        @Override
+        public Resource resolveResource(
+                HttpServletRequest request, String requestPath, List<? extends Resource> locations)
+        {
+            Resource resource = new ClassPathResource(LOCATION + requestPath);
+
+            return resource.isReadable() ? resource : null;
+        }
+
+
+        @Override
+        public String resolveUrlPath(String resourcePath, List<? extends Resource> locations)
+        {
+            return resourcePath;
+        }
+    };
+
+
+    private final PrecompressedResourceResolver mResolver;
+
+
+    public StaticContentEndpoint(TransferStatistics statistics)
+    {
+        mResolver = new PrecompressedResourceResolver(statistics);
+    }
+
+
+    @GET
+    @Path("{path: .*}")
+    public Response get(@PathParam("path") String path, @Context HttpServletRequest request)
+            throws IOException
+    {
+        if (path.isEmpty() || path.endsWith("/"))
+        {
+            path = path + "index.html";
+        }
+
+        // Never go out of the location.
+        if (path.contains(".."))
+        {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+
+        Resource resource = mResolver.resolveResource(request, path, LOCATIONS, CLASS_PATH);
+
+        if (resource == null)
+        {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+
+        Response.ResponseBuilder builder = Response
+                .ok(((ByteArrayResource)resource).getByteArray())
+                .type(MediaTypeFactory.getMediaType(resource)
+                        .map(Object::toString).orElse("application/octet-stream"));
+
+        if (resource.lastModified() > 0)
+        {
+            builder.lastModified(new Date(resource.lastModified()));
+        }
+
+        ((HttpResource)resource).getResponseHeaders().forEach(
+                (name, values) -> values.forEach(value -> builder.header(name, value)));
+
+        return builder.build();
+    }
+}
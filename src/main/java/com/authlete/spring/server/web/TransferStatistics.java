@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.web;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Statistics of the bytes sent for cached documents and static resources.
+ */
+@Component
+@ManagedResource(objectName = "com.authlete.spring.server:type=TransferStatistics")
+public class TransferStatistics
+{
+    private final AtomicLong mResponses           = new AtomicLong();
+    private final AtomicLong mCompressedResponses = new AtomicLong();
+    private final AtomicLong mContentBytes        = new AtomicLong();
+    private final AtomicLong mSentBytes           = new AtomicLong();
+
+
+    /**
+     * Record a response.
+     *
+     * @param coding
+     *         The content coding of the response.
+     *
+     * @param contentLength
+     *         The length of the content before compression.
+     *
+     * @param sentLength
+     *         The length of the body actually sent.
+     */
+    public void record(ContentCoding coding, long contentLength, long sentLength)
+    {
+        mResponses.incrementAndGet();
+        mContentBytes.addAndGet(contentLength);
+        mSentBytes.addAndGet(sentLength);
+
+        if (coding != ContentCoding.IDENTITY)
+        {
+            mCompressedResponses.incrementAndGet();
+        }
+    }
+
+
+    @ManagedAttribute(description = "The number of responses.")
+    public long getResponses()
+    {
+        return mResponses.get();
+    }
+
+
+    @ManagedAttribute(description = "The number of compressed responses.")
+    public long getCompressedResponses()
+    {
+        return mCompressedResponses.get();
+    }
+
+
+    @ManagedAttribute(description = "The total length of the contents before compression.")
+    public long getContentBytes()
+    {
+        return mContentBytes.get();
+    }
+
+
+    @ManagedAttribute(description = "The total length of the bodies sent on the wire.")
+    public long getSentBytes()
+    {
+        return mSentBytes.get();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.web;
+
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+
+/**
+ * Configuration for Spring MVC.
+ *
+ * <p>
+ * Static contents under {@code classpath:/static/} are served through
+ * {@link PrecompressedResourceResolver}. The default resource mapping of
+ * Spring Boot is disabled by {@code spring.web.resources.add-mappings}
+ * in {@code application.yml}.
+ * </p>
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer
+{
+    private final TransferStatistics mStatistics;
+
+
+    public WebConfig(TransferStatistics statistics)
+    {
+        mStatistics = statistics;
+    }
+
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry)
+    {
+        registry.addResourceHandler("/**")
+                .addResourceLocations("classpath:/static/")
+                .resourceChain(false)
+                .addResolver(new PrecompressedResourceResolver(mStatistics));
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server;
+
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.CookieManager;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.context.annotation.Primary;
+import com.authlete.common.api.AuthleteApi;
+import com.authlete.common.conf.AuthleteConfiguration;
+import com.authlete.common.conf.AuthleteSimpleConfiguration;
+import com.authlete.spring.server.tenant.TenantApiFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Runs the authorization code flow (authorization request, decision on the
+ * authorization page and token request) through the whole application
+ * against a stub of Authlete which answers with the payloads under {@code
+ * src/test/resources/json}.
+ *
+ * <p>
+ * The stub is a plain HTTP server and the requests reach it through the
+ * real {@code AuthleteApi} implementation, so the test also runs as a
+ * native executable ({@code mvn -PnativeTest test}) and then checks that
+ * the hints in {@link AuthorizationServerRuntimeHints} are sufficient.
+ * </p>
+ */
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "authorization-server.warm-up.enabled=false",
+                "authorization-server.clients.pre-validation=false"
+        })
+class AuthorizationCodeFlowTest
+{
+    private static final String CLIENT_ID = "1140735077";
+    private static final String REDIRECT_URI = "https%3A%2F%2Fclient.example.com%2Fcallback";
+    private static final String CODE = "G7pLjGGgJQm0TEpvZ-mKf6DbTZt0Pu5oEctlzl2vTl8";
+
+
+    @LocalServerPort
+    private int mPort;
+
+
+    @Autowired
+    private StubAuthlete mAuthlete;
+
+
+    // The session created by the authorization page is sent with the
+    // decision, as a browser does.
+    private final HttpClient mClient = HttpClient.newBuilder()
+            .cookieHandler(new CookieManager())
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+
+
+    @Test
+    void authorizationCodeFlow() throws Exception
+    {
+        // The authorization page.
+        HttpResponse<String> page = send(HttpRequest.newBuilder(uri(
+                "/api/authorization?response_type=code&client_id=" + CLIENT_ID
+                + "&redirect_uri=" + REDIRECT_URI + "&scope=openid+profile&state=xyz")).GET());
+
+        assertThat(page.statusCode()).isEqualTo(200);
+        assertThat(page.body()).contains("Demo Client");
+
+        // The end-user logs in and approves the request.
+        HttpResponse<String> decision = send(form("/api/authorization/decision",
+                "loginId=john&password=john&authorized=Authorize"));
+
+        assertThat(decision.statusCode()).isEqualTo(302);
+        assertThat(decision.headers().firstValue("Location")).hasValue(
+                "https://client.example.com/callback?code=" + CODE + "&state=xyz");
+
+        // The client exchanges the authorization code for tokens.
+        HttpResponse<String> token = send(form("/api/token",
+                "grant_type=authorization_code&code=" + CODE + "&redirect_uri=" + REDIRECT_URI)
+                .header("Authorization", "Basic " + Base64.getEncoder().encodeToString(
+                        (CLIENT_ID + ":secret").getBytes(StandardCharsets.UTF_8))));
+
+        assertThat(token.statusCode()).isEqualTo(200);
+        assertThat(token.body()).contains("\"access_token\":\"Z5a40U6dWvw2gMoCOAFbZcM85q4HC0Z-y1tJ0OLJJl8\"");
+
+        assertThat(mAuthlete.getPaths()).containsSubsequence(
+                "/api/auth/authorization", "/api/auth/authorization/issue", "/api/auth/token");
+    }
+
+
+    private URI uri(String path)
+    {
+        return URI.create("http://localhost:" + mPort + path);
+    }
+
+
+    private HttpRequest.Builder form(String path, String body)
+    {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception
+    {
+        return mClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+
+    /**
+     * Replaces the Authlete server configured by {@code authlete.properties}
+     * with {@link StubAuthlete}.
+     */
+    @TestConfiguration(proxyBeanMethods = false)
+    @ImportRuntimeHints(FixtureHints.class)
+    static class StubAuthleteConfiguration
+    {
+        @Bean(destroyMethod = "stop")
+        StubAuthlete stubAuthlete() throws IOException
+        {
+            return new StubAuthlete();
+        }
+
+
+        @Bean
+        @Primary
+        TenantApiFactory stubTenantApiFactory(StubAuthlete authlete)
+        {
+            return new TenantApiFactory()
+            {
+                @Override
+                public AuthleteApi create(AuthleteConfiguration configuration)
+                {
+                    AuthleteSimpleConfiguration stub = new AuthleteSimpleConfiguration();
+                    stub.setBaseUrl(authlete.getBaseUrl());
+                    stub.setServiceApiKey(configuration.getServiceApiKey());
+                    stub.setServiceApiSecret(configuration.getServiceApiSecret());
+
+                    return super.create(stub);
+                }
+            };
+        }
+    }
+
+
+    /**
+     * The payloads are read from the class path, also in a native test.
+     */
+    static class FixtureHints implements RuntimeHintsRegistrar
+    {
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader)
+        {
+            hints.resources().registerPattern("json/*.json");
+        }
+    }
+
+
+    /**
+     * Answers the Authlete APIs of the authorization code flow with fixed
+     * payloads, and remembers the paths of the requests.
+     */
+    static class StubAuthlete
+    {
+        private static final Map<String, String> FIXTURES = Map.of(
+                "/api/auth/authorization",       "authorization-response",
+                "/api/auth/authorization/issue", "authorization-issue-response",
+                "/api/auth/token",               "token-response");
+
+
+        private final HttpServer mServer;
+        private final List<String> mPaths = new CopyOnWriteArrayList<String>();
+
+
+        StubAuthlete() throws IOException
+        {
+            mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            mServer.createContext("/", this::handle);
+            mServer.start();
+        }
+
+
+        void stop()
+        {
+            mServer.stop(0);
+        }
+
+
+        String getBaseUrl()
+        {
+            return "http://localhost:" + mServer.getAddress().getPort();
+        }
+
+
+        List<String> getPaths()
+        {
+            return mPaths;
+        }
+
+
+        private void handle(HttpExchange exchange) throws IOException
+        {
+            try (exchange)
+            {
+                exchange.getRequestBody().readAllBytes();
+
+                String path    = exchange.getRequestURI().getPath();
+                String fixture = FIXTURES.get(path);
+                mPaths.add(path);
+
+                if (fixture == null)
+                {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+
+                byte[] json = fixture(fixture);
+                exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+                exchange.sendResponseHeaders(200, json.length);
+                exchange.getResponseBody().write(json);
+            }
+        }
+
+
+        private static byte[] fixture(String name)
+        {
+            try (InputStream in = StubAuthlete.class.getResourceAsStream("/json/" + name + ".json"))
+            {
+                if (in == null)
+                {
+                    throw new IllegalArgumentException("No fixture: " + name);
+                }
+
+                return in.readAllBytes();
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
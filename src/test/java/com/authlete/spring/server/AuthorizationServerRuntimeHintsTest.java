@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server;
+
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import com.authlete.common.conf.AuthleteConfiguration;
+import com.authlete.common.dto.AuthorizationResponse;
+import com.authlete.common.dto.Client;
+import com.authlete.common.dto.TokenResponse;
+import com.authlete.common.types.GrantType;
+import com.authlete.spring.server.api.TokenEndpoint;
+import com.authlete.spring.server.json.ObjectMapperAutoDiscoverable;
+
+
+/**
+ * Checks the hints registered by {@link AuthorizationServerRuntimeHints}
+ * for the resources, Jersey classes and Authlete DTOs a native executable
+ * needs to serve the authorization code flow.
+ */
+class AuthorizationServerRuntimeHintsTest
+{
+    private final RuntimeHints mHints = new RuntimeHints();
+
+
+    @BeforeEach
+    void registerHints()
+    {
+        new AuthorizationServerRuntimeHints().registerHints(mHints, getClass().getClassLoader());
+    }
+
+
+    @Test
+    void registersTemplatesAndStaticContents()
+    {
+        assertThat(RuntimeHintsPredicates.resource().forResource("templates/authorization.ftlh")).accepts(mHints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("static/index.html")).accepts(mHints);
+        assertThat(RuntimeHintsPredicates.resource().forResource(
+                "META-INF/services/org.glassfish.jersey.internal.spi.AutoDiscoverable")).accepts(mHints);
+    }
+
+
+    @Test
+    void registersAuthleteApiImplementations() throws ClassNotFoundException, NoSuchMethodException
+    {
+        for (String className : new String[] {
+                "com.authlete.jakarta.api.AuthleteApiImpl", "com.authlete.jakarta.api.AuthleteApiImplV3" })
+        {
+            // AuthleteApiFactory invokes this constructor by reflection.
+            assertThat(RuntimeHintsPredicates.reflection().onConstructor(
+                    Class.forName(className).getConstructor(AuthleteConfiguration.class)).invoke()).accepts(mHints);
+        }
+    }
+
+
+    @Test
+    void registersJerseyClasses()
+    {
+        assertThat(RuntimeHintsPredicates.reflection().onType(TokenEndpoint.class)
+                .withMemberCategories(MemberCategory.INVOKE_PUBLIC_METHODS)).accepts(mHints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(ObjectMapperAutoDiscoverable.class)
+                .withMemberCategories(MemberCategory.INVOKE_PUBLIC_METHODS)).accepts(mHints);
+    }
+
+
+    @Test
+    void registersAuthleteClasses()
+    {
+        for (Class<?> type : new Class<?>[] {
+                AuthorizationResponse.class, Client.class, TokenResponse.class, GrantType.class })
+        {
+            assertThat(RuntimeHintsPredicates.reflection().onType(type)
+                    .withMemberCategories(
+                            MemberCategory.DECLARED_FIELDS,
+                            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                            MemberCategory.INVOKE_PUBLIC_METHODS))
+                    .as(type.getName())
+                    .accepts(mHints);
+        }
+    }
+}
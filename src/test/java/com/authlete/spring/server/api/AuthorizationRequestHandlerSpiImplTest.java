@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.api;
+
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.ViewResolver;
+import com.authlete.common.api.AuthleteApi;
+import com.authlete.common.dto.AuthorizationFailRequest;
+import com.authlete.common.dto.AuthorizationFailResponse;
+import com.authlete.common.dto.AuthorizationRequest;
+import com.authlete.common.dto.AuthorizationResponse;
+import com.authlete.jakarta.AuthorizationRequestHandler;
+import com.authlete.spring.server.audit.AuditLog;
+import com.authlete.spring.server.db.ConsentStore;
+import com.authlete.spring.server.flow.AuthorizationFlowStore;
+
+
+/**
+ * Checks that authorization requests which do not reach the authorization
+ * page allocate no HTTP session.
+ */
+class AuthorizationRequestHandlerSpiImplTest
+{
+    private AuthleteApi mApi;
+    private MockHttpServletRequest mRequest;
+    private AuthorizationRequestHandlerSpiImpl mSpi;
+
+
+    @BeforeEach
+    void setUp()
+    {
+        mApi     = mock(AuthleteApi.class);
+        mRequest = new MockHttpServletRequest("GET", "/api/authorization");
+        mSpi     = new AuthorizationRequestHandlerSpiImpl(
+                mRequest, mock(ViewResolver.class), new AuthorizationFlowStore(600, 100),
+                "default", mApi, new ConsentStore(true, 7776000, "", 0),
+                new AuditLog(false, "audit", 1024, "drop", 1048576, 1, 1000));
+    }
+
+
+    @Test
+    void requestRejectedByAuthleteAllocatesNoSession()
+    {
+        AuthorizationResponse info = new AuthorizationResponse();
+        info.setAction(AuthorizationResponse.Action.BAD_REQUEST);
+        info.setResponseContent("{\"error\":\"invalid_request\"}");
+
+        when(mApi.authorization(any(AuthorizationRequest.class))).thenReturn(info);
+
+        Response response = new AuthorizationRequestHandler(mApi, mSpi).handle(parameters());
+
+        assertThat(response.getStatus()).isEqualTo(400);
+        assertThat(mRequest.getSession(false)).isNull();
+    }
+
+
+    @Test
+    void promptNoneWithoutLoginAllocatesNoSession()
+    {
+        // prompt=none makes the handler ask the SPI whether the end-user
+        // has logged in. The answer must not create a session.
+        AuthorizationResponse info = new AuthorizationResponse();
+        info.setAction(AuthorizationResponse.Action.NO_INTERACTION);
+        info.setTicket("ticket");
+
+        AuthorizationFailResponse failure = new AuthorizationFailResponse();
+        failure.setAction(AuthorizationFailResponse.Action.LOCATION);
+        failure.setResponseContent("https://client.example.com/cb?error=login_required");
+
+        when(mApi.authorization(any(AuthorizationRequest.class))).thenReturn(info);
+        when(mApi.authorizationFail(any(AuthorizationFailRequest.class))).thenReturn(failure);
+
+        new AuthorizationRequestHandler(mApi, mSpi).handle(parameters());
+
+        verify(mApi).authorizationFail(any(AuthorizationFailRequest.class));
+        assertThat(mRequest.getSession(false)).isNull();
+    }
+
+
+    @Test
+    void callbacksWithoutSessionAllocateNoSession()
+    {
+        assertThat(mSpi.isUserAuthenticated()).isFalse();
+        assertThat(mSpi.getUserAuthenticatedAt()).isZero();
+        assertThat(mSpi.getUserSubject()).isNull();
+        assertThat(mRequest.getSession(false)).isNull();
+    }
+
+
+    private static MultivaluedMap<String, String> parameters()
+    {
+        MultivaluedMap<String, String> parameters = new MultivaluedHashMap<String, String>();
+        parameters.putSingle("client_id", "1");
+        parameters.putSingle("response_type", "code");
+
+        return parameters;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.cluster;
+
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Runs several {@link InvalidationBus} instances on an {@link InMemoryHub}.
+ */
+class InvalidationBusTest
+{
+    private static final long COALESCE_WINDOW    = 5;
+    private static final long RETRY_INTERVAL     = 20;
+    private static final int  RETRIES            = 2;
+    private static final long HEARTBEAT_INTERVAL = 50;
+
+
+    /**
+     * The staleness bound claimed by {@link InvalidationBus} for the
+     * parameters above, with some slack for scheduling delays.
+     */
+    private static final long STALENESS_BOUND =
+            (RETRIES + 1) * RETRY_INTERVAL + 3 * HEARTBEAT_INTERVAL + 500;
+
+
+    /**
+     * Records what a node has received.
+     */
+    private static class Recorder implements InvalidationListener
+    {
+        final Map<Invalidation, AtomicInteger> received = new ConcurrentHashMap<Invalidation, AtomicInteger>();
+        final AtomicInteger flushes = new AtomicInteger();
+
+
+        @Override
+        public void invalidate(Invalidation invalidation)
+        {
+            received.computeIfAbsent(invalidation, key -> new AtomicInteger()).incrementAndGet();
+        }
+
+
+        @Override
+        public void invalidateAll()
+        {
+            flushes.incrementAndGet();
+        }
+
+
+        int count(Invalidation invalidation)
+        {
+            AtomicInteger count = received.get(invalidation);
+
+            return (count != null) ? count.get() : 0;
+        }
+
+
+        boolean isInvalidated(Invalidation invalidation)
+        {
+            return count(invalidation) > 0 || flushes.get() > 0;
+        }
+    }
+
+
+    private final InMemoryHub mHub = new InMemoryHub();
+    private final List<InvalidationBus> mBuses = new ArrayList<InvalidationBus>();
+    private final List<Recorder> mRecorders = new ArrayList<Recorder>();
+
+
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        for (InvalidationBus bus : mBuses)
+        {
+            bus.stop();
+        }
+    }
+
+
+    @Test
+    void deliversToAllOtherNodes() throws Exception
+    {
+        startNodes(3);
+
+        Invalidation invalidation = token("digest-1");
+        mBuses.get(0).publish(invalidation);
+
+        await(() -> mRecorders.get(1).count(invalidation) == 1 && mRecorders.get(2).count(invalidation) == 1);
+
+        // The sender invalidates its own caches by itself.
+        assertThat(mRecorders.get(0).received).isEmpty();
+
+        for (Recorder recorder : mRecorders)
+        {
+            assertThat(recorder.flushes.get()).isZero();
+        }
+    }
+
+
+    @Test
+    void coalescesDuplicatePublications() throws Exception
+    {
+        startNodes(2);
+
+        Invalidation tenant = new Invalidation(Invalidation.Kind.TENANT, "default", null);
+        Invalidation client = new Invalidation(Invalidation.Kind.CLIENT, "default", "1001");
+
+        for (int i = 0; i < 10; i++)
+        {
+            mBuses.get(0).publish(tenant);
+            mBuses.get(0).publish(client);
+        }
+
+        await(() -> mRecorders.get(1).count(tenant) > 0 && mRecorders.get(1).count(client) > 0);
+
+        // Let late duplicates, if any, arrive.
+        Thread.sleep(10 * COALESCE_WINDOW);
+
+        assertThat(mRecorders.get(1).count(tenant)).isEqualTo(1);
+        assertThat(mRecorders.get(1).count(client)).isEqualTo(1);
+    }
+
+
+    @Test
+    void retransmitsLostMessagesWithoutDuplicates() throws Exception
+    {
+        startNodes(3);
+
+        mHub.setLossRate(0.3);
+
+        List<Invalidation> invalidations = new ArrayList<Invalidation>();
+
+        for (int i = 0; i < 50; i++)
+        {
+            Invalidation invalidation = token("digest-" + i);
+            invalidations.add(invalidation);
+            mBuses.get(0).publish(invalidation);
+
+            // Spread them over several messages.
+            Thread.sleep(COALESCE_WINDOW);
+        }
+
+        for (Recorder recorder : mRecorders.subList(1, 3))
+        {
+            await(() -> invalidations.stream().allMatch(recorder::isInvalidated));
+
+            for (Invalidation invalidation : invalidations)
+            {
+                assertThat(recorder.count(invalidation)).isLessThanOrEqualTo(1);
+            }
+        }
+
+        assertThat(mBuses.get(0).getRetransmitted()).isPositive();
+    }
+
+
+    @Test
+    void dropsAllCachesWhenRetriesAreExhausted() throws Exception
+    {
+        startNodes(2);
+
+        // Lose everything until the sender has given up the message.
+        mHub.setLossRate(1.0);
+
+        Invalidation invalidation = token("digest-lost");
+        mBuses.get(0).publish(invalidation);
+
+        await(() -> mBuses.get(0).getAbandoned() > 0);
+
+        long restored = System.currentTimeMillis();
+        mHub.setLossRate(0);
+
+        // The heartbeats of the sender reveal the gap.
+        await(() -> mRecorders.get(1).flushes.get() > 0);
+
+        assertThat(System.currentTimeMillis() - restored).isLessThanOrEqualTo(STALENESS_BOUND);
+        assertThat(mRecorders.get(1).count(invalidation)).isZero();
+        assertThat(mBuses.get(1).getFlushes()).isPositive();
+    }
+
+
+    @Test
+    void ignoresMessagesWithAnotherSecret() throws Exception
+    {
+        startNodes(1);
+
+        InvalidationBus stranger = new InvalidationBus(
+                mHub.connect(), "another-secret", COALESCE_WINDOW, RETRY_INTERVAL, RETRIES, HEARTBEAT_INTERVAL);
+        mBuses.add(stranger);
+        stranger.start();
+
+        stranger.publish(token("digest-forged"));
+
+        Thread.sleep(5 * HEARTBEAT_INTERVAL);
+
+        assertThat(mRecorders.get(0).received).isEmpty();
+        assertThat(mBuses.get(0).getPeers()).isZero();
+    }
+
+
+    private void startNodes(int count) throws Exception
+    {
+        for (int i = 0; i < count; i++)
+        {
+            InvalidationBus bus = new InvalidationBus(
+                    mHub.connect(), "secret", COALESCE_WINDOW, RETRY_INTERVAL, RETRIES, HEARTBEAT_INTERVAL);
+            Recorder recorder = new Recorder();
+
+            bus.addListener(recorder);
+            bus.start();
+
+            mBuses.add(bus);
+            mRecorders.add(recorder);
+        }
+
+        // Wait until every node knows the others by their heartbeats, so
+        // that messages are retransmitted until acknowledged.
+        await(() -> mBuses.stream().allMatch(bus -> bus.getPeers() == count - 1));
+    }
+
+
+    private static Invalidation token(String digest)
+    {
+        return new Invalidation(Invalidation.Kind.TOKEN, "default", digest);
+    }
+
+
+    private static void await(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (condition.getAsBoolean() == false)
+        {
+            assertThat(System.currentTimeMillis()).as("timed out").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.json;
+
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import com.authlete.common.dto.AuthorizationResponse;
+import com.authlete.common.dto.IntrospectionResponse;
+import com.authlete.common.dto.Service;
+import com.authlete.common.dto.TokenResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+/**
+ * Compares the time MOXy and {@link JsonMappers#shared()} take to read and
+ * write the payloads of Authlete APIs. Not run by the tests; see README.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBindingBenchmark
+{
+    @Param({ "token-response", "introspection-response", "authorization-response", "service" })
+    public String fixture;
+
+
+    private final ObjectMapper mJackson = JsonMappers.shared();
+    private final JsonBindings mMoxy    = new JsonBindings();
+    private byte[] mJson;
+    private Class<?> mType;
+    private Object mEntity;
+
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        mJson   = JsonBindings.fixture(fixture);
+        mType   = typeOf(fixture);
+        mEntity = mJackson.readValue(mJson, mType);
+    }
+
+
+    private static Class<?> typeOf(String fixture)
+    {
+        switch (fixture)
+        {
+            case "token-response":
+                return TokenResponse.class;
+
+            case "introspection-response":
+                return IntrospectionResponse.class;
+
+            case "authorization-response":
+                return AuthorizationResponse.class;
+
+            case "service":
+                return Service.class;
+
+            default:
+                throw new IllegalArgumentException("Unknown fixture: " + fixture);
+        }
+    }
+
+
+    @Benchmark
+    public Object readWithJackson() throws IOException
+    {
+        return mJackson.readValue(mJson, mType);
+    }
+
+
+    @Benchmark
+    public Object readWithMoxy() throws IOException
+    {
+        return mMoxy.readWithMoxy(mJson, mType);
+    }
+
+
+    @Benchmark
+    public byte[] writeWithJackson() throws IOException
+    {
+        return mJackson.writeValueAsBytes(mEntity);
+    }
+
+
+    @Benchmark
+    public byte[] writeWithMoxy() throws IOException
+    {
+        return mMoxy.writeWithMoxy(mEntity);
+    }
+
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(JsonBindingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.json;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import org.eclipse.persistence.jaxb.rs.MOXyJsonProvider;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+
+
+/**
+ * MOXy, configured as Jersey configured it before {@link JsonMappers}
+ * replaced it, and the JSON payloads of Authlete APIs under
+ * {@code src/test/resources/json}.
+ */
+final class JsonBindings
+{
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+
+    private final MOXyJsonProvider mMoxy = new MOXyJsonProvider();
+
+
+    @SuppressWarnings("unchecked")
+    <T> T readWithMoxy(byte[] json, Class<T> type) throws IOException
+    {
+        return (T)mMoxy.readFrom((Class<Object>)(Class<?>)type, type, NO_ANNOTATIONS,
+                MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<String, String>(),
+                new ByteArrayInputStream(json));
+    }
+
+
+    byte[] writeWithMoxy(Object entity) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        mMoxy.writeTo(entity, entity.getClass(), entity.getClass(), NO_ANNOTATIONS,
+                MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<String, Object>(), out);
+
+        return out.toByteArray();
+    }
+
+
+    static byte[] fixture(String name)
+    {
+        try (InputStream in = JsonBindings.class.getResourceAsStream("/json/" + name + ".json"))
+        {
+            if (in == null)
+            {
+                throw new IllegalArgumentException("No fixture: " + name);
+            }
+
+            return in.readAllBytes();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
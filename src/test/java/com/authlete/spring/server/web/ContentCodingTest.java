@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.web;
+
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+
+/**
+ * Parses {@code Accept-Encoding} headers with {@link ContentCoding}.
+ */
+class ContentCodingTest
+{
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', nullValues = "NULL", value = {
+            "NULL                 | false | false",
+            "gzip                 | true  | false",
+            "gzip, deflate, br    | true  | true",
+            "' br , GZIP;q=1'     | true  | true",
+            "gzip;q=0.5           | true  | false",
+            "gzip;q=0             | false | false",
+            "'gzip ; q=0.0'       | false | false",
+            "*                    | true  | true",
+            "*;q=0                | false | false",
+            "'*;q=0, gzip'        | true  | false",
+            "'gzip;q=0, *'        | false | true",
+            "deflate              | false | false",
+            "identity             | false | false",
+            "gzip;q=invalid       | false | false",
+    })
+    void parsesAcceptEncoding(String header, boolean gzip, boolean br)
+    {
+        assertThat(ContentCoding.GZIP.isAcceptedBy(header)).isEqualTo(gzip);
+        assertThat(ContentCoding.BR.isAcceptedBy(header)).isEqualTo(br);
+        assertThat(ContentCoding.IDENTITY.isAcceptedBy(header)).isTrue();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.web;
+
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+
+/**
+ * Picks the variants of an {@link EncodedDocument}.
+ */
+class EncodedDocumentTest
+{
+    private static final String LARGE = "{\"keys\":[" + "{\"kty\":\"EC\",\"crv\":\"P-256\"},".repeat(50) + "{}]}";
+    private static final String SMALL = "{}";
+
+
+    @Test
+    void sendsGzipToClientsAcceptingIt() throws IOException
+    {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new EncodedDocument(LARGE, MediaType.APPLICATION_JSON_TYPE, null).write("gzip, br", response);
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(response.getHeader(HttpHeaders.VARY)).isEqualTo("Accept-Encoding");
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
+        assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(LARGE);
+    }
+
+
+    @Test
+    void sendsIdentityToOtherClients() throws IOException
+    {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new EncodedDocument(LARGE, MediaType.APPLICATION_JSON_TYPE, null).write("gzip;q=0", response);
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getHeader(HttpHeaders.VARY)).isEqualTo("Accept-Encoding");
+        assertThat(response.getContentAsString(StandardCharsets.UTF_8)).isEqualTo(LARGE);
+    }
+
+
+    @Test
+    void sendsIdentityWhenGzipDoesNotMakeContentSmaller()
+    {
+        Response response = new EncodedDocument(SMALL, MediaType.APPLICATION_JSON_TYPE, null).toResponse("gzip");
+
+        assertThat(response.getHeaderString(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat((byte[])response.getEntity()).isEqualTo(SMALL.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    @Test
+    void recordsBytesOnTheWire()
+    {
+        TransferStatistics statistics = new TransferStatistics();
+        EncodedDocument document      = new EncodedDocument(LARGE, MediaType.APPLICATION_JSON_TYPE, statistics);
+
+        Response response = document.toResponse("gzip");
+        int sent          = ((byte[])response.getEntity()).length;
+
+        assertThat(sent).isLessThan(document.getContentLength());
+        assertThat(statistics.getCompressedResponses()).isEqualTo(1);
+        assertThat(statistics.getContentBytes()).isEqualTo(document.getContentLength());
+        assertThat(statistics.getSentBytes()).isEqualTo(sent);
+    }
+
+
+    private static String gunzip(byte[] data) throws IOException
+    {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data)))
+        {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.reactive;
+
+
+import java.time.Duration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import com.authlete.common.conf.AuthleteApiVersion;
+import com.authlete.common.conf.AuthleteConfiguration;
+import com.authlete.common.dto.RevocationRequest;
+import com.authlete.common.dto.RevocationResponse;
+import com.authlete.common.dto.StandardIntrospectionRequest;
+import com.authlete.common.dto.StandardIntrospectionResponse;
+import com.authlete.common.dto.TokenFailRequest;
+import com.authlete.common.dto.TokenFailResponse;
+import com.authlete.common.dto.TokenIssueRequest;
+import com.authlete.common.dto.TokenIssueResponse;
+import com.authlete.common.dto.TokenRequest;
+import com.authlete.common.dto.TokenResponse;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Non-blocking client of Authlete APIs.
+ *
+ * <p>
+ * Only the APIs used by the endpoints of this module are implemented. The
+ * request and response classes are those of authlete-java-common, which
+ * are converted from/to JSON by Jackson. Both Authlete API V2 (API key and
+ * API secret) and V3 (service access token) are supported.
+ * </p>
+ */
+public class AuthleteClient
+{
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+
+    private final WebClient mClient;
+    private final String mPathPrefix;
+
+
+    public AuthleteClient(WebClient.Builder builder, AuthleteConfiguration configuration)
+    {
+        boolean v3 = AuthleteApiVersion.V3.name().equalsIgnoreCase(configuration.getApiVersion());
+
+        builder.baseUrl(configuration.getBaseUrl())
+               .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+
+        if (v3)
+        {
+            // The service is identified by the path.
+            builder.defaultHeaders(headers -> headers.setBearerAuth(configuration.getServiceAccessToken()));
+            mPathPrefix = "/api/" + configuration.getServiceApiKey();
+        }
+        else
+        {
+            builder.defaultHeaders(headers -> headers.setBasicAuth(
+                    configuration.getServiceApiKey(), configuration.getServiceApiSecret()));
+            mPathPrefix = "/api";
+        }
+
+        mClient = builder.build();
+    }
+
+
+    /**
+     * Call {@code /auth/token} API.
+     */
+    public Mono<TokenResponse> token(TokenRequest request)
+    {
+        return post("/auth/token", request, TokenResponse.class);
+    }
+
+
+    /**
+     * Call {@code /auth/token/issue} API.
+     */
+    public Mono<TokenIssueResponse> tokenIssue(TokenIssueRequest request)
+    {
+        return post("/auth/token/issue", request, TokenIssueResponse.class);
+    }
+
+
+    /**
+     * Call {@code /auth/token/fail} API.
+     */
+    public Mono<TokenFailResponse> tokenFail(TokenFailRequest request)
+    {
+        return post("/auth/token/fail", request, TokenFailResponse.class);
+    }
+
+
+    /**
+     * Call {@code /auth/introspection/standard} API.
+     */
+    public Mono<StandardIntrospectionResponse> standardIntrospection(StandardIntrospectionRequest request)
+    {
+        return post("/auth/introspection/standard", request, StandardIntrospectionResponse.class);
+    }
+
+
+    /**
+     * Call {@code /auth/revocation} API.
+     */
+    public Mono<RevocationResponse> revocation(RevocationRequest request)
+    {
+        return post("/auth/revocation", request, RevocationResponse.class);
+    }
+
+
+    /**
+     * Call {@code /service/jwks/get} API. Private keys are not included.
+     *
+     * @return
+     *         The JWK Set document. Empty if the service has no JWK Set.
+     */
+    public Mono<String> getServiceJwks()
+    {
+        return get("/service/jwks/get?includePrivateKeys=false&pretty=false");
+    }
+
+
+    /**
+     * Call {@code /service/configuration} API.
+     *
+     * @return
+     *         The configuration document of the service.
+     */
+    public Mono<String> getServiceConfiguration()
+    {
+        return get("/service/configuration?pretty=false");
+    }
+
+
+    private <T> Mono<T> post(String path, Object request, Class<T> responseType)
+    {
+        return mClient.post()
+                .uri(mPathPrefix + path)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(responseType)
+                .timeout(TIMEOUT);
+    }
+
+
+    private Mono<String> get(String path)
+    {
+        return mClient.get()
+                .uri(mPathPrefix + path)
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(TIMEOUT);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.reactive;
+
+
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * The discovery document and the JWK Set document of the service.
+ *
+ * <p>
+ * Both documents are cached for the configured TTL. The cached {@link Mono}
+ * is shared by concurrent subscribers, so at most one Authlete API call is
+ * in flight per document. Errors are not cached.
+ * </p>
+ */
+@RestController
+public class DiscoveryEndpoint
+{
+    private final Mono<String> mConfiguration;
+    private final Mono<String> mJwks;
+
+
+    public DiscoveryEndpoint(
+            AuthleteClient client,
+            @Value("${authorization-server.cache.configuration-ttl:300}") long configurationTtl,
+            @Value("${authorization-server.cache.jwks-ttl:300}") long jwksTtl)
+    {
+        mConfiguration = cached(client.getServiceConfiguration(), configurationTtl);
+        mJwks          = cached(client.getServiceJwks(), jwksTtl);
+    }
+
+
+    private static Mono<String> cached(Mono<String> source, long ttl)
+    {
+        Duration duration = Duration.ofSeconds(Math.max(0, ttl));
+
+        return source.cache(value -> duration, error -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+
+    @GetMapping("/.well-known/openid-configuration")
+    public Mono<ResponseEntity<String>> configuration()
+    {
+        return mConfiguration
+                .map(content -> ResponseEntity.ok().contentType(Responses.JSON).body(content))
+                .onErrorResume(e -> Mono.just(Responses.unexpected("/service/configuration API failed", e)));
+    }
+
+
+    @GetMapping("/api/jwks")
+    public Mono<ResponseEntity<String>> jwks()
+    {
+        return mJwks
+                .map(content -> (content == null || content.isEmpty())
+                        ? ResponseEntity.status(HttpStatus.NO_CONTENT).<String>build()
+                        : ResponseEntity.ok().contentType(Responses.JSON).body(content))
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.NO_CONTENT).build())
+                .onErrorResume(e -> Mono.just(Responses.unexpected("/service/jwks/get API failed", e)));
+    }
+}
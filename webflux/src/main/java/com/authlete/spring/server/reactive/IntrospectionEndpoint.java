@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.reactive;
+
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import com.authlete.common.dto.StandardIntrospectionRequest;
+import com.authlete.common.dto.StandardIntrospectionResponse;
+import com.authlete.common.web.BasicCredentials;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Introspection endpoint of the reactive edition. The behavior is the same
+ * as {@code IntrospectionEndpoint} of the servlet edition.
+ *
+ * @see <a href="http://tools.ietf.org/html/rfc7662">RFC 7662</a>
+ */
+@RestController
+public class IntrospectionEndpoint
+{
+    private static final String CHALLENGE = "Basic realm=\"introspection\"";
+
+
+    private final AuthleteClient mClient;
+
+
+    public IntrospectionEndpoint(AuthleteClient client)
+    {
+        mClient = client;
+    }
+
+
+    @PostMapping(path = "/api/introspection", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public Mono<ResponseEntity<String>> post(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestBody(required = false) String parameters)
+    {
+        // TODO: This implementation is for demonstration purpose only.
+        // Reject the introspection request by "nobody".
+        BasicCredentials credentials = BasicCredentials.parse(authorization);
+
+        if (credentials != null && "nobody".equals(credentials.getUserId()))
+        {
+            return Mono.just(Responses.unauthorized(null, CHALLENGE));
+        }
+
+        StandardIntrospectionRequest request = new StandardIntrospectionRequest()
+                .setParameters(parameters == null ? "" : parameters)
+                .setHttpAcceptHeader(accept);
+
+        return mClient.standardIntrospection(request)
+                .map(IntrospectionEndpoint::process)
+                .onErrorResume(e -> Mono.just(Responses.unexpected("/auth/introspection/standard API failed", e)));
+    }
+
+
+    private static ResponseEntity<String> process(StandardIntrospectionResponse response)
+    {
+        String content = response.getResponseContent();
+
+        switch (response.getAction())
+        {
+            case OK:
+                return Responses.noStore(HttpStatus.OK, Responses.JSON, content);
+
+            case JWT:
+                return Responses.noStore(HttpStatus.OK, Responses.TOKEN_INTROSPECTION_JWT, content);
+
+            case BAD_REQUEST:
+                return Responses.noStore(HttpStatus.BAD_REQUEST, Responses.JSON, content);
+
+            default:
+                return Responses.noStore(HttpStatus.INTERNAL_SERVER_ERROR, Responses.JSON, content);
+        }
+    }
+}
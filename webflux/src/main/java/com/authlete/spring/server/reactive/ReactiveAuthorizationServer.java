@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.reactive;
+
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.web.reactive.function.client.WebClient;
+import com.authlete.common.conf.AuthletePropertiesConfiguration;
+
+
+/**
+ * The main application class of the reactive edition.
+ *
+ * <p>
+ * The Authlete configuration is read from {@code authlete.properties} (or
+ * the file specified by the system property {@code
+ * authlete.configuration.file}) in the same way as the servlet edition.
+ * </p>
+ */
+@SpringBootApplication
+public class ReactiveAuthorizationServer
+{
+    public static void main(String[] args) throws Exception
+    {
+        SpringApplication.run(ReactiveAuthorizationServer.class, args);
+    }
+
+
+    @Bean
+    public AuthleteClient authleteClient(WebClient.Builder builder)
+    {
+        // Read once at startup. Nothing blocks after this.
+        return new AuthleteClient(builder, new AuthletePropertiesConfiguration());
+    }
+}
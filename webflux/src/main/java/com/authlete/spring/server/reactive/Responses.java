@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.reactive;
+
+
+import java.nio.charset.StandardCharsets;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+
+/**
+ * Utility to build responses in the same way as {@code ResponseUtil} of
+ * authlete-java-jakarta, which the servlet edition uses.
+ */
+final class Responses
+{
+    /**
+     * {@code "application/json;charset=UTF-8"}
+     */
+    static final MediaType JSON = new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8);
+
+
+    /**
+     * {@code "application/javascript;charset=UTF-8"}
+     */
+    static final MediaType JAVASCRIPT = MediaType.parseMediaType("application/javascript;charset=UTF-8");
+
+
+    /**
+     * {@code "application/token-introspection+jwt"}
+     */
+    static final MediaType TOKEN_INTROSPECTION_JWT = MediaType.parseMediaType("application/token-introspection+jwt");
+
+
+    private Responses()
+    {
+    }
+
+
+    /**
+     * Build a response which must not be cached.
+     */
+    static ResponseEntity<String> noStore(HttpStatus status, MediaType type, String content)
+    {
+        return builder(status).contentType(type).body(content);
+    }
+
+
+    /**
+     * Build a {@code 401 Unauthorized} response with a challenge.
+     */
+    static ResponseEntity<String> unauthorized(String content, String challenge)
+    {
+        return builder(HttpStatus.UNAUTHORIZED)
+                .header(HttpHeaders.WWW_AUTHENTICATE, challenge)
+                .contentType(JSON)
+                .body(content);
+    }
+
+
+    /**
+     * Build a {@code 500 Internal Server Error} response for an unexpected
+     * failure (e.g. Authlete is unreachable).
+     */
+    static ResponseEntity<String> unexpected(String message, Throwable cause)
+    {
+        String description = (cause.getMessage() == null) ? message : message + ": " + cause.getMessage();
+
+        return noStore(HttpStatus.INTERNAL_SERVER_ERROR, JSON, String.format(
+                "{\"error\":\"server_error\",\"error_description\":\"%s\"}",
+                description.replace("\\", "\\\\").replace("\"", "\\\"")));
+    }
+
+
+    private static ResponseEntity.BodyBuilder builder(HttpStatus status)
+    {
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .header(HttpHeaders.PRAGMA, "no-cache");
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.reactive;
+
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import com.authlete.common.dto.RevocationRequest;
+import com.authlete.common.dto.RevocationResponse;
+import com.authlete.common.web.BasicCredentials;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Revocation endpoint of the reactive edition. The behavior is the same
+ * as {@code RevocationEndpoint} of the servlet edition.
+ *
+ * @see <a href="http://tools.ietf.org/html/rfc7009">RFC 7009</a>
+ */
+@RestController
+public class RevocationEndpoint
+{
+    private static final String CHALLENGE = "Basic realm=\"revocation\"";
+
+
+    private final AuthleteClient mClient;
+
+
+    public RevocationEndpoint(AuthleteClient client)
+    {
+        mClient = client;
+    }
+
+
+    @PostMapping(path = "/api/revocation", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public Mono<ResponseEntity<String>> post(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestBody(required = false) String parameters)
+    {
+        RevocationRequest request = new RevocationRequest()
+                .setParameters(parameters == null ? "" : parameters);
+
+        // Client credentials in the Authorization header, if any.
+        BasicCredentials credentials = BasicCredentials.parse(authorization);
+
+        if (credentials != null)
+        {
+            request.setClientId(credentials.getUserId());
+            request.setClientSecret(credentials.getPassword());
+        }
+
+        return mClient.revocation(request)
+                .map(RevocationEndpoint::process)
+                .onErrorResume(e -> Mono.just(Responses.unexpected("/auth/revocation API failed", e)));
+    }
+
+
+    private static ResponseEntity<String> process(RevocationResponse response)
+    {
+        String content = response.getResponseContent();
+
+        switch (response.getAction())
+        {
+            case INVALID_CLIENT:
+                return Responses.unauthorized(content, CHALLENGE);
+
+            case OK:
+                return Responses.noStore(HttpStatus.OK, Responses.JAVASCRIPT, content);
+
+            case BAD_REQUEST:
+                return Responses.noStore(HttpStatus.BAD_REQUEST, Responses.JSON, content);
+
+            default:
+                return Responses.noStore(HttpStatus.INTERNAL_SERVER_ERROR, Responses.JSON, content);
+        }
+    }
+}
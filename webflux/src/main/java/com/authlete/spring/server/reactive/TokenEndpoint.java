@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.reactive;
+
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
+import com.authlete.common.dto.TokenFailRequest;
+import com.authlete.common.dto.TokenFailResponse;
+import com.authlete.common.dto.TokenIssueRequest;
+import com.authlete.common.dto.TokenIssueResponse;
+import com.authlete.common.dto.TokenRequest;
+import com.authlete.common.dto.TokenResponse;
+import com.authlete.common.web.BasicCredentials;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Token endpoint of the reactive edition. The behavior is the same as
+ * {@code TokenEndpoint} of the servlet edition.
+ *
+ * @see <a href="http://tools.ietf.org/html/rfc6749#section-3.2"
+ *      >RFC 6749, 3.2. Token Endpoint</a>
+ */
+@RestController
+public class TokenEndpoint
+{
+    /**
+     * The value of the {@code WWW-Authenticate} header for {@code 401}.
+     */
+    private static final String CHALLENGE = "Basic realm=\"token\"";
+
+
+    private final AuthleteClient mClient;
+
+
+    public TokenEndpoint(AuthleteClient client)
+    {
+        mClient = client;
+    }
+
+
+    @PostMapping(path = "/api/token", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public Mono<ResponseEntity<String>> post(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestHeader(value = "DPoP", required = false) String dpop,
+            @RequestBody(required = false) String parameters,
+            ServerHttpRequest request)
+    {
+        // The form parameters are passed to Authlete as they are.
+        TokenRequest tokenRequest = new TokenRequest()
+                .setParameters(parameters == null ? "" : parameters)
+                .setDpop(dpop)
+                .setHtm("POST")
+                .setHtu(UriComponentsBuilder.fromUri(request.getURI()).replaceQuery(null).toUriString());
+
+        // Client credentials in the Authorization header, if any.
+        BasicCredentials credentials = BasicCredentials.parse(authorization);
+
+        if (credentials != null)
+        {
+            tokenRequest.setClientId(credentials.getUserId());
+            tokenRequest.setClientSecret(credentials.getPassword());
+        }
+
+        return mClient.token(tokenRequest)
+                .flatMap(this::process)
+                .onErrorResume(e -> Mono.just(Responses.unexpected("/auth/token API failed", e)));
+    }
+
+
+    private Mono<ResponseEntity<String>> process(TokenResponse response)
+    {
+        String content = response.getResponseContent();
+
+        switch (response.getAction())
+        {
+            case INVALID_CLIENT:
+                return Mono.just(Responses.unauthorized(content, CHALLENGE));
+
+            case INTERNAL_SERVER_ERROR:
+                return Mono.just(Responses.noStore(HttpStatus.INTERNAL_SERVER_ERROR, Responses.JSON, content));
+
+            case BAD_REQUEST:
+                return Mono.just(withDpopNonce(
+                        Responses.noStore(HttpStatus.BAD_REQUEST, Responses.JSON, content), response));
+
+            case PASSWORD:
+                return handlePassword(response);
+
+            case OK:
+                return Mono.just(withDpopNonce(
+                        Responses.noStore(HttpStatus.OK, Responses.JSON, content), response));
+
+            default:
+                // e.g. TOKEN_EXCHANGE and JWT_BEARER, which are not
+                // supported by the servlet edition either.
+                return Mono.just(Responses.noStore(HttpStatus.BAD_REQUEST, Responses.JSON,
+                        "{\"error\":\"unsupported_grant_type\"}"));
+        }
+    }
+
+
+    /**
+     * Handle the resource owner password credentials flow.
+     */
+    private Mono<ResponseEntity<String>> handlePassword(TokenResponse response)
+    {
+        String ticket  = response.getTicket();
+        String subject = Users.authenticate(response.getUsername(), response.getPassword());
+
+        if (subject == null)
+        {
+            return mClient.tokenFail(new TokenFailRequest()
+                        .setTicket(ticket)
+                        .setReason(TokenFailRequest.Reason.INVALID_RESOURCE_OWNER_CREDENTIALS))
+                    .map(failed -> {
+                        HttpStatus status = (failed.getAction() == TokenFailResponse.Action.BAD_REQUEST)
+                                ? HttpStatus.BAD_REQUEST
+                                : HttpStatus.INTERNAL_SERVER_ERROR;
+                        return Responses.noStore(status, Responses.JSON, failed.getResponseContent());
+                    })
+                    .onErrorResume(e -> Mono.just(Responses.unexpected("/auth/token/fail API failed", e)));
+        }
+
+        return mClient.tokenIssue(new TokenIssueRequest().setTicket(ticket).setSubject(subject))
+                .map(issued -> {
+                    HttpStatus status = (issued.getAction() == TokenIssueResponse.Action.OK)
+                            ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR;
+                    return Responses.noStore(status, Responses.JSON, issued.getResponseContent());
+                })
+                .onErrorResume(e -> Mono.just(Responses.unexpected("/auth/token/issue API failed", e)));
+    }
+
+
+    private static ResponseEntity<String> withDpopNonce(ResponseEntity<String> entity, TokenResponse response)
+    {
+        if (response.getDpopNonce() == null)
+        {
+            return entity;
+        }
+
+        return ResponseEntity.status(entity.getStatusCode())
+                .headers(entity.getHeaders())
+                .header("DPoP-Nonce", response.getDpopNonce())
+                .body(entity.getBody());
+    }
+}
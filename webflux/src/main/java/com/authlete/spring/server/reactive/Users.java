@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 Authlete, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.authlete.spring.server.reactive;
+
+
+import java.util.Map;
+
+
+/**
+ * Dummy user database for the resource owner password credentials flow.
+ * A copy of the users in {@code UserDao} of the servlet edition, because
+ * this module does not depend on it. Keep them in sync.
+ */
+final class Users
+{
+    /**
+     * Login ID to (password, subject).
+     */
+    private static final Map<String, String[]> USERS = Map.of(
+            "john", new String[] { "john", "1001" },
+            "jane", new String[] { "jane", "1002" });
+
+
+    private Users()
+    {
+    }
+
+
+    /**
+     * Get the subject of the user who has the login credentials.
+     *
+     * @return
+     *         The subject, or {@code null} if nobody has the credentials.
+     */
+    static String authenticate(String loginId, String password)
+    {
+        String[] user = (loginId == null) ? null : USERS.get(loginId);
+
+        if (user == null || user[0].equals(password) == false)
+        {
+            return null;
+        }
+
+        return user[1];
+    }
+}